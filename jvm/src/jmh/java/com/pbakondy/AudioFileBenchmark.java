@@ -0,0 +1,81 @@
+package com.pbakondy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of copying a recording and of remuxing AMR into MP4, both include the fsync.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioFileBenchmark {
+
+    // AMR-NB 12.2 kbit/s, one byte header and 31 bytes of payload per 20 ms
+    private static final int FRAME_HEADER = 7 << 3 | 0x04;
+    private static final int FRAME_SIZE = 32;
+
+    @Param({"10", "60"})
+    public int seconds;
+
+    private final StreamCopier copier = new StreamCopier();
+    private File amr;
+    private File copy;
+    private File mp4;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        amr = File.createTempFile("bench", ".amr");
+        copy = File.createTempFile("bench", ".copy");
+        mp4 = File.createTempFile("bench", ".mp4");
+
+        Random random = new Random(1);
+        byte[] frame = new byte[FRAME_SIZE];
+        try (FileOutputStream out = new FileOutputStream(amr)) {
+            out.write("#!AMR\n".getBytes(StandardCharsets.US_ASCII));
+            for (int i = 0; i < seconds * 50; i++) {
+                random.nextBytes(frame);
+                frame[0] = (byte) FRAME_HEADER;
+                out.write(frame);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        amr.delete();
+        copy.delete();
+        mp4.delete();
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        return copier.copy(amr, copy);
+    }
+
+    @Benchmark
+    public AmrParser.Track remux() throws IOException {
+        return AmrMp4Muxer.remux(amr, mp4);
+    }
+}
@@ -0,0 +1,94 @@
+package com.pbakondy;
+
+import android.os.Handler;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning recognizer events into bridge messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventEncodingBenchmark {
+
+    private static final List<String> MATCHES = Arrays.asList(
+            "turn on the lights in the living room",
+            "turn on the light in the living room",
+            "turn off the lights in the living room",
+            "turn on the lights in the leaving room",
+            "turn on lights in the living room");
+
+    private EventScheduler scheduler;
+    private LevelMeter levelMeter;
+    private EventScheduler.Event partial;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        scheduler = new EventScheduler(new Handler());
+        // Interval 0 delivers every event right away
+        scheduler.start(new CallbackContext() {
+            @Override
+            public void sendPluginResult(PluginResult pluginResult) {
+                blackhole.consume(pluginResult);
+            }
+        }, 0);
+
+        partial = new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject event = new JSONObject();
+                event.put("isPartial", true);
+                event.put("matches", new JSONArray(MATCHES));
+                event.put("stable", "turn on the lights in the ");
+                event.put("unstable", "living room");
+                event.put("revision", 0);
+                return event;
+            }
+        };
+        levelMeter = new LevelMeter();
+        levelMeter.reset(5);
+    }
+
+    @Benchmark
+    public void partialEvent() {
+        scheduler.send("partial", partial);
+    }
+
+    @Benchmark
+    public String partialEventString() throws JSONException {
+        // What the bridge does with the payload
+        return partial.build().toString();
+    }
+
+    @Benchmark
+    public JSONArray levelBatch() throws JSONException {
+        // One 100 ms batch of RMS callbacks at 10 ms
+        for (int i = 0; i < 10; i++) {
+            levelMeter.add(-40 + i);
+        }
+        return levelMeter.drain();
+    }
+}
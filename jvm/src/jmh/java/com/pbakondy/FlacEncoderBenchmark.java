@@ -0,0 +1,81 @@
+package com.pbakondy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder throughput on one second of 16 kHz audio per operation, written in the 20 ms
+ * frames the capture delivers. Ops per second is seconds of audio per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlacEncoderBenchmark {
+
+    private static final int RATE = 16000;
+    private static final int FRAME_BYTES = RATE / 50 * 2;
+
+    @Param({"silence", "tone", "noise"})
+    public String signal;
+
+    private final FlacEncoder encoder = new FlacEncoder(RATE);
+    private ByteBuffer pcm;
+    private File file;
+    private RandomAccessFile output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        pcm = ByteBuffer.allocateDirect(RATE * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < RATE; i++) {
+            double sample = 0;
+            if (signal.equals("tone")) {
+                sample = 8000 * Math.sin(2 * Math.PI * 440 * i / RATE) + random.nextGaussian() * 50;
+            } else if (signal.equals("noise")) {
+                sample = random.nextGaussian() * 8000;
+            }
+            pcm.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample))));
+        }
+        file = File.createTempFile("bench", ".flac");
+        output = new RandomAccessFile(file, "rw");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        output.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public long encodeSecond() throws IOException {
+        encoder.start(output.getChannel());
+        for (int offset = 0; offset < pcm.capacity(); offset += FRAME_BYTES) {
+            pcm.limit(offset + FRAME_BYTES).position(offset);
+            encoder.write(pcm);
+        }
+        encoder.finish();
+        return encoder.getSamples();
+    }
+}
@@ -0,0 +1,63 @@
+package com.pbakondy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deduplicating partial hypotheses and computing their deltas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartialDedupeBenchmark {
+
+    private static final String SENTENCE =
+            "the quick brown fox jumps over the lazy dog while the cat watches from the window sill";
+
+    private final PartialResultTracker tracker = new PartialResultTracker();
+    private final List<List<String>> growing = new ArrayList<>();
+    private List<String> repeated;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // A hypothesis that grows by a few characters per partial, as recognizers send them
+        for (int end = 3; end <= SENTENCE.length(); end += 3) {
+            growing.add(Collections.singletonList(SENTENCE.substring(0, end)));
+        }
+        repeated = Collections.singletonList(SENTENCE);
+        tracker.update(repeated);
+    }
+
+    @Benchmark
+    public boolean repeatedPartial() {
+        return tracker.update(repeated);
+    }
+
+    @Benchmark
+    public String growingPartial() {
+        if (next == growing.size()) {
+            next = 0;
+            tracker.reset();
+        }
+        tracker.update(growing.get(next++));
+        tracker.takeDelta();
+        return tracker.getUnstable();
+    }
+}
@@ -0,0 +1,68 @@
+package com.pbakondy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resampler throughput on one second of device audio per operation, in the 20 ms
+ * chunks the capture reads. Ops per second is seconds of audio per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResamplerBenchmark {
+
+    private static final int OUTPUT_RATE = 16000;
+
+    @Param({"48000", "44100"})
+    public int rate;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    private Resampler resampler;
+    private ByteBuffer in;
+    private ByteBuffer out;
+    private int chunkBytes;
+
+    @Setup
+    public void setUp() {
+        resampler = new Resampler(rate, channels, OUTPUT_RATE);
+        chunkBytes = rate / 50 * 2 * channels;
+        in = ByteBuffer.allocateDirect(rate * 2 * channels).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < rate; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / rate));
+            for (int c = 0; c < channels; c++) {
+                in.putShort(sample);
+            }
+        }
+        out = ByteBuffer.allocateDirect(resampler.maxOutputBytes(chunkBytes)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Benchmark
+    public int resampleSecond() {
+        int written = 0;
+        for (int offset = 0; offset + chunkBytes <= in.capacity(); offset += chunkBytes) {
+            in.limit(offset + chunkBytes).position(offset);
+            out.clear();
+            written += resampler.process(in, out);
+        }
+        return written;
+    }
+}
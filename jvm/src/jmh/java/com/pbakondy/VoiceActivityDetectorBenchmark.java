@@ -0,0 +1,72 @@
+package com.pbakondy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detector throughput on one second of 16 kHz audio per operation, bursts of a tone in
+ * noise fed in the 20 ms frames the capture delivers. Ops per second is seconds of
+ * audio per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoiceActivityDetectorBenchmark {
+
+    private static final int RATE = 16000;
+    private static final int FRAME_BYTES = RATE / 50 * 2;
+
+    private VoiceActivityDetector detector;
+    private ByteBuffer pcm;
+    private long events;
+
+    @Setup
+    public void setUp() {
+        detector = new VoiceActivityDetector(RATE, new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStart(long sample) {
+                events++;
+            }
+
+            @Override
+            public void onSpeechEnd(long sample) {
+                events++;
+            }
+        });
+        Random random = new Random(1);
+        pcm = ByteBuffer.allocateDirect(RATE * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < RATE; i++) {
+            double sample = random.nextGaussian() * 100;
+            // 300 ms on, 200 ms off
+            if (i % (RATE / 2) < RATE * 3 / 10) {
+                sample += 6000 * Math.sin(2 * Math.PI * 180 * i / RATE);
+            }
+            pcm.putShort((short) Math.round(sample));
+        }
+    }
+
+    @Benchmark
+    public long processSecond() {
+        for (int offset = 0; offset < pcm.capacity(); offset += FRAME_BYTES) {
+            pcm.limit(offset + FRAME_BYTES).position(offset);
+            detector.process(pcm);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,9 @@
+package android.app;
+
+/**
+ * Compile-only stub.
+ */
+public class Activity {
+
+    public static final int RESULT_OK = -1;
+}
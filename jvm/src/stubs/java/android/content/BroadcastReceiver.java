@@ -0,0 +1,24 @@
+package android.content;
+
+import android.os.Bundle;
+
+/**
+ * Stub of the Android broadcast receiver, the result extras are set by the test.
+ */
+public abstract class BroadcastReceiver {
+
+    private Bundle resultExtras;
+
+    public abstract void onReceive(Context context, Intent intent);
+
+    public final void setResultExtras(Bundle extras) {
+        resultExtras = extras;
+    }
+
+    public final Bundle getResultExtras(boolean makeMap) {
+        if (resultExtras == null && makeMap) {
+            resultExtras = new Bundle();
+        }
+        return resultExtras;
+    }
+}
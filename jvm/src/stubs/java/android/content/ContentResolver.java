@@ -0,0 +1,17 @@
+package android.content;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * Compile-only stub.
+ */
+public abstract class ContentResolver {
+
+    public abstract ParcelFileDescriptor openFileDescriptor(Uri uri, String mode) throws FileNotFoundException;
+
+    public abstract InputStream openInputStream(Uri uri) throws FileNotFoundException;
+}
@@ -0,0 +1,25 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Stub of the Android context with only what the tested classes use, tests subclass it.
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract Executor getMainExecutor();
+
+    public abstract void sendOrderedBroadcast(Intent intent, String receiverPermission, BroadcastReceiver resultReceiver,
+                                              Handler scheduler, int initialCode, String initialData,
+                                              Bundle initialExtras);
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the Android intent, keeps its action, package and string extras.
+ */
+public class Intent {
+
+    private final String action;
+    private final Map<String, String> extras = new HashMap<>();
+    private String packageName;
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent setPackage(String packageName) {
+        this.packageName = packageName;
+        return this;
+    }
+
+    public String getPackage() {
+        return packageName;
+    }
+
+    public Intent putExtra(String name, String value) {
+        extras.put(name, value);
+        return this;
+    }
+
+    public String getStringExtra(String name) {
+        return extras.get(name);
+    }
+}
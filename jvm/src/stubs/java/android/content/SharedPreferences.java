@@ -0,0 +1,24 @@
+package android.content;
+
+/**
+ * Compile-only stub.
+ */
+public interface SharedPreferences {
+
+    interface Editor {
+
+        Editor putString(String key, String value);
+
+        Editor putLong(String key, long value);
+
+        Editor clear();
+
+        void apply();
+    }
+
+    String getString(String key, String defValue);
+
+    long getLong(String key, long defValue);
+
+    Editor edit();
+}
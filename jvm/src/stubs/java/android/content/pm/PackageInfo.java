@@ -0,0 +1,20 @@
+package android.content.pm;
+
+/**
+ * Stub of the package information.
+ */
+public class PackageInfo {
+
+    public String packageName;
+    public int versionCode;
+    private long longVersionCode;
+
+    public long getLongVersionCode() {
+        return longVersionCode;
+    }
+
+    public void setLongVersionCode(long longVersionCode) {
+        this.longVersionCode = longVersionCode;
+        versionCode = (int) longVersionCode;
+    }
+}
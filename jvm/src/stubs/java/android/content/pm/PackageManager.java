@@ -0,0 +1,16 @@
+package android.content.pm;
+
+/**
+ * Stub of the package manager with only what the tested classes use, tests subclass it.
+ */
+public abstract class PackageManager {
+
+    public static class NameNotFoundException extends Exception {
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+}
@@ -0,0 +1,14 @@
+package android.media;
+
+/**
+ * Stub of the Android audio format constants.
+ */
+public final class AudioFormat {
+
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int CHANNEL_IN_MONO = 16;
+    public static final int CHANNEL_IN_STEREO = 12;
+
+    private AudioFormat() {
+    }
+}
@@ -0,0 +1,107 @@
+package android.media;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stub of the Android microphone that plays back a scripted recording. Like the real one
+ * it fills a direct buffer from its start, whatever the position is. Once the script is
+ * played it returns silence of zero length.
+ */
+public class AudioRecord {
+
+    public static final int STATE_UNINITIALIZED = 0;
+    public static final int STATE_INITIALIZED = 1;
+    public static final int ERROR_BAD_VALUE = -2;
+
+    private static volatile int supportedRate = 16000;
+    private static volatile int supportedChannels = 1;
+    private static volatile short[] script = new short[0];
+    private static volatile int played;
+    private static final AtomicInteger open = new AtomicInteger();
+
+    private boolean released;
+
+    public AudioRecord(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+        if (getMinBufferSize(sampleRate, channelConfig, audioFormat) <= 0) {
+            throw new IllegalArgumentException("Unsupported format");
+        }
+        open.incrementAndGet();
+    }
+
+    public static int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+        int channels = channelConfig == AudioFormat.CHANNEL_IN_STEREO ? 2 : 1;
+        if (sampleRate != supportedRate || channels != supportedChannels
+                || audioFormat != AudioFormat.ENCODING_PCM_16BIT) {
+            return ERROR_BAD_VALUE;
+        }
+        return sampleRate / 25 * 2 * channels;
+    }
+
+    public int getState() {
+        return STATE_INITIALIZED;
+    }
+
+    public void startRecording() {
+    }
+
+    public int read(ByteBuffer audioBuffer, int sizeInBytes) {
+        short[] samples = script;
+        int count = Math.min(sizeInBytes / 2, samples.length - played);
+        if (count <= 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            short sample = samples[played + i];
+            audioBuffer.put(2 * i, (byte) sample);
+            audioBuffer.put(2 * i + 1, (byte) (sample >> 8));
+        }
+        played += count;
+        return count * 2;
+    }
+
+    public void stop() {
+    }
+
+    public void release() {
+        if (!released) {
+            released = true;
+            open.decrementAndGet();
+        }
+    }
+
+    /**
+     * Not part of the Android API, the only format the microphone opens in
+     */
+    public static void support(int sampleRate, int channels) {
+        supportedRate = sampleRate;
+        supportedChannels = channels;
+    }
+
+    /**
+     * Not part of the Android API, interleaved samples the next reads return
+     */
+    public static void play(short[] samples) {
+        played = 0;
+        script = samples;
+    }
+
+    /**
+     * Not part of the Android API
+     */
+    public static boolean isPlayed() {
+        return played >= script.length;
+    }
+
+    /**
+     * Not part of the Android API, records created and not released yet
+     */
+    public static int getOpenCount() {
+        return open.get();
+    }
+}
@@ -0,0 +1,34 @@
+package android.media;
+
+/**
+ * Stub of the codec information.
+ */
+public final class MediaCodecInfo {
+
+    public static final class CodecCapabilities {
+
+        public int getMaxSupportedInstances() {
+            return 1;
+        }
+    }
+
+    private final boolean encoder;
+    private final String type;
+
+    MediaCodecInfo(boolean encoder, String type) {
+        this.encoder = encoder;
+        this.type = type;
+    }
+
+    public boolean isEncoder() {
+        return encoder;
+    }
+
+    public String[] getSupportedTypes() {
+        return new String[] {type};
+    }
+
+    public CodecCapabilities getCapabilitiesForType(String type) {
+        return new CodecCapabilities();
+    }
+}
@@ -0,0 +1,16 @@
+package android.media;
+
+/**
+ * Stub of the codec list, the device has a single AAC encoder.
+ */
+public final class MediaCodecList {
+
+    public static final int REGULAR_CODECS = 0;
+
+    public MediaCodecList(int kind) {
+    }
+
+    public MediaCodecInfo[] getCodecInfos() {
+        return new MediaCodecInfo[] {new MediaCodecInfo(true, MediaFormat.MIMETYPE_AUDIO_AAC)};
+    }
+}
@@ -0,0 +1,9 @@
+package android.media;
+
+/**
+ * Compile-only stub.
+ */
+public final class MediaFormat {
+
+    public static final String MIMETYPE_AUDIO_AAC = "audio/mp4a-latm";
+}
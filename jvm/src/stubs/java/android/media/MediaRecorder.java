@@ -0,0 +1,15 @@
+package android.media;
+
+/**
+ * Stub of the Android recorder, only its audio sources.
+ */
+public class MediaRecorder {
+
+    public static final class AudioSource {
+
+        public static final int VOICE_RECOGNITION = 6;
+
+        private AudioSource() {
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package android.net;
+
+/**
+ * Compile-only stub.
+ */
+public abstract class Uri {
+}
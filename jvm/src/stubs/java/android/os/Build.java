@@ -0,0 +1,24 @@
+package android.os;
+
+/**
+ * Stub of the build information, the stubs behave like Android 14.
+ */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static class VERSION {
+
+        public static final int SDK_INT = VERSION_CODES.UPSIDE_DOWN_CAKE;
+    }
+
+    public static class VERSION_CODES {
+
+        public static final int M = 23;
+        public static final int P = 28;
+        public static final int S = 31;
+        public static final int TIRAMISU = 33;
+        public static final int UPSIDE_DOWN_CAKE = 34;
+    }
+}
@@ -0,0 +1,36 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the Android bundle, backed by a map.
+ */
+public final class Bundle {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public void putStringArrayList(String key, ArrayList<String> value) {
+        values.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getStringArrayList(String key) {
+        Object value = values.get(key);
+        return value instanceof ArrayList ? (ArrayList<String>) value : null;
+    }
+}
@@ -0,0 +1,48 @@
+package android.os;
+
+/**
+ * Stub of the Android handler. Handlers of a looper share its {@link MessageQueue},
+ * one created without a looper has a queue of its own. Posted runnables wait until a
+ * test calls {@link #runDue()}.
+ */
+public class Handler {
+
+    private final MessageQueue queue;
+
+    public Handler() {
+        queue = new MessageQueue();
+    }
+
+    public Handler(Looper looper) {
+        queue = looper.getQueue();
+    }
+
+    public final boolean post(Runnable runnable) {
+        return postDelayed(runnable, 0);
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        queue.enqueue(runnable, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable runnable) {
+        queue.remove(runnable);
+    }
+
+    /**
+     * Not part of the Android API, runs the due runnables of the queue in posting order
+     *
+     * @return number of runnables run
+     */
+    public int runDue() {
+        return queue.runDue();
+    }
+
+    /**
+     * Not part of the Android API
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+}
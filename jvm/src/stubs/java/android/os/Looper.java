@@ -0,0 +1,32 @@
+package android.os;
+
+/**
+ * Stub of the Android looper, there is only the main one.
+ */
+public final class Looper {
+
+    private static final Looper MAIN = new Looper(Thread.currentThread());
+
+    private final Thread thread;
+    private final MessageQueue queue = new MessageQueue();
+
+    private Looper(Thread thread) {
+        this.thread = thread;
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return MAIN;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public MessageQueue getQueue() {
+        return queue;
+    }
+}
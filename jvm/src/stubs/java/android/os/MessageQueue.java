@@ -0,0 +1,80 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Stub of the Android message queue. Runnables wait until a test calls
+ * {@link #runDue()}, which runs those that are due by {@link SystemClock}.
+ * Other threads may post to it.
+ */
+public final class MessageQueue {
+
+    private static class Message {
+
+        final Runnable runnable;
+        final long when;
+
+        Message(Runnable runnable, long when) {
+            this.runnable = runnable;
+            this.when = when;
+        }
+    }
+
+    private final List<Message> queue = new ArrayList<>();
+
+    MessageQueue() {
+    }
+
+    synchronized void enqueue(Runnable runnable, long when) {
+        queue.add(new Message(runnable, when));
+    }
+
+    synchronized void remove(Runnable runnable) {
+        Iterator<Message> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().runnable == runnable) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Not part of the Android API, runs the due runnables in posting order
+     *
+     * @return number of runnables run
+     */
+    public int runDue() {
+        int run = 0;
+        Runnable runnable;
+        while ((runnable = nextDue()) != null) {
+            runnable.run();
+            run++;
+        }
+        return run;
+    }
+
+    /**
+     * Not part of the Android API
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Not part of the Android API, drops everything that is queued
+     */
+    public synchronized void clear() {
+        queue.clear();
+    }
+
+    private synchronized Runnable nextDue() {
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).when <= SystemClock.uptimeMillis()) {
+                return queue.remove(i).runnable;
+            }
+        }
+        return null;
+    }
+}
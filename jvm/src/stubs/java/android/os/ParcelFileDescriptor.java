@@ -0,0 +1,29 @@
+package android.os;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Compile-only stub.
+ */
+public class ParcelFileDescriptor {
+
+    public long getStatSize() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static class AutoCloseInputStream extends FileInputStream {
+
+        public AutoCloseInputStream(ParcelFileDescriptor pfd) {
+            super(new FileDescriptor());
+        }
+    }
+
+    public static class AutoCloseOutputStream extends FileOutputStream {
+
+        public AutoCloseOutputStream(ParcelFileDescriptor pfd) {
+            super(new FileDescriptor());
+        }
+    }
+}
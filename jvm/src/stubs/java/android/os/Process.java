@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stub of the Android process, thread priorities are ignored.
+ */
+public final class Process {
+
+    public static final int THREAD_PRIORITY_URGENT_AUDIO = -19;
+
+    private Process() {
+    }
+
+    public static void setThreadPriority(int priority) {
+    }
+}
@@ -0,0 +1,27 @@
+package android.os;
+
+/**
+ * Stub of the Android clock. Time stands still until a test advances it.
+ */
+public final class SystemClock {
+
+    private static long now = 1000;
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return now;
+    }
+
+    public static long uptimeMillis() {
+        return now;
+    }
+
+    /**
+     * Not part of the Android API, moves the clock forward
+     */
+    public static void advance(long ms) {
+        now += ms;
+    }
+}
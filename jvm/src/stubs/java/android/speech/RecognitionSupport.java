@@ -0,0 +1,58 @@
+package android.speech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub of the on-device language support answer.
+ */
+public final class RecognitionSupport {
+
+    private final List<String> installed;
+    private final List<String> pending;
+    private final List<String> supported;
+
+    private RecognitionSupport(List<String> installed, List<String> pending, List<String> supported) {
+        this.installed = installed;
+        this.pending = pending;
+        this.supported = supported;
+    }
+
+    public List<String> getInstalledOnDeviceLanguages() {
+        return installed;
+    }
+
+    public List<String> getPendingOnDeviceLanguages() {
+        return pending;
+    }
+
+    public List<String> getSupportedOnDeviceLanguages() {
+        return supported;
+    }
+
+    public static final class Builder {
+
+        private List<String> installed = new ArrayList<>();
+        private List<String> pending = new ArrayList<>();
+        private List<String> supported = new ArrayList<>();
+
+        public Builder setInstalledOnDeviceLanguages(List<String> languages) {
+            installed = new ArrayList<>(languages);
+            return this;
+        }
+
+        public Builder setPendingOnDeviceLanguages(List<String> languages) {
+            pending = new ArrayList<>(languages);
+            return this;
+        }
+
+        public Builder setSupportedOnDeviceLanguages(List<String> languages) {
+            supported = new ArrayList<>(languages);
+            return this;
+        }
+
+        public RecognitionSupport build() {
+            return new RecognitionSupport(installed, pending, supported);
+        }
+    }
+}
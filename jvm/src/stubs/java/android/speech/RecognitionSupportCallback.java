@@ -0,0 +1,11 @@
+package android.speech;
+
+/**
+ * Compile-only stub.
+ */
+public interface RecognitionSupportCallback {
+
+    void onSupportResult(RecognitionSupport recognitionSupport);
+
+    void onError(int error);
+}
@@ -0,0 +1,40 @@
+package android.speech;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Stub of the recognizer intent constants, the details receiver is set by the test.
+ */
+public class RecognizerIntent {
+
+    public static final String ACTION_RECOGNIZE_SPEECH = "android.speech.action.RECOGNIZE_SPEECH";
+    public static final String ACTION_GET_LANGUAGE_DETAILS = "android.speech.action.GET_LANGUAGE_DETAILS";
+    public static final String EXTRA_LANGUAGE_MODEL = "android.speech.extra.LANGUAGE_MODEL";
+    public static final String LANGUAGE_MODEL_FREE_FORM = "free_form";
+    public static final String EXTRA_LANGUAGE_PREFERENCE = "android.speech.extra.LANGUAGE_PREFERENCE";
+    public static final String EXTRA_SUPPORTED_LANGUAGES = "android.speech.extra.SUPPORTED_LANGUAGES";
+
+    private static volatile String detailsPackage;
+
+    private RecognizerIntent() {
+    }
+
+    /**
+     * @return null if no details receiver is set
+     */
+    public static Intent getVoiceDetailsIntent(Context context) {
+        String packageName = detailsPackage;
+        if (packageName == null) {
+            return null;
+        }
+        return new Intent(ACTION_GET_LANGUAGE_DETAILS).setPackage(packageName);
+    }
+
+    /**
+     * Not part of the Android API, the package that answers the details broadcast, or null
+     */
+    public static void setDetailsPackage(String packageName) {
+        detailsPackage = packageName;
+    }
+}
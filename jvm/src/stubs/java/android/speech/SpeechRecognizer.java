@@ -0,0 +1,114 @@
+package android.speech;
+
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Stub of the system recognizer. Only the on-device support check works, it waits
+ * until a test answers it with {@link #answerSupportCheck}.
+ */
+public class SpeechRecognizer {
+
+    public static final int ERROR_NETWORK_TIMEOUT = 1;
+    public static final int ERROR_NETWORK = 2;
+    public static final int ERROR_AUDIO = 3;
+    public static final int ERROR_SERVER = 4;
+    public static final int ERROR_CLIENT = 5;
+    public static final int ERROR_SPEECH_TIMEOUT = 6;
+    public static final int ERROR_NO_MATCH = 7;
+    public static final int ERROR_RECOGNIZER_BUSY = 8;
+    public static final int ERROR_INSUFFICIENT_PERMISSIONS = 9;
+
+    private static volatile boolean onDeviceAvailable;
+    private static SpeechRecognizer checking;
+    private static int created;
+
+    private RecognitionSupportCallback supportCallback;
+    private Executor supportExecutor;
+    private boolean destroyed;
+
+    private SpeechRecognizer() {
+    }
+
+    public static SpeechRecognizer createSpeechRecognizer(Context context) {
+        created++;
+        return new SpeechRecognizer();
+    }
+
+    public static SpeechRecognizer createOnDeviceSpeechRecognizer(Context context) {
+        if (!onDeviceAvailable) {
+            throw new UnsupportedOperationException("On-device recognition is not available");
+        }
+        created++;
+        return new SpeechRecognizer();
+    }
+
+    public static boolean isOnDeviceRecognitionAvailable(Context context) {
+        return onDeviceAvailable;
+    }
+
+    public void setRecognitionListener(RecognitionListener listener) {
+    }
+
+    public void startListening(Intent recognizerIntent) {
+        throw new UnsupportedOperationException("Not stubbed");
+    }
+
+    public void stopListening() {
+    }
+
+    public void cancel() {
+    }
+
+    public void destroy() {
+        destroyed = true;
+    }
+
+    public void checkRecognitionSupport(Intent recognizerIntent, Executor executor,
+                                        RecognitionSupportCallback supportListener) {
+        supportCallback = supportListener;
+        supportExecutor = executor;
+        checking = this;
+    }
+
+    /**
+     * Not part of the Android API
+     */
+    public static void setOnDeviceRecognitionAvailable(boolean available) {
+        onDeviceAvailable = available;
+    }
+
+    /**
+     * Not part of the Android API, recognizers created so far
+     */
+    public static int getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * Not part of the Android API, answers the last support check that is still open
+     *
+     * @param support the answer, or null to report an error
+     * @return false if no check is open
+     */
+    public static boolean answerSupportCheck(final RecognitionSupport support) {
+        final SpeechRecognizer recognizer = checking;
+        if (recognizer == null || recognizer.destroyed) {
+            return false;
+        }
+        checking = null;
+        recognizer.supportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (support != null) {
+                    recognizer.supportCallback.onSupportResult(support);
+                } else {
+                    recognizer.supportCallback.onError(ERROR_SERVER);
+                }
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package androidx.annotation;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Compile-only stub.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface OptIn {
+
+    Class<? extends Annotation>[] markerClass();
+}
@@ -0,0 +1,12 @@
+package androidx.media3.common;
+
+/**
+ * Compile-only stub.
+ */
+public final class C {
+
+    public static final long TIME_UNSET = Long.MIN_VALUE + 1;
+
+    private C() {
+    }
+}
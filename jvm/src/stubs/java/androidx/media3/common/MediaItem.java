@@ -0,0 +1,24 @@
+package androidx.media3.common;
+
+/**
+ * Stub of the media item, only its URI.
+ */
+public final class MediaItem {
+
+    private final String uri;
+
+    private MediaItem(String uri) {
+        this.uri = uri;
+    }
+
+    public static MediaItem fromUri(String uri) {
+        return new MediaItem(uri);
+    }
+
+    /**
+     * Not part of the Media3 API
+     */
+    public String getUri() {
+        return uri;
+    }
+}
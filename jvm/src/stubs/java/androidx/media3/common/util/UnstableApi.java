@@ -0,0 +1,11 @@
+package androidx.media3.common.util;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Compile-only stub.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface UnstableApi {
+}
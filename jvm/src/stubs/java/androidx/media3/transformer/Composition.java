@@ -0,0 +1,10 @@
+package androidx.media3.transformer;
+
+/**
+ * Compile-only stub.
+ */
+public final class Composition {
+
+    Composition() {
+    }
+}
@@ -0,0 +1,34 @@
+package androidx.media3.transformer;
+
+import android.content.Context;
+
+/**
+ * Compile-only stub.
+ */
+public final class DefaultEncoderFactory implements Codec.EncoderFactory {
+
+    private DefaultEncoderFactory() {
+    }
+
+    public static final class Builder {
+
+        public Builder(Context context) {
+        }
+
+        public Builder setEnableFallback(boolean enableFallback) {
+            return this;
+        }
+
+        public Builder setEnableCodecDbLite(boolean enableCodecDbLite) {
+            return this;
+        }
+
+        public Builder setRequestedVideoEncoderSettings(VideoEncoderSettings requestedVideoEncoderSettings) {
+            return this;
+        }
+
+        public DefaultEncoderFactory build() {
+            return new DefaultEncoderFactory();
+        }
+    }
+}
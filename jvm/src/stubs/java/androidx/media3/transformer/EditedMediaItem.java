@@ -0,0 +1,40 @@
+package androidx.media3.transformer;
+
+import androidx.media3.common.MediaItem;
+
+/**
+ * Stub of the edited media item.
+ */
+public final class EditedMediaItem {
+
+    public final MediaItem mediaItem;
+    public final boolean removeVideo;
+
+    private EditedMediaItem(MediaItem mediaItem, boolean removeVideo) {
+        this.mediaItem = mediaItem;
+        this.removeVideo = removeVideo;
+    }
+
+    public static final class Builder {
+
+        private final MediaItem mediaItem;
+        private boolean removeVideo;
+
+        public Builder(MediaItem mediaItem) {
+            this.mediaItem = mediaItem;
+        }
+
+        public Builder setRemoveVideo(boolean removeVideo) {
+            this.removeVideo = removeVideo;
+            return this;
+        }
+
+        public Builder setEffects(Effects effects) {
+            return this;
+        }
+
+        public EditedMediaItem build() {
+            return new EditedMediaItem(mediaItem, removeVideo);
+        }
+    }
+}
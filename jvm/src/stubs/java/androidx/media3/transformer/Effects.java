@@ -0,0 +1,12 @@
+package androidx.media3.transformer;
+
+/**
+ * Compile-only stub.
+ */
+public final class Effects {
+
+    public static final Effects EMPTY = new Effects();
+
+    private Effects() {
+    }
+}
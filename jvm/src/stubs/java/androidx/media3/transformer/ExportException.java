@@ -0,0 +1,11 @@
+package androidx.media3.transformer;
+
+/**
+ * Stub of the export failure.
+ */
+public final class ExportException extends Exception {
+
+    ExportException(String message) {
+        super(message);
+    }
+}
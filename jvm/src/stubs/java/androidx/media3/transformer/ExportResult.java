@@ -0,0 +1,15 @@
+package androidx.media3.transformer;
+
+/**
+ * Stub of the export result, only its duration and size.
+ */
+public final class ExportResult {
+
+    public final long durationMs;
+    public final long fileSizeBytes;
+
+    ExportResult(long durationMs, long fileSizeBytes) {
+        this.durationMs = durationMs;
+        this.fileSizeBytes = fileSizeBytes;
+    }
+}
@@ -0,0 +1,9 @@
+package androidx.media3.transformer;
+
+/**
+ * Compile-only stub.
+ */
+public final class ProgressHolder {
+
+    public int progress;
+}
@@ -0,0 +1,165 @@
+package androidx.media3.transformer;
+
+import android.content.Context;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub of the Media3 transformer. An export does nothing until the test reports its
+ * progress and ends it, listeners are called on the calling thread.
+ */
+public final class Transformer {
+
+    public static final int PROGRESS_STATE_NOT_STARTED = 0;
+    public static final int PROGRESS_STATE_WAITING_FOR_AVAILABILITY = 1;
+    public static final int PROGRESS_STATE_AVAILABLE = 2;
+    public static final int PROGRESS_STATE_UNAVAILABLE = 3;
+
+    private static final List<Transformer> started = new ArrayList<>();
+
+    public interface Listener {
+
+        default void onCompleted(Composition composition, ExportResult exportResult) {
+        }
+
+        default void onError(Composition composition, ExportResult exportResult, ExportException exportException) {
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Listener> listeners = new ArrayList<>();
+
+        public Builder(Context context) {
+        }
+
+        public Builder setLooper(Looper looper) {
+            return this;
+        }
+
+        public Builder addListener(Listener listener) {
+            listeners.add(listener);
+            return this;
+        }
+
+        public Builder setMaxDelayBetweenMuxerSamplesMs(long maxDelayBetweenMuxerSamplesMs) {
+            return this;
+        }
+
+        public Builder setEncoderFactory(Codec.EncoderFactory encoderFactory) {
+            return this;
+        }
+
+        public Transformer build() {
+            return new Transformer(new ArrayList<>(listeners));
+        }
+    }
+
+    private final List<Listener> listeners;
+    private EditedMediaItem item;
+    private String outputPath;
+    private int progress = -1;
+    private boolean cancelled;
+    private boolean ended;
+
+    private Transformer(List<Listener> listeners) {
+        this.listeners = listeners;
+    }
+
+    public void start(EditedMediaItem editedMediaItem, String path) {
+        if (item != null) {
+            throw new IllegalStateException("There is already an export in progress");
+        }
+        item = editedMediaItem;
+        outputPath = path;
+        synchronized (started) {
+            started.add(this);
+        }
+    }
+
+    public int getProgress(ProgressHolder progressHolder) {
+        if (item == null || ended) {
+            return PROGRESS_STATE_NOT_STARTED;
+        }
+        if (progress < 0) {
+            return PROGRESS_STATE_WAITING_FOR_AVAILABILITY;
+        }
+        progressHolder.progress = progress;
+        return PROGRESS_STATE_AVAILABLE;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        ended = true;
+    }
+
+    /**
+     * Not part of the Media3 API, exports started so far, oldest first
+     */
+    public static List<Transformer> getStarted() {
+        synchronized (started) {
+            return new ArrayList<>(started);
+        }
+    }
+
+    /**
+     * Not part of the Media3 API
+     */
+    public static void clearStarted() {
+        synchronized (started) {
+            started.clear();
+        }
+    }
+
+    /**
+     * Not part of the Media3 API
+     */
+    public EditedMediaItem getItem() {
+        return item;
+    }
+
+    /**
+     * Not part of the Media3 API
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Not part of the Media3 API
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Not part of the Media3 API, progress in percent the export reports from now on
+     */
+    public void setProgress(int progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Not part of the Media3 API, ends the export successfully
+     */
+    public void complete(long durationMs, long fileSizeBytes) {
+        ended = true;
+        ExportResult result = new ExportResult(durationMs, fileSizeBytes);
+        for (Listener listener : listeners) {
+            listener.onCompleted(new Composition(), result);
+        }
+    }
+
+    /**
+     * Not part of the Media3 API, ends the export with an error
+     */
+    public void fail(String message) {
+        ended = true;
+        ExportException exception = new ExportException(message);
+        for (Listener listener : listeners) {
+            listener.onError(new Composition(), new ExportResult(0, 0), exception);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package androidx.media3.transformer;
+
+/**
+ * Compile-only stub.
+ */
+public final class VideoEncoderSettings {
+
+    public static final VideoEncoderSettings DEFAULT = new VideoEncoderSettings();
+
+    private VideoEncoderSettings() {
+    }
+}
@@ -0,0 +1,93 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Stub of the Cordova plugin result, keeps the message as it was given.
+ */
+public class PluginResult {
+
+    public enum Status {
+        NO_RESULT,
+        OK,
+        CLASS_NOT_FOUND_EXCEPTION,
+        ILLEGAL_ACCESS_EXCEPTION,
+        INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION,
+        IO_EXCEPTION,
+        INVALID_ACTION,
+        JSON_EXCEPTION,
+        ERROR
+    }
+
+    private final Status status;
+    private final Object message;
+    private boolean keepCallback;
+
+    public PluginResult(Status status) {
+        this(status, (Object) null);
+    }
+
+    public PluginResult(Status status, String message) {
+        this(status, (Object) message);
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this(status, (Object) message);
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this(status, (Object) message);
+    }
+
+    public PluginResult(Status status, int i) {
+        this(status, (Object) i);
+    }
+
+    public PluginResult(Status status, float f) {
+        this(status, (Object) f);
+    }
+
+    public PluginResult(Status status, boolean b) {
+        this(status, (Object) b);
+    }
+
+    public PluginResult(Status status, byte[] data) {
+        this(status, (Object) data);
+    }
+
+    public PluginResult(Status status, List<PluginResult> multipartMessages) {
+        this(status, (Object) multipartMessages);
+    }
+
+    private PluginResult(Status status, Object message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public void setKeepCallback(boolean b) {
+        this.keepCallback = b;
+    }
+
+    public int getStatus() {
+        return status.ordinal();
+    }
+
+    public boolean getKeepCallback() {
+        return keepCallback;
+    }
+
+    public String getMessage() {
+        return String.valueOf(message);
+    }
+
+    /**
+     * Not part of the Cordova API
+     */
+    public Object getPayload() {
+        return message;
+    }
+}
@@ -0,0 +1,201 @@
+package com.pbakondy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the box layout of remuxed fixtures with the layout checked in next to them.
+ */
+public class AmrMp4MuxerTest {
+
+    private static final Set<String> CONTAINERS = new HashSet<>(Arrays.asList(
+            "moov", "trak", "mdia", "minf", "dinf", "stbl"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void narrowbandLayout() throws IOException {
+        assertRemux("short.amr");
+    }
+
+    @Test
+    public void widebandLayout() throws IOException {
+        assertRemux("short.awb");
+    }
+
+    @Test
+    public void emptyStream() throws IOException {
+        File input = folder.newFile("empty.amr");
+        Files.write(input.toPath(), "#!AMR\n".getBytes(StandardCharsets.US_ASCII));
+        File output = folder.newFile("empty.mp4");
+
+        AmrParser.Track track = AmrMp4Muxer.remux(input, output);
+        assertEquals(0, track.getFrameCount());
+        String layout = dump(ByteBuffer.wrap(Files.readAllBytes(output.toPath())));
+        assertTrue(layout.contains("stts 16 \n"));
+        assertTrue(layout.contains("stsz 20 sizes=\n"));
+        assertTrue(layout.endsWith("mdat 8\n"));
+    }
+
+    private void assertRemux(String name) throws IOException {
+        File input = AmrParserTest.fixture(name);
+        File output = folder.newFile(name + ".mp4");
+        AmrParser.Track track = AmrMp4Muxer.remux(input, output);
+
+        byte[] mp4 = Files.readAllBytes(output.toPath());
+        assertEquals(expectedLayout(name), dump(ByteBuffer.wrap(mp4)));
+
+        // mdat carries the complete frames unchanged, right where stco points
+        byte[] amr = Files.readAllBytes(input.toPath());
+        int offset = (int) track.getDataOffset();
+        byte[] frames = Arrays.copyOfRange(amr, offset, offset + (int) track.getDataLength());
+        int chunkOffset = mp4.length - frames.length;
+        assertArrayEquals(frames, Arrays.copyOfRange(mp4, chunkOffset, mp4.length));
+    }
+
+    private static String expectedLayout(String name) throws IOException {
+        try (InputStream in = AmrMp4MuxerTest.class.getResourceAsStream("/amr/" + name + ".txt")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Renders one line per box: indentation, type, size and the fields that matter
+     */
+    static String dump(ByteBuffer file) {
+        StringBuilder out = new StringBuilder();
+        dump(file, 0, file.limit(), "", out);
+        return out.toString();
+    }
+
+    private static void dump(ByteBuffer file, int start, int end, String indent, StringBuilder out) {
+        int position = start;
+        while (position < end) {
+            int size = file.getInt(position);
+            String type = fourcc(file, position + 4);
+            out.append(indent).append(type).append(' ').append(size);
+            int body = position + 8;
+            if (CONTAINERS.contains(type)) {
+                out.append('\n');
+                dump(file, body, position + size, indent + "  ", out);
+            } else if (type.equals("mdat")) {
+                out.append('\n');
+            } else {
+                fields(file, type, body, position + size, indent, out);
+            }
+            position += size;
+        }
+    }
+
+    private static void fields(ByteBuffer file, String type, int body, int end, String indent, StringBuilder out) {
+        switch (type) {
+            case "ftyp":
+                out.append(" major=").append(fourcc(file, body))
+                        .append(" minor=").append(file.getInt(body + 4))
+                        .append(" compatible=");
+                for (int i = body + 8; i < end; i += 4) {
+                    out.append(i > body + 8 ? "," : "").append(fourcc(file, i));
+                }
+                break;
+            case "mvhd":
+                out.append(" timescale=").append(file.getInt(body + 12))
+                        .append(" duration=").append(file.getInt(body + 16));
+                break;
+            case "tkhd":
+                out.append(" trackId=").append(file.getInt(body + 12))
+                        .append(" duration=").append(file.getInt(body + 20));
+                break;
+            case "mdhd":
+                out.append(" timescale=").append(file.getInt(body + 12))
+                        .append(" duration=").append(file.getInt(body + 16));
+                break;
+            case "hdlr":
+                out.append(" handler=").append(fourcc(file, body + 8))
+                        .append(" name=").append(string(file, body + 24, end));
+                break;
+            case "smhd":
+                break;
+            case "dref":
+                out.append(" entries=").append(file.getInt(body + 4)).append('\n');
+                dump(file, body + 8, end, indent + "  ", out);
+                return;
+            case "url ":
+                out.append(" flags=").append(file.getInt(body) & 0xFFFFFF);
+                break;
+            case "stsd":
+                out.append(" entries=").append(file.getInt(body + 4)).append('\n');
+                dump(file, body + 8, end, indent + "  ", out);
+                return;
+            case "samr":
+            case "sawb":
+                out.append(" channels=").append(file.getShort(body + 16))
+                        .append(" sampleSize=").append(file.getShort(body + 18))
+                        .append(" sampleRate=").append(file.getInt(body + 24) >>> 16).append('\n');
+                dump(file, body + 28, end, indent + "  ", out);
+                return;
+            case "damr":
+                out.append(String.format(" modeSet=0x%04x", file.getShort(body + 5) & 0xFFFF))
+                        .append(" framesPerSample=").append(file.get(body + 8));
+                break;
+            case "stts":
+                out.append(' ');
+                for (int i = 0; i < file.getInt(body + 4); i++) {
+                    out.append(file.getInt(body + 8 + 8 * i)).append('x').append(file.getInt(body + 12 + 8 * i));
+                }
+                break;
+            case "stsc":
+                if (file.getInt(body + 4) > 0) {
+                    out.append(" firstChunk=").append(file.getInt(body + 8))
+                            .append(" samplesPerChunk=").append(file.getInt(body + 12));
+                }
+                break;
+            case "stsz":
+                out.append(" sizes=");
+                for (int i = 0; i < file.getInt(body + 8); i++) {
+                    out.append(i > 0 ? "," : "").append(file.getInt(body + 12 + 4 * i));
+                }
+                break;
+            case "stco":
+                out.append(" offsets=");
+                for (int i = 0; i < file.getInt(body + 4); i++) {
+                    out.append(i > 0 ? "," : "").append(file.getInt(body + 8 + 4 * i));
+                }
+                break;
+            default:
+                out.append(" unexpected");
+        }
+        out.append('\n');
+    }
+
+    private static String fourcc(ByteBuffer file, int position) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = file.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static String string(ByteBuffer file, int start, int end) {
+        StringBuilder result = new StringBuilder();
+        for (int i = start; i < end && file.get(i) != 0; i++) {
+            result.append((char) file.get(i));
+        }
+        return result.toString();
+    }
+}
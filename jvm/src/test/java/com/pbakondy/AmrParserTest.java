@@ -0,0 +1,172 @@
+package com.pbakondy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AmrParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexesNarrowbandFrames() throws IOException {
+        AmrParser.Track track = parse(fixture("short.amr"));
+
+        assertFalse(track.isWideband());
+        assertEquals(8000, track.getSampleRate());
+        assertEquals(160, track.getSamplesPerFrame());
+        assertEquals(6, track.getDataOffset());
+        // The truncated 11th frame is left out
+        assertEquals(10, track.getFrameCount());
+        assertEquals(199, track.getDataLength());
+        assertEquals(200, track.getDurationMs());
+        // 12.2 and 4.75 kbit/s, SID and NO_DATA are not speech modes
+        assertEquals(0x81, track.getModeSet());
+        assertEquals(32, track.getFrameSize(0));
+        assertEquals(6, track.getFrameSize(5));
+        assertEquals(1, track.getFrameSize(7));
+        assertEquals(13, track.getFrameSize(9));
+    }
+
+    @Test
+    public void indexesWidebandFrames() throws IOException {
+        AmrParser.Track track = parse(fixture("short.awb"));
+
+        assertTrue(track.isWideband());
+        assertEquals(16000, track.getSampleRate());
+        assertEquals(320, track.getSamplesPerFrame());
+        assertEquals(9, track.getDataOffset());
+        assertEquals(5, track.getFrameCount());
+        assertEquals(222, track.getDataLength());
+        assertEquals(0x104, track.getModeSet());
+    }
+
+    @Test
+    public void writesFrameRange() throws IOException {
+        File input = fixture("short.amr");
+        AmrParser.Track track = parse(input);
+        File output = folder.newFile("range.amr");
+        try (FileInputStream in = new FileInputStream(input);
+             FileOutputStream out = new FileOutputStream(output)) {
+            AmrParser.writeFrames(in.getChannel(), track, 2, 7, out.getChannel());
+        }
+
+        AmrParser.Track range = parse(output);
+        assertFalse(range.isWideband());
+        assertEquals(5, range.getFrameCount());
+        long skipped = 0;
+        for (int i = 0; i < 2; i++) {
+            skipped += track.getFrameSize(i);
+        }
+        long length = 0;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(track.getFrameSize(i + 2), range.getFrameSize(i));
+            length += range.getFrameSize(i);
+        }
+        assertEquals(length, range.getDataLength());
+
+        byte[] original = Files.readAllBytes(input.toPath());
+        byte[] written = Files.readAllBytes(output.toPath());
+        assertEquals(6 + length, written.length);
+        assertArrayEquals(Arrays.copyOfRange(original, (int) (6 + skipped), (int) (6 + skipped + length)),
+                Arrays.copyOfRange(written, 6, written.length));
+    }
+
+    @Test
+    public void growsIndexPastInitialCapacity() throws IOException {
+        File file = folder.newFile("long.amr");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("#!AMR\n".getBytes(StandardCharsets.US_ASCII));
+            byte[] frame = new byte[32];
+            frame[0] = 7 << 3 | 0x04;
+            // More than the 256 initial entries and the 16 KB read buffer
+            for (int i = 0; i < 3000; i++) {
+                out.write(frame);
+            }
+        }
+        AmrParser.Track track = parse(file);
+        assertEquals(3000, track.getFrameCount());
+        assertEquals(3000 * 32, track.getDataLength());
+        assertEquals(60000, track.getDurationMs());
+    }
+
+    @Test
+    public void emptyStreamHasNoFrames() throws IOException {
+        File file = folder.newFile("empty.amr");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("#!AMR\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        AmrParser.Track track = parse(file);
+        assertEquals(0, track.getFrameCount());
+        assertEquals(0, track.getDataLength());
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("riff.wav");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("RIFF....WAVE".getBytes(StandardCharsets.US_ASCII));
+        }
+        try {
+            parse(file);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Not an AMR file", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsInvalidFrameType() throws IOException {
+        File file = folder.newFile("broken.amr");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("#!AMR\n".getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[]{12 << 3, 0, 0});
+        }
+        try {
+            parse(file);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Invalid AMR frame type 12 at 6", expected.getMessage());
+        }
+    }
+
+    private static AmrParser.Track parse(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return AmrParser.parse(in.getChannel());
+        }
+    }
+
+    /**
+     * Copies a fixture out of the class path
+     */
+    static File fixture(String name) throws IOException {
+        File file = File.createTempFile("fixture", name);
+        file.deleteOnExit();
+        try (InputStream in = AmrParserTest.class.getResourceAsStream("/amr/" + name);
+             FileOutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,132 @@
+package com.pbakondy;
+
+import androidx.media3.transformer.ExportException;
+import androidx.media3.transformer.Transformer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AudioConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AudioConverter converter = new AudioConverter(new FakeContext());
+
+    @Before
+    public void setUp() {
+        Transformer.clearStarted();
+    }
+
+    @After
+    public void tearDown() {
+        converter.release();
+    }
+
+    @Test
+    public void amrIsRemuxed() throws Exception {
+        File input = AmrParserTest.fixture("short.amr");
+        File output = new File(folder.getRoot(), "out/short.mp4");
+
+        AudioConverter.Result result = converter.convert(input.getPath(), output.getPath(), AudioConverter.FORMAT_AMR)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, result.durationMs);
+        assertEquals(output.length(), result.fileSizeBytes);
+        byte[] file = Files.readAllBytes(output.toPath());
+        assertEquals("ftyp", new String(Arrays.copyOfRange(file, 4, 8), StandardCharsets.US_ASCII));
+        assertTrue(Transformer.getStarted().isEmpty());
+    }
+
+    @Test
+    public void brokenAmrFailsTheConversion() throws Exception {
+        File input = folder.newFile("broken.amr");
+        Files.write(input.toPath(), "RIFF....WAVE".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            converter.convert(input.getPath(), new File(folder.getRoot(), "broken.mp4").getPath(),
+                    AudioConverter.FORMAT_AMR).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void cancelledRemuxEndsCancelled() {
+        AudioConverter.Conversion conversion = converter.start("/data/voice.amr",
+                new File(folder.getRoot(), "never.mp4").getPath(), AudioConverter.FORMAT_AMR);
+        conversion.cancel();
+
+        assertTrue(conversion.getFuture().isCancelled());
+    }
+
+    @Test
+    public void aacIsTranscodedWithProgress() throws Exception {
+        File output = new File(folder.getRoot(), "out/voice.mp4");
+        AudioConverter.Conversion conversion = converter.start("/data/voice.amr", output.getPath(),
+                AudioConverter.FORMAT_AAC);
+
+        Transformer transformer = Transformer.getStarted().get(0);
+        assertEquals(output.getPath(), transformer.getOutputPath());
+        assertTrue(transformer.getItem().removeVideo);
+        assertTrue(transformer.getItem().mediaItem.getUri().endsWith("/data/voice.amr"));
+        // The output directory is made before the transformer writes into it
+        assertTrue(output.getParentFile().isDirectory());
+
+        assertEquals(-1, conversion.getProgress());
+        transformer.setProgress(40);
+        assertEquals(40, conversion.getProgress());
+
+        transformer.complete(1234, 5678);
+        AudioConverter.Result result = conversion.getFuture().get(0, TimeUnit.SECONDS);
+        assertEquals(1234, result.durationMs);
+        assertEquals(5678, result.fileSizeBytes);
+        assertEquals(100, conversion.getProgress());
+    }
+
+    @Test
+    public void transcodeErrorFailsTheConversion() throws Exception {
+        AudioConverter.Conversion conversion = converter.start("/data/voice.amr",
+                new File(folder.getRoot(), "voice.mp4").getPath(), AudioConverter.FORMAT_AAC);
+        Transformer.getStarted().get(0).fail("no encoder");
+
+        try {
+            conversion.getFuture().get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof ExportException);
+        }
+    }
+
+    @Test
+    public void cancelStopsTheTransformer() throws Exception {
+        AudioConverter.Conversion conversion = converter.start("/data/voice.amr",
+                new File(folder.getRoot(), "voice.mp4").getPath(), AudioConverter.FORMAT_AAC);
+        Transformer transformer = Transformer.getStarted().get(0);
+        conversion.cancel();
+
+        assertTrue(transformer.isCancelled());
+        try {
+            conversion.getFuture().get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException expected) {
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.pbakondy;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+
+import androidx.media3.transformer.Transformer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConversionSchedulerTest {
+
+    private final MessageQueue mainQueue = Looper.getMainLooper().getQueue();
+    private final AudioConverter converter = new AudioConverter(new FakeContext());
+    private final List<String> progress = new ArrayList<>();
+    private ConversionScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        mainQueue.clear();
+        Transformer.clearStarted();
+        scheduler = new ConversionScheduler(converter, 1);
+        scheduler.setProgressListener(new ConversionScheduler.ProgressListener() {
+            @Override
+            public void onProgress(ConversionScheduler.Job job, int percent) {
+                progress.add(job.getOutputPath() + " " + percent);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        converter.release();
+        mainQueue.clear();
+    }
+
+    @Test
+    public void encodersAreLimitedAndNewestStartsFirst() throws Exception {
+        submit("a");
+        submit("b");
+        submit("c");
+        assertEquals(Arrays.asList("a"), startedOutputs());
+
+        finish(0);
+        assertEquals(Arrays.asList("a", "c"), startedOutputs());
+        finish(1);
+        assertEquals(Arrays.asList("a", "c", "b"), startedOutputs());
+    }
+
+    @Test
+    public void sameOutputIsCoalesced() throws Exception {
+        ConversionScheduler.Job a = submit("a");
+        assertSame(a, submit("a"));
+        // Another format is another conversion
+        assertFalse(a == scheduler.submit("in", "a", AudioConverter.FORMAT_AMR).get());
+
+        finish(0);
+        assertTrue(a.getFuture().isDone());
+        assertFalse(a == submit("a"));
+    }
+
+    @Test
+    public void cancelledPendingJobNeverStarts() throws Exception {
+        submit("a");
+        ConversionScheduler.Job b = submit("b");
+        scheduler.cancel(b);
+        mainQueue.runDue();
+
+        assertCancelled(b);
+        finish(0);
+        assertEquals(Arrays.asList("a"), startedOutputs());
+    }
+
+    @Test
+    public void cancelledRunningJobMakesRoom() throws Exception {
+        ConversionScheduler.Job a = submit("a");
+        submit("b");
+        scheduler.cancel(a);
+        mainQueue.runDue();
+
+        assertTrue(Transformer.getStarted().get(0).isCancelled());
+        assertCancelled(a);
+        assertEquals(Arrays.asList("a", "b"), startedOutputs());
+    }
+
+    @Test
+    public void cancelAllStartsNothingNew() throws Exception {
+        List<ConversionScheduler.Job> jobs = Arrays.asList(submit("a"), submit("b"), submit("c"));
+        scheduler.cancelAll();
+        mainQueue.runDue();
+
+        for (ConversionScheduler.Job job : jobs) {
+            assertCancelled(job);
+        }
+        assertEquals(Arrays.asList("a"), startedOutputs());
+        assertTrue(Transformer.getStarted().get(0).isCancelled());
+    }
+
+    @Test
+    public void progressIsPolledWhileRunning() throws Exception {
+        submit("a");
+        Transformer transformer = Transformer.getStarted().get(0);
+
+        SystemClock.advance(100);
+        mainQueue.runDue();
+        transformer.setProgress(30);
+        SystemClock.advance(100);
+        mainQueue.runDue();
+        SystemClock.advance(100);
+        mainQueue.runDue();
+        transformer.setProgress(60);
+        SystemClock.advance(100);
+        mainQueue.runDue();
+        finish(0);
+        SystemClock.advance(100);
+        mainQueue.runDue();
+
+        // Unchanged progress is not repeated, the poller ends with the job
+        assertEquals(Arrays.asList("a 30", "a 60", "a 100"), progress);
+        assertEquals(0, mainQueue.size());
+    }
+
+    @Test
+    public void staleJobsAreDropped() throws Exception {
+        scheduler.setStaleAfterMs(1000);
+        submit("a");
+        ConversionScheduler.Job b = submit("b");
+
+        SystemClock.advance(1001);
+        finish(0);
+
+        assertCancelled(b);
+        assertEquals(Arrays.asList("a"), startedOutputs());
+    }
+
+    @Test
+    public void remuxDoesNotWaitForEncoder() throws Exception {
+        submit("a");
+        File input = AmrParserTest.fixture("short.amr");
+        File output = File.createTempFile("remux", ".mp4");
+        output.deleteOnExit();
+        ConversionScheduler.Job remux = scheduler.submit(input.getPath(), output.getPath(),
+                AudioConverter.FORMAT_AMR).get();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!remux.getFuture().isDone()) {
+            if (System.nanoTime() > deadline) {
+                fail("remux not done");
+            }
+            mainQueue.runDue();
+            Thread.sleep(1);
+        }
+        assertEquals(200, remux.getFuture().get().durationMs);
+        assertTrue(progress.contains(output.getPath() + " 100"));
+    }
+
+    private ConversionScheduler.Job submit(String output) throws Exception {
+        CompletableFuture<ConversionScheduler.Job> submitted = scheduler.submit("in", output, AudioConverter.FORMAT_AAC);
+        // Called on the main looper, so it is queued right away
+        assertTrue(submitted.isDone());
+        return submitted.get();
+    }
+
+    /**
+     * Completes the started transformer at the index and delivers the result
+     */
+    private void finish(int index) {
+        Transformer.getStarted().get(index).complete(1000, 100);
+        mainQueue.runDue();
+    }
+
+    private static List<String> startedOutputs() {
+        List<String> outputs = new ArrayList<>();
+        for (Transformer transformer : Transformer.getStarted()) {
+            outputs.add(transformer.getOutputPath());
+        }
+        return outputs;
+    }
+
+    private static void assertCancelled(ConversionScheduler.Job job) throws Exception {
+        try {
+            job.getFuture().get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof CancellationException);
+        } catch (CancellationException expected) {
+        }
+    }
+}
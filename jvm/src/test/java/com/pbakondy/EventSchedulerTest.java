@@ -0,0 +1,183 @@
+package com.pbakondy;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventSchedulerTest {
+
+    private Handler handler;
+    private EventScheduler scheduler;
+    private CallbackContext callbackContext;
+    private int value;
+
+    @Before
+    public void setUp() {
+        handler = new Handler();
+        scheduler = new EventScheduler(handler);
+        callbackContext = new CallbackContext();
+        scheduler.start(callbackContext, 100);
+    }
+
+    @Test
+    public void firstEventIsDeliveredRightAway() throws Exception {
+        scheduler.send("partial", event("partial"));
+        assertEquals(1, callbackContext.getResults().size());
+        assertEquals(0, handler.getPendingCount());
+    }
+
+    @Test
+    public void eventsWithinIntervalAreCoalesced() throws Exception {
+        scheduler.send("partial", event("partial"));
+        scheduler.send("partial", event("partial"));
+        scheduler.send("partial", event("partial"));
+        assertEquals(1, callbackContext.getResults().size());
+        assertEquals(1, handler.getPendingCount());
+
+        SystemClock.advance(99);
+        assertEquals(0, handler.runDue());
+        SystemClock.advance(1);
+        assertEquals(1, handler.runDue());
+
+        List<PluginResult> results = callbackContext.getResults();
+        assertEquals(2, results.size());
+        // Built on delivery, so it carries the newest value
+        assertEquals(value, payload(results.get(1)).getInt("value"));
+        assertEquals(2, scheduler.getDelivered());
+        assertEquals(1, scheduler.getCoalesced());
+    }
+
+    @Test
+    public void typesAreKeptApart() throws Exception {
+        scheduler.send("partial", event("partial"));
+        scheduler.send("partial", event("partial"));
+        scheduler.send("rms", event("rms"));
+        SystemClock.advance(100);
+        handler.runDue();
+
+        List<PluginResult> results = callbackContext.getResults();
+        assertEquals(3, results.size());
+        assertEquals("partial", payload(results.get(1)).getString("type"));
+        assertEquals("rms", payload(results.get(2)).getString("type"));
+        assertEquals(0, scheduler.getCoalesced());
+    }
+
+    @Test
+    public void finishDropsPendingAndEndsSession() throws Exception {
+        scheduler.send("partial", event("partial"));
+        scheduler.send("partial", event("partial"));
+        scheduler.finish(new PluginResult(PluginResult.Status.OK, "done"));
+
+        List<PluginResult> results = callbackContext.getResults();
+        assertEquals(2, results.size());
+        assertFalse(results.get(1).getKeepCallback());
+        assertEquals(1, scheduler.getDropped());
+        assertNull(scheduler.getCallbackContext());
+        assertEquals(0, handler.getPendingCount());
+
+        scheduler.send("partial", event("partial"));
+        assertEquals(2, callbackContext.getResults().size());
+    }
+
+    @Test
+    public void startDropsEventsOfPreviousSession() throws Exception {
+        scheduler.send("partial", event("partial"));
+        scheduler.send("partial", event("partial"));
+
+        CallbackContext next = new CallbackContext();
+        scheduler.start(next, 100);
+        SystemClock.advance(100);
+        handler.runDue();
+
+        assertEquals(1, callbackContext.getResults().size());
+        assertEquals(0, next.getResults().size());
+        assertEquals(1, scheduler.getDropped());
+    }
+
+    @Test
+    public void channelGetsTheSamePacedEvents() throws Exception {
+        EventChannel channel = new EventChannel();
+        CallbackContext subscriber = new CallbackContext();
+        channel.subscribe(subscriber);
+        scheduler = new EventScheduler(handler, channel);
+        scheduler.start(callbackContext, 100, 7);
+
+        scheduler.send("partial", EventChannel.PARTIAL, flagged("isPartial"));
+        scheduler.send("partial", EventChannel.PARTIAL, flagged("isPartial"));
+        scheduler.send("partial", EventChannel.PARTIAL, flagged("isPartial"));
+        scheduler.send("speech", flagged("isSpeech"));
+        SystemClock.advance(100);
+        handler.runDue();
+
+        // The subscribe result and two partials, the coalesced one and the rest stay off
+        List<PluginResult> events = subscriber.getResults();
+        assertEquals(3, events.size());
+        JSONObject last = payload(events.get(2));
+        assertEquals("partial", last.getString("type"));
+        assertEquals(7, last.getInt("session"));
+        assertEquals(1, last.getLong("seq"));
+        assertEquals(value, last.getInt("value"));
+        assertFalse(last.has("isPartial"));
+
+        JSONObject delivered = payload(callbackContext.getResults().get(1));
+        assertTrue(delivered.getBoolean("isPartial"));
+        assertFalse(delivered.has("seq"));
+    }
+
+    @Test
+    public void newSubscriberClosesThePrevious() {
+        EventChannel channel = new EventChannel();
+        CallbackContext first = new CallbackContext();
+        CallbackContext second = new CallbackContext();
+        channel.subscribe(first);
+        channel.subscribe(second);
+
+        assertTrue(first.isFinished());
+        List<PluginResult> results = first.getResults();
+        assertEquals(PluginResult.Status.ERROR.ordinal(), results.get(results.size() - 1).getStatus());
+        assertFalse(second.isFinished());
+    }
+
+    private EventScheduler.Event flagged(final String flag) {
+        value++;
+        return new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject();
+                result.put(flag, true);
+                result.put("value", value);
+                return result;
+            }
+        };
+    }
+
+    private EventScheduler.Event event(final String type) {
+        value++;
+        return new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject();
+                result.put("type", type);
+                result.put("value", value);
+                return result;
+            }
+        };
+    }
+
+    private static JSONObject payload(PluginResult result) {
+        return (JSONObject) result.getPayload();
+    }
+}
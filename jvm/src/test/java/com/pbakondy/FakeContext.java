@@ -0,0 +1,162 @@
+package com.pbakondy;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Context with in-memory preferences, installed packages set by the test and ordered
+ * broadcasts that are only recorded. The main executor runs on the calling thread.
+ */
+class FakeContext extends Context {
+
+    static class Broadcast {
+
+        final Intent intent;
+        final BroadcastReceiver receiver;
+
+        Broadcast(Intent intent, BroadcastReceiver receiver) {
+            this.intent = intent;
+            this.receiver = receiver;
+        }
+
+        /**
+         * Delivers the result of the broadcast to its receiver
+         */
+        void answer(Bundle extras) {
+            receiver.setResultExtras(extras);
+            receiver.onReceive(null, intent);
+        }
+    }
+
+    private final Map<String, MemoryPreferences> preferences = new HashMap<>();
+    private final Map<String, Long> packages = new HashMap<>();
+    private final List<Broadcast> broadcasts = new ArrayList<>();
+
+    private final PackageManager packageManager = new PackageManager() {
+        @Override
+        public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+            Long version = packages.get(packageName);
+            if (version == null) {
+                throw new NameNotFoundException(packageName);
+            }
+            PackageInfo info = new PackageInfo();
+            info.packageName = packageName;
+            info.setLongVersionCode(version);
+            return info;
+        }
+    };
+
+    @Override
+    public MemoryPreferences getSharedPreferences(String name, int mode) {
+        MemoryPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new MemoryPreferences();
+            preferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    @Override
+    public Executor getMainExecutor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+    }
+
+    @Override
+    public void sendOrderedBroadcast(Intent intent, String receiverPermission, BroadcastReceiver resultReceiver,
+                                     Handler scheduler, int initialCode, String initialData, Bundle initialExtras) {
+        broadcasts.add(new Broadcast(intent, resultReceiver));
+    }
+
+    void install(String packageName, long versionCode) {
+        packages.put(packageName, versionCode);
+    }
+
+    List<Broadcast> getBroadcasts() {
+        return broadcasts;
+    }
+
+    static class MemoryPreferences implements SharedPreferences {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public synchronized String getString(String key, String defValue) {
+            Object value = values.get(key);
+            return value instanceof String ? (String) value : defValue;
+        }
+
+        @Override
+        public synchronized long getLong(String key, long defValue) {
+            Object value = values.get(key);
+            return value instanceof Long ? (Long) value : defValue;
+        }
+
+        synchronized boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                private final Map<String, Object> changes = new HashMap<>();
+                private boolean clear;
+
+                @Override
+                public Editor putString(String key, String value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putLong(String key, long value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    clear = true;
+                    return this;
+                }
+
+                @Override
+                public void apply() {
+                    synchronized (MemoryPreferences.this) {
+                        if (clear) {
+                            values.clear();
+                        }
+                        for (Map.Entry<String, Object> change : changes.entrySet()) {
+                            if (change.getValue() == null) {
+                                values.remove(change.getKey());
+                            } else {
+                                values.put(change.getKey(), change.getValue());
+                            }
+                        }
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.pbakondy;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reference decoder for the subset of FLAC that {@link FlacEncoder} writes: one channel,
+ * 16 bits, fixed block size, CONSTANT, VERBATIM, FIXED and LPC subframes with Rice coded
+ * residuals. Every field the encoder writes is checked, including frame numbers and CRCs.
+ */
+class FlacDecoder {
+
+    static class Stream {
+
+        int minBlockSize;
+        int maxBlockSize;
+        int minFrameSize;
+        int maxFrameSize;
+        int sampleRate;
+        int channels;
+        int bitsPerSample;
+        long totalSamples;
+        int frames;
+        short[] samples;
+    }
+
+    private final byte[] data;
+    private long bit;
+
+    private FlacDecoder(byte[] data) {
+        this.data = data;
+    }
+
+    static Stream decode(byte[] data) throws IOException {
+        return new FlacDecoder(data).decode();
+    }
+
+    private Stream decode() throws IOException {
+        if (bits(32) != 0x664C6143) {
+            throw new IOException("Not a FLAC stream");
+        }
+        int last = bits(1);
+        int blockType = bits(7);
+        int blockLength = bits(24);
+        if (last != 1 || blockType != 0 || blockLength != 34) {
+            throw new IOException("Expected STREAMINFO as the only metadata block");
+        }
+
+        Stream stream = new Stream();
+        stream.minBlockSize = bits(16);
+        stream.maxBlockSize = bits(16);
+        stream.minFrameSize = bits(24);
+        stream.maxFrameSize = bits(24);
+        stream.sampleRate = bits(20);
+        stream.channels = bits(3) + 1;
+        stream.bitsPerSample = bits(5) + 1;
+        stream.totalSamples = ((long) bits(4) << 32) | (bits(32) & 0xFFFFFFFFL);
+        bit += 16 * 8; // MD5
+
+        short[] samples = new short[1024];
+        int count = 0;
+        while (bit / 8 < data.length) {
+            int[] block = frame(stream.frames);
+            if (count + block.length > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + block.length));
+            }
+            for (int sample : block) {
+                samples[count++] = (short) sample;
+            }
+            stream.frames++;
+        }
+        stream.samples = Arrays.copyOf(samples, count);
+        return stream;
+    }
+
+    private int[] frame(int number) throws IOException {
+        int start = (int) (bit / 8);
+        if (bits(15) != 0x7FFC || bits(1) != 0) {
+            throw new IOException("Lost frame sync at " + start);
+        }
+        int blockSizeCode = bits(4);
+        int sampleRateCode = bits(4);
+        int channelCode = bits(4);
+        int sampleSizeCode = bits(3);
+        bits(1);
+        if (sampleRateCode != 0 || channelCode != 0 || sampleSizeCode != 4) {
+            throw new IOException("Unexpected frame header at " + start);
+        }
+        long frameNumber = utf8();
+        if (frameNumber != number) {
+            throw new IOException("Frame " + frameNumber + " where " + number + " was expected");
+        }
+        int blockSize;
+        if (blockSizeCode == 12) {
+            blockSize = 4096;
+        } else if (blockSizeCode == 6) {
+            blockSize = bits(8) + 1;
+        } else if (blockSizeCode == 7) {
+            blockSize = bits(16) + 1;
+        } else {
+            throw new IOException("Unexpected block size code " + blockSizeCode);
+        }
+        int crc8 = crc8(start, (int) (bit / 8));
+        if (bits(8) != crc8) {
+            throw new IOException("Header CRC mismatch in frame " + number);
+        }
+
+        int[] block = subframe(blockSize);
+
+        bit = (bit + 7) / 8 * 8;
+        int crc16 = crc16(start, (int) (bit / 8));
+        if (bits(16) != crc16) {
+            throw new IOException("CRC mismatch in frame " + number);
+        }
+        return block;
+    }
+
+    private int[] subframe(int blockSize) throws IOException {
+        int[] block = new int[blockSize];
+        if (bits(1) != 0) {
+            throw new IOException("Subframe padding");
+        }
+        int type = bits(6);
+        if (bits(1) != 0) {
+            throw new IOException("Wasted bits are not written");
+        }
+
+        if (type == 0) {
+            Arrays.fill(block, signed(16));
+            return block;
+        }
+        if (type == 1) {
+            for (int i = 0; i < blockSize; i++) {
+                block[i] = signed(16);
+            }
+            return block;
+        }
+
+        boolean lpc = (type & 0x20) != 0;
+        if (!lpc && (type & 0x38) != 0x08) {
+            throw new IOException("Reserved subframe type " + type);
+        }
+        int order = lpc ? (type & 0x1F) + 1 : type & 0x07;
+        if (!lpc && order > 4) {
+            throw new IOException("Reserved fixed order " + order);
+        }
+        for (int i = 0; i < order; i++) {
+            block[i] = signed(16);
+        }
+        int[] coefficients = null;
+        int shift = 0;
+        if (lpc) {
+            int precision = bits(4) + 1;
+            shift = signed(5);
+            coefficients = new int[order];
+            for (int i = 0; i < order; i++) {
+                coefficients[i] = signed(precision);
+            }
+        }
+
+        residual(block, order);
+
+        for (int i = order; i < blockSize; i++) {
+            long prediction = 0;
+            if (lpc) {
+                for (int j = 0; j < order; j++) {
+                    prediction += (long) coefficients[j] * block[i - 1 - j];
+                }
+                prediction >>= shift;
+            } else if (order == 1) {
+                prediction = block[i - 1];
+            } else if (order == 2) {
+                prediction = 2L * block[i - 1] - block[i - 2];
+            } else if (order == 3) {
+                prediction = 3L * block[i - 1] - 3L * block[i - 2] + block[i - 3];
+            } else if (order == 4) {
+                prediction = 4L * block[i - 1] - 6L * block[i - 2] + 4L * block[i - 3] - block[i - 4];
+            }
+            block[i] += (int) prediction;
+        }
+        return block;
+    }
+
+    /**
+     * Reads the residual into the block, the prediction is added afterwards
+     */
+    private void residual(int[] block, int order) throws IOException {
+        if (bits(2) != 0) {
+            throw new IOException("Only 4 bit Rice parameters are written");
+        }
+        int partitionOrder = bits(4);
+        int partitions = 1 << partitionOrder;
+        int index = order;
+        for (int partition = 0; partition < partitions; partition++) {
+            int parameter = bits(4);
+            if (parameter == 15) {
+                throw new IOException("Escaped partitions are not written");
+            }
+            int count = (block.length >> partitionOrder) - (partition == 0 ? order : 0);
+            for (int i = 0; i < count; i++) {
+                long quotient = 0;
+                while (bits(1) == 0) {
+                    quotient++;
+                }
+                long folded = (quotient << parameter) | (parameter > 0 ? bits(parameter) : 0);
+                block[index++] = (int) ((folded >>> 1) ^ -(folded & 1));
+            }
+        }
+    }
+
+    private long utf8() throws IOException {
+        int lead = bits(8);
+        if (lead < 0x80) {
+            return lead;
+        }
+        int continuation = Integer.numberOfLeadingZeros(~lead << 24) - 1;
+        if (continuation < 1 || continuation > 6) {
+            throw new IOException("Invalid frame number");
+        }
+        long value = lead & (0x3F >> continuation);
+        for (int i = 0; i < continuation; i++) {
+            int next = bits(8);
+            if ((next & 0xC0) != 0x80) {
+                throw new IOException("Invalid frame number");
+            }
+            value = (value << 6) | (next & 0x3F);
+        }
+        return value;
+    }
+
+    private int bits(int count) throws IOException {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (int) (bit >> 3);
+            if (index >= data.length) {
+                throw new IOException("Unexpected end of stream");
+            }
+            value = (value << 1) | ((data[index] >> (7 - (int) (bit & 7))) & 1);
+            bit++;
+        }
+        return value;
+    }
+
+    private int signed(int count) throws IOException {
+        int value = bits(count);
+        return (value << (32 - count)) >> (32 - count);
+    }
+
+    private int crc8(int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private int crc16(int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+}
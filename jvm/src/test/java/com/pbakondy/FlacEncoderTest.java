@@ -0,0 +1,189 @@
+package com.pbakondy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlacEncoderTest {
+
+    private static final int RATE = 16000;
+    // Two full blocks and a partial one
+    private static final int LENGTH = 2 * 4096 + 1234;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void silence() throws IOException {
+        FlacDecoder.Stream stream = roundTrip(new short[LENGTH], 3200);
+        // Constant subframes
+        assertTrue(stream.maxFrameSize < 20);
+    }
+
+    @Test
+    public void tone() throws IOException {
+        FlacDecoder.Stream stream = roundTrip(tone(LENGTH), 640);
+        assertTrue("compressed to " + ratio(stream), ratio(stream) < 0.6);
+    }
+
+    @Test
+    public void noise() throws IOException {
+        Random random = new Random(1);
+        short[] pcm = new short[LENGTH];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) random.nextInt(65536);
+        }
+        FlacDecoder.Stream stream = roundTrip(pcm, 4096);
+        // Verbatim is the fallback, a frame is never much larger than the raw block
+        assertTrue(stream.maxFrameSize <= 4096 * 2 + 20);
+    }
+
+    @Test
+    public void fullScaleSquare() throws IOException {
+        short[] pcm = new short[LENGTH];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (i / 7) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        roundTrip(pcm, 8192);
+    }
+
+    @Test
+    public void oddChunkSizes() throws IOException {
+        short[] pcm = tone(LENGTH);
+        // Odd sizes split samples between two writes
+        for (int chunk : new int[]{1, 3, 333, 641, 4095}) {
+            roundTrip(pcm, chunk);
+        }
+    }
+
+    @Test
+    public void fewerSamplesThanPredictorOrder() throws IOException {
+        roundTrip(new short[]{1000}, 1);
+        roundTrip(new short[]{0, 1000, 2000, -3000, 4000}, 1);
+    }
+
+    @Test
+    public void emptyStream() throws IOException {
+        FlacDecoder.Stream stream = roundTrip(new short[0], 1);
+        assertEquals(0, stream.frames);
+        assertEquals(0, stream.minFrameSize);
+    }
+
+    @Test
+    public void manyFrames() throws IOException {
+        // More frames than the initial offset table and frame numbers above 127
+        Random random = new Random(2);
+        short[] pcm = new short[300 * 4096];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (random.nextGaussian() * 1000);
+        }
+        FlacDecoder.Stream stream = roundTrip(pcm, 3200);
+        assertEquals(300, stream.frames);
+    }
+
+    @Test
+    public void truncateDropsWholeFrames() throws IOException {
+        short[] pcm = tone(LENGTH);
+        File file = folder.newFile();
+        FlacEncoder encoder = new FlacEncoder(RATE);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            encoder.start(output.getChannel());
+            encoder.write(pcm(pcm));
+            encoder.finish();
+            // Rounded up to the frame that holds the sample
+            assertEquals(2 * 4096, encoder.truncate(5000));
+            assertEquals(2 * 4096, encoder.truncate(LENGTH));
+        }
+
+        FlacDecoder.Stream stream = FlacDecoder.decode(Files.readAllBytes(file.toPath()));
+        assertEquals(2, stream.frames);
+        assertEquals(2 * 4096, stream.totalSamples);
+        assertEquals(0, stream.minFrameSize);
+        assertEquals(0, stream.maxFrameSize);
+        short[] expected = new short[2 * 4096];
+        System.arraycopy(pcm, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, stream.samples);
+    }
+
+    @Test
+    public void encoderCanBeReused() throws IOException {
+        FlacEncoder encoder = new FlacEncoder(RATE);
+        encode(encoder, folder.newFile(), tone(LENGTH), 1);
+        short[] pcm = tone(5000);
+        File file = folder.newFile();
+        encode(encoder, file, pcm, 641);
+        FlacDecoder.Stream stream = FlacDecoder.decode(Files.readAllBytes(file.toPath()));
+        assertArrayEquals(pcm, stream.samples);
+        assertEquals(2, stream.frames);
+    }
+
+    private FlacDecoder.Stream roundTrip(short[] pcm, int chunkBytes) throws IOException {
+        File file = folder.newFile();
+        encode(new FlacEncoder(RATE), file, pcm, chunkBytes);
+
+        FlacDecoder.Stream stream = FlacDecoder.decode(Files.readAllBytes(file.toPath()));
+        assertArrayEquals("chunks of " + chunkBytes, pcm, stream.samples);
+        assertEquals(pcm.length, stream.totalSamples);
+        assertEquals(RATE, stream.sampleRate);
+        assertEquals(1, stream.channels);
+        assertEquals(16, stream.bitsPerSample);
+        assertEquals(4096, stream.minBlockSize);
+        assertEquals(4096, stream.maxBlockSize);
+        assertTrue(stream.minFrameSize <= stream.maxFrameSize);
+        return stream;
+    }
+
+    private static void encode(FlacEncoder encoder, File file, short[] pcm, int chunkBytes) throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = output.getChannel();
+            encoder.start(channel);
+            ByteBuffer bytes = pcm(pcm);
+            while (bytes.hasRemaining()) {
+                ByteBuffer chunk = bytes.slice();
+                chunk.limit(Math.min(chunkBytes, bytes.remaining()));
+                bytes.position(bytes.position() + chunk.limit());
+                encoder.write(chunk);
+                assertEquals(chunk.limit(), chunk.position());
+            }
+            encoder.finish();
+            assertEquals(pcm.length, encoder.getSamples());
+        }
+    }
+
+    static ByteBuffer pcm(short[] samples) {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        return bytes;
+    }
+
+    /**
+     * Two tones and a little noise, roughly as compressible as speech
+     */
+    static short[] tone(int length) {
+        Random random = new Random(3);
+        short[] pcm = new short[length];
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / RATE)
+                    + 3000 * Math.sin(2 * Math.PI * 1234 * i / RATE)
+                    + random.nextGaussian() * 50);
+        }
+        return pcm;
+    }
+
+    private static double ratio(FlacDecoder.Stream stream) {
+        return (double) stream.maxFrameSize / (4096 * 2);
+    }
+}
@@ -0,0 +1,194 @@
+package com.pbakondy;
+
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.speech.RecognizerIntent;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LanguageDetailsCheckerTest {
+
+    private static final String RECOGNIZER = "com.example.recognizer";
+    private static final String PREFERENCES = "com.pbakondy.SpeechRecognition.languages";
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private final MessageQueue mainQueue = Looper.getMainLooper().getQueue();
+    private FakeContext context;
+
+    @Before
+    public void setUp() {
+        mainQueue.clear();
+        RecognizerIntent.setDetailsPackage(RECOGNIZER);
+        context = new FakeContext();
+        context.install(RECOGNIZER, 1);
+    }
+
+    @After
+    public void tearDown() {
+        RecognizerIntent.setDetailsPackage(null);
+        mainQueue.clear();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneBroadcast() throws Exception {
+        LanguageDetailsChecker checker = new LanguageDetailsChecker(context);
+        CallbackContext first = new CallbackContext();
+        CallbackContext second = new CallbackContext();
+        checker.request(first, false);
+        checker.request(second, true);
+
+        assertEquals(1, context.getBroadcasts().size());
+        assertEquals(RECOGNIZER, context.getBroadcasts().get(0).intent.getPackage());
+        assertEquals(0, first.getResults().size());
+
+        context.getBroadcasts().get(0).answer(details("en-US", "de-DE", "hu-HU"));
+
+        assertEquals(new JSONArray(Arrays.asList("en-US", "de-DE", "hu-HU")).toString(),
+                payload(first).toString());
+        JSONObject answer = (JSONObject) payload(second);
+        assertEquals(3, answer.getJSONArray("languages").length());
+        assertEquals("en-US", answer.getString("languagePreference"));
+        // The timeout went with the answer
+        assertEquals(0, mainQueue.size());
+    }
+
+    @Test
+    public void freshCacheAnswersWithoutBroadcast() {
+        fetch(new LanguageDetailsChecker(context), "en-US", "de-DE");
+
+        LanguageDetailsChecker restarted = new LanguageDetailsChecker(context);
+        CallbackContext callbackContext = new CallbackContext();
+        restarted.request(callbackContext, false);
+
+        assertTrue(callbackContext.isFinished());
+        assertEquals(1, context.getBroadcasts().size());
+        assertEquals(Arrays.asList("en-US", "de-DE"), restarted.getSupportedLanguages());
+    }
+
+    @Test
+    public void staleCacheAnswersAndRefreshesOnce() {
+        fetch(new LanguageDetailsChecker(context), "en-US");
+        FakeContext.MemoryPreferences preferences = context.getSharedPreferences(PREFERENCES, 0);
+        preferences.edit().putLong("fetchedAt", System.currentTimeMillis() - DAY_MS - 1000).apply();
+
+        LanguageDetailsChecker checker = new LanguageDetailsChecker(context);
+        CallbackContext first = new CallbackContext();
+        CallbackContext second = new CallbackContext();
+        checker.request(first, false);
+        checker.request(second, false);
+
+        // Both served from the stale cache, one refresh in flight
+        assertTrue(first.isFinished());
+        assertTrue(second.isFinished());
+        assertEquals(2, context.getBroadcasts().size());
+
+        context.getBroadcasts().get(1).answer(details("en-US", "fr-FR"));
+        assertEquals(Arrays.asList("en-US", "fr-FR"), checker.getSupportedLanguages());
+        assertTrue(preferences.getLong("fetchedAt", 0) > System.currentTimeMillis() - DAY_MS);
+    }
+
+    @Test
+    public void recognizerUpdateDropsCacheOnNextRequest() {
+        LanguageDetailsChecker checker = new LanguageDetailsChecker(context);
+        fetch(checker, "en-US");
+
+        context.install(RECOGNIZER, 2);
+        CallbackContext callbackContext = new CallbackContext();
+        checker.request(callbackContext, false);
+
+        // Not answered from the old catalogue, it waits for the new one
+        assertEquals(0, callbackContext.getResults().size());
+        assertEquals(2, context.getBroadcasts().size());
+        assertTrue(context.getSharedPreferences(PREFERENCES, 0).isEmpty());
+
+        context.getBroadcasts().get(1).answer(details("en-US", "it-IT"));
+        assertEquals(new JSONArray(Arrays.asList("en-US", "it-IT")).toString(),
+                payload(callbackContext).toString());
+        assertEquals(2, context.getSharedPreferences(PREFERENCES, 0).getLong("recognizerVersion", -1));
+    }
+
+    @Test
+    public void recognizerUpdateDropsCacheOnLoad() {
+        fetch(new LanguageDetailsChecker(context), "en-US");
+
+        context.install(RECOGNIZER, 2);
+        LanguageDetailsChecker restarted = new LanguageDetailsChecker(context);
+
+        assertEquals(null, restarted.getSupportedLanguages());
+        assertTrue(context.getSharedPreferences(PREFERENCES, 0).isEmpty());
+    }
+
+    @Test
+    public void broadcastTimeoutFailsEveryWaiter() {
+        LanguageDetailsChecker checker = new LanguageDetailsChecker(context);
+        CallbackContext first = new CallbackContext();
+        CallbackContext second = new CallbackContext();
+        checker.request(first, false);
+        checker.request(second, true);
+
+        SystemClock.advance(4999);
+        assertEquals(0, mainQueue.runDue());
+        SystemClock.advance(1);
+        assertEquals(1, mainQueue.runDue());
+
+        assertEquals(PluginResult.Status.ERROR.ordinal(), first.getResults().get(0).getStatus());
+        assertEquals(PluginResult.Status.ERROR.ordinal(), second.getResults().get(0).getStatus());
+
+        // A late answer is not sent twice, it still serves the next request from the cache
+        context.getBroadcasts().get(0).answer(details("en-US"));
+        assertEquals(1, first.getResults().size());
+        CallbackContext next = new CallbackContext();
+        checker.request(next, false);
+        assertTrue(next.isFinished());
+        assertEquals(1, context.getBroadcasts().size());
+    }
+
+    @Test
+    public void answerWithoutLanguagesIsAnError() {
+        LanguageDetailsChecker checker = new LanguageDetailsChecker(context);
+        CallbackContext callbackContext = new CallbackContext();
+        checker.request(callbackContext, false);
+
+        context.getBroadcasts().get(0).answer(new Bundle());
+
+        assertEquals(PluginResult.Status.ERROR.ordinal(), callbackContext.getResults().get(0).getStatus());
+        checker.request(new CallbackContext(), false);
+        assertEquals(2, context.getBroadcasts().size());
+    }
+
+    private void fetch(LanguageDetailsChecker checker, String... languages) {
+        CallbackContext callbackContext = new CallbackContext();
+        checker.request(callbackContext, false);
+        List<FakeContext.Broadcast> broadcasts = context.getBroadcasts();
+        broadcasts.get(broadcasts.size() - 1).answer(details(languages));
+        assertTrue(callbackContext.isFinished());
+    }
+
+    private static Bundle details(String... languages) {
+        Bundle extras = new Bundle();
+        extras.putStringArrayList(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES, new ArrayList<>(Arrays.asList(languages)));
+        extras.putString(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE, languages[0]);
+        return extras;
+    }
+
+    private static Object payload(CallbackContext callbackContext) {
+        PluginResult result = callbackContext.getResults().get(0);
+        assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+        return result.getPayload();
+    }
+}
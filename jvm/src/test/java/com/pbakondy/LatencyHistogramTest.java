@@ -0,0 +1,106 @@
+package com.pbakondy;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHasNoPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithin(500, histogram.getPercentile(0.5));
+        assertWithin(900, histogram.getPercentile(0.9));
+        assertWithin(990, histogram.getPercentile(0.99));
+        assertEquals(1000, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 4; value++) {
+            histogram.record(value);
+        }
+        assertEquals(0, histogram.getPercentile(0.25));
+        assertEquals(1, histogram.getPercentile(0.5));
+        assertEquals(2, histogram.getPercentile(0.75));
+        assertEquals(3, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void percentileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1001);
+        assertEquals(1001, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void hugeValuesSaturateAtRange() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(1, histogram.getCount());
+        // About 4.6 hours, the end of the last bucket
+        assertEquals((1L << 24) - 1, histogram.getPercentile(1.0));
+        assertEquals(Long.MAX_VALUE / 2, histogram.toJSON().getLong("max"));
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < 10000; value++) {
+                        histogram.record(value % 100);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(99, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void toJSONHasSummary() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        JSONObject json = histogram.toJSON();
+        assertEquals(2, json.getLong("count"));
+        assertEquals(20, json.getLong("max"));
+        assertTrue(json.has("p50"));
+        assertTrue(json.has("p90"));
+        assertTrue(json.has("p99"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.25);
+    }
+}
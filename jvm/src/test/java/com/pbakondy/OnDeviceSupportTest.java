@@ -0,0 +1,148 @@
+package com.pbakondy;
+
+import android.os.SystemClock;
+import android.speech.RecognitionSupport;
+import android.speech.SpeechRecognizer;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OnDeviceSupportTest {
+
+    private OnDeviceSupport support;
+
+    @Before
+    public void setUp() {
+        SpeechRecognizer.setOnDeviceRecognitionAvailable(true);
+        support = new OnDeviceSupport(new FakeContext());
+    }
+
+    @After
+    public void tearDown() {
+        // Closes a check a test left open
+        SpeechRecognizer.answerSupportCheck(null);
+        SpeechRecognizer.setOnDeviceRecognitionAvailable(false);
+    }
+
+    @Test
+    public void firstAttemptDecidesBeforeAnyProbe() {
+        assertTrue(support.canServe("en-US"));
+
+        support.markFailed("en_US");
+
+        assertFalse(support.canServe("en-US"));
+        assertFalse(support.canServe("EN-us"));
+        assertTrue(support.canServe("de-DE"));
+    }
+
+    @Test
+    public void probedLanguagesDecide() {
+        support.refresh();
+        assertTrue(SpeechRecognizer.answerSupportCheck(installed("en", "de-DE")));
+
+        // A pack for a language serves its regions and the other way round
+        assertTrue(support.canServe("en-GB"));
+        assertTrue(support.canServe("de"));
+        assertFalse(support.canServe("fr-FR"));
+    }
+
+    @Test
+    public void installedLanguageGetsAnotherChance() {
+        support.markFailed("en-US");
+        support.refresh();
+        SpeechRecognizer.answerSupportCheck(installed("en-US"));
+
+        assertTrue(support.canServe("en-US"));
+    }
+
+    @Test
+    public void failedLanguageStaysOnNetworkUntilInstalled() {
+        support.refresh();
+        SpeechRecognizer.answerSupportCheck(installed("en-US"));
+        support.markFailed("en-US");
+        assertFalse(support.canServe("en-US"));
+
+        // Within the ten minutes the probe is not repeated
+        SystemClock.advance(60 * 1000);
+        support.refresh();
+        assertFalse(SpeechRecognizer.answerSupportCheck(installed("en-US")));
+        assertFalse(support.canServe("en-US"));
+
+        SystemClock.advance(10 * 60 * 1000);
+        support.refresh();
+        assertTrue(SpeechRecognizer.answerSupportCheck(installed("en-US")));
+        assertTrue(support.canServe("en-US"));
+    }
+
+    @Test
+    public void unavailableRecognizerServesNothing() throws Exception {
+        SpeechRecognizer.setOnDeviceRecognitionAvailable(false);
+        assertFalse(support.canServe("en-US"));
+
+        CallbackContext callbackContext = new CallbackContext();
+        support.probe(callbackContext);
+        JSONObject answer = payload(callbackContext);
+        assertFalse(answer.getBoolean("available"));
+        assertFalse(answer.has("installed"));
+    }
+
+    @Test
+    public void callersShareOneProbe() throws Exception {
+        int created = SpeechRecognizer.getCreatedCount();
+        CallbackContext first = new CallbackContext();
+        CallbackContext second = new CallbackContext();
+        support.probe(first);
+        support.probe(second);
+        assertEquals(created + 1, SpeechRecognizer.getCreatedCount());
+        assertEquals(0, first.getResults().size());
+
+        SpeechRecognizer.answerSupportCheck(new RecognitionSupport.Builder()
+                .setInstalledOnDeviceLanguages(Arrays.asList("en-US"))
+                .setPendingOnDeviceLanguages(Arrays.asList("de-DE"))
+                .setSupportedOnDeviceLanguages(Arrays.asList("en-US", "de-DE", "fr-FR"))
+                .build());
+
+        for (CallbackContext callbackContext : Arrays.asList(first, second)) {
+            JSONObject answer = payload(callbackContext);
+            assertTrue(answer.getBoolean("available"));
+            assertEquals("en-US", answer.getJSONArray("installed").getString(0));
+            assertEquals("de-DE", answer.getJSONArray("pending").getString(0));
+            assertEquals(3, answer.getJSONArray("supported").length());
+        }
+    }
+
+    @Test
+    public void failedProbeKeepsFirstAttemptRule() throws Exception {
+        CallbackContext callbackContext = new CallbackContext();
+        support.probe(callbackContext);
+        SpeechRecognizer.answerSupportCheck(null);
+
+        assertTrue(support.canServe("en-US"));
+        assertFalse(payload(callbackContext).has("installed"));
+    }
+
+    private static RecognitionSupport installed(String... languages) {
+        return new RecognitionSupport.Builder()
+                .setInstalledOnDeviceLanguages(Arrays.asList(languages))
+                .setPendingOnDeviceLanguages(Collections.<String>emptyList())
+                .setSupportedOnDeviceLanguages(Arrays.asList(languages))
+                .build();
+    }
+
+    private static JSONObject payload(CallbackContext callbackContext) {
+        PluginResult result = callbackContext.getResults().get(0);
+        assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+        return (JSONObject) result.getPayload();
+    }
+}
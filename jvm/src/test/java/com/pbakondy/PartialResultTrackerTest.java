@@ -0,0 +1,96 @@
+package com.pbakondy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartialResultTrackerTest {
+
+    private PartialResultTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new PartialResultTracker();
+    }
+
+    @Test
+    public void ignoresRepeatedHypotheses() {
+        assertTrue(tracker.update(Arrays.asList("hello", "yellow")));
+        assertFalse(tracker.update(Arrays.asList("hello", "yellow")));
+        assertTrue(tracker.update(Arrays.asList("hello", "mellow")));
+        assertFalse(tracker.update(Collections.<String>emptyList()));
+        assertFalse(tracker.update(null));
+    }
+
+    @Test
+    public void stableTextEndsAtWordBoundary() {
+        delta("hello");
+        assertDelta("", "hello");
+
+        // "hello" may have been the start of a longer word
+        delta("hello world");
+        assertDelta("", "hello world");
+
+        delta("hello world again");
+        assertDelta("hello ", "world again");
+
+        delta("hello word again");
+        assertDelta("", "word again");
+        assertFalse(tracker.isRevised());
+        assertEquals(0, tracker.getRevision());
+    }
+
+    @Test
+    public void coalescedUpdatesAddUp() {
+        delta("a b c");
+        tracker.update(Collections.singletonList("a b c d"));
+        tracker.update(Collections.singletonList("a b c d e"));
+        tracker.takeDelta();
+        assertDelta("a b c ", "d e");
+    }
+
+    @Test
+    public void rewriteOfDeliveredTextIsARevision() {
+        delta("one two");
+        delta("one two three");
+        assertDelta("one ", "two three");
+
+        delta("won two three");
+        assertTrue(tracker.isRevised());
+        assertEquals(1, tracker.getRevision());
+        assertEquals(0, tracker.getStableLength());
+        assertDelta("", "won two three");
+
+        delta("won two three four");
+        assertFalse(tracker.isRevised());
+        assertDelta("won two ", "three four");
+        assertEquals(0, tracker.getStableLength());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        delta("one two");
+        delta("one two three");
+        tracker.reset();
+        assertTrue(tracker.update(Collections.singletonList("one two three")));
+        tracker.takeDelta();
+        assertDelta("", "one two three");
+        assertEquals(0, tracker.getRevision());
+    }
+
+    private void delta(String text) {
+        tracker.update(Collections.singletonList(text));
+        tracker.takeDelta();
+    }
+
+    private void assertDelta(String stable, String unstable) {
+        assertEquals(stable, tracker.getStable());
+        assertEquals(unstable, tracker.getUnstable());
+    }
+}
@@ -0,0 +1,166 @@
+package com.pbakondy;
+
+import android.media.AudioRecord;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PcmCaptureTest {
+
+    private static final int RATE = PcmCapture.SAMPLE_RATE;
+    private static final int WAV_HEADER_BYTES = 44;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PcmCapture capture = new PcmCapture();
+
+    @After
+    public void tearDown() {
+        capture.stop();
+        AudioRecord.support(RATE, 1);
+        AudioRecord.play(new short[0]);
+    }
+
+    @Test
+    public void sineThroughTheRing() throws Exception {
+        // Longer than a frame and not a multiple of it, so frames land all over the ring
+        short[] sine = sine(RATE, 440, 3 * RATE / 2 + 77);
+        assertArrayEquals(sine, wavSamples(record(sine, PcmCapture.FORMAT_WAV)));
+    }
+
+    @Test
+    public void sineThroughTheEncoder() throws Exception {
+        short[] sine = sine(RATE, 440, RATE + 123);
+        FlacDecoder.Stream stream = FlacDecoder.decode(Files.readAllBytes(record(sine, PcmCapture.FORMAT_FLAC).toPath()));
+        assertEquals(RATE, stream.sampleRate);
+        assertArrayEquals(sine, stream.samples);
+    }
+
+    @Test
+    public void backToBack() throws Exception {
+        short[] first = sine(RATE, 440, RATE);
+        short[] second = sine(RATE, 1000, RATE / 2);
+
+        AudioRecord.play(first);
+        CompletableFuture<File> one = capture.start(folder.newFile("one.wav"), PcmCapture.FORMAT_WAV);
+        awaitPlayed();
+        capture.stop();
+        // The writer of the first file may still be busy
+        AudioRecord.play(second);
+        CompletableFuture<File> two = capture.start(folder.newFile("two.flac"), PcmCapture.FORMAT_FLAC);
+        awaitPlayed();
+        capture.stop();
+
+        assertArrayEquals(first, wavSamples(one.get(5, TimeUnit.SECONDS)));
+        FlacDecoder.Stream stream = FlacDecoder.decode(Files.readAllBytes(two.get(5, TimeUnit.SECONDS).toPath()));
+        assertArrayEquals(second, stream.samples);
+    }
+
+    @Test
+    public void resampledSine() throws Exception {
+        AudioRecord.support(48000, 1);
+        short[] sine = sine(48000, 1000, 48000);
+        short[] samples = wavSamples(record(sine, PcmCapture.FORMAT_WAV));
+
+        assertTrue("got " + samples.length, Math.abs(samples.length - RATE) <= 32);
+        // Past the filter delay nearly all energy is at 1 kHz
+        int from = 256;
+        double total = 0;
+        for (int i = from; i < samples.length; i++) {
+            total += (double) samples[i] * samples[i];
+        }
+        double tone = goertzel(samples, from, 1000) / ((samples.length - from) / 2.0);
+        assertTrue("tone " + tone + " of " + total, tone > 0.99 * total);
+    }
+
+    @Test
+    public void unwritableFileReleasesNothing() throws Exception {
+        int open = AudioRecord.getOpenCount();
+        try {
+            capture.start(new File(folder.getRoot(), "missing/capture.wav"), PcmCapture.FORMAT_WAV);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(open, AudioRecord.getOpenCount());
+        assertTrue(!capture.isRunning());
+    }
+
+    @Test
+    public void missingMicrophoneClosesTheFile() throws Exception {
+        AudioRecord.support(8000, 1);
+        File file = folder.newFile("capture.wav");
+        try {
+            capture.start(file, PcmCapture.FORMAT_WAV);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertTrue(!capture.isRunning());
+        assertTrue(file.delete());
+    }
+
+    private File record(short[] samples, String format) throws Exception {
+        AudioRecord.play(samples);
+        CompletableFuture<File> future = capture.start(folder.newFile("capture." + format), format);
+        awaitPlayed();
+        capture.stop();
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void awaitPlayed() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!AudioRecord.isPlayed()) {
+            if (System.nanoTime() > deadline) {
+                fail("script not played");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static short[] wavSamples(File file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(data.capacity() - WAV_HEADER_BYTES, data.getInt(40));
+        data.position(WAV_HEADER_BYTES);
+        short[] samples = new short[data.remaining() / 2];
+        data.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static short[] sine(int rate, double frequency, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(12000 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return samples;
+    }
+
+    /**
+     * @return squared magnitude of the frequency over the samples from the offset on
+     */
+    private static double goertzel(short[] samples, int from, double frequency) {
+        double coefficient = 2 * Math.cos(2 * Math.PI * frequency / RATE);
+        double previous = 0;
+        double beforePrevious = 0;
+        for (int i = from; i < samples.length; i++) {
+            double current = samples[i] + coefficient * previous - beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+        }
+        return previous * previous + beforePrevious * beforePrevious - coefficient * previous * beforePrevious;
+    }
+}
@@ -0,0 +1,272 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecognizerManagerTest {
+
+    private static final Intent SESSION = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+
+    /**
+     * Records the calls it gets, the test plays the service side through its listener
+     */
+    private static class FakeRecognizer implements Recognizer {
+
+        final List<String> calls = new ArrayList<>();
+        RecognitionListener listener;
+        boolean destroyed;
+
+        @Override
+        public void setRecognitionListener(RecognitionListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void startListening(Intent intent) {
+            calls.add("start " + intent.getAction());
+        }
+
+        @Override
+        public void stopListening() {
+            calls.add("stop");
+        }
+
+        @Override
+        public void cancel() {
+            calls.add("cancel");
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+    }
+
+    private final List<FakeRecognizer> created = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private RuntimeException createFailure;
+    private RecognizerManager manager;
+
+    @Before
+    public void setUp() {
+        Recognizer.Factory factory = new Recognizer.Factory() {
+            @Override
+            public Recognizer create(Context context) {
+                if (createFailure != null) {
+                    throw createFailure;
+                }
+                FakeRecognizer recognizer = new FakeRecognizer();
+                created.add(recognizer);
+                return recognizer;
+            }
+        };
+        manager = new RecognizerManager(new FakeContext(), new RecordingListener(), factory);
+    }
+
+    @Test
+    public void warmUpBindsTheService() {
+        manager.bind(true);
+
+        assertEquals(RecognizerManager.State.IDLE, manager.getState());
+        assertEquals(Arrays.asList("start " + RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS, "cancel"),
+                recognizer().calls);
+
+        manager.bind(true);
+        assertEquals(1, created.size());
+    }
+
+    @Test
+    public void healthyRecognizerIsReused() {
+        manager.startListening(SESSION);
+        assertEquals(RecognizerManager.State.STARTING, manager.getState());
+        recognizer().listener.onResults(new Bundle());
+        assertEquals(RecognizerManager.State.IDLE, manager.getState());
+
+        manager.startListening(SESSION);
+        recognizer().listener.onError(SpeechRecognizer.ERROR_NO_MATCH);
+        manager.startListening(SESSION);
+
+        assertEquals(1, created.size());
+        assertEquals(Arrays.asList("results", "error " + SpeechRecognizer.ERROR_NO_MATCH), events);
+    }
+
+    @Test
+    public void startOverActiveSessionCancelsFirst() {
+        manager.startListening(SESSION);
+        manager.startListening(SESSION);
+
+        String start = "start " + RecognizerIntent.ACTION_RECOGNIZE_SPEECH;
+        assertEquals(Arrays.asList(start, "cancel", start), recognizer().calls);
+    }
+
+    @Test
+    public void fatalErrorsRebind() {
+        int[] fatal = {SpeechRecognizer.ERROR_CLIENT, SpeechRecognizer.ERROR_RECOGNIZER_BUSY, 11};
+        for (int error : fatal) {
+            manager.startListening(SESSION);
+            FakeRecognizer broken = recognizer();
+            broken.listener.onError(error);
+
+            assertTrue(broken.destroyed);
+            assertNotSame(broken, recognizer());
+            // Bound again right away, ready for the next session
+            assertEquals(RecognizerManager.State.IDLE, manager.getState());
+            assertEquals("error " + error, events.get(events.size() - 1));
+        }
+        assertEquals(fatal.length + 1, created.size());
+    }
+
+    @Test
+    public void failedRebindBindsOnNextStart() {
+        manager.startListening(SESSION);
+        createFailure = new SecurityException("not allowed");
+        recognizer().listener.onError(SpeechRecognizer.ERROR_CLIENT);
+
+        assertEquals(RecognizerManager.State.UNBOUND, manager.getState());
+        assertEquals(1, created.size());
+
+        createFailure = null;
+        manager.startListening(SESSION);
+        assertEquals(2, created.size());
+        assertEquals(RecognizerManager.State.STARTING, manager.getState());
+    }
+
+    @Test
+    public void readyLatencyIsMeasuredFromStart() {
+        assertEquals(-1, manager.getLastReadyLatencyMs());
+        manager.startListening(SESSION);
+        SystemClock.advance(120);
+        recognizer().listener.onReadyForSpeech(new Bundle());
+
+        assertEquals(RecognizerManager.State.LISTENING, manager.getState());
+        assertEquals(120, manager.getLastReadyLatencyMs());
+        assertEquals(Arrays.asList("ready"), events);
+    }
+
+    @Test
+    public void stopAndCancelOnlyReachAnActiveSession() {
+        manager.stopListening();
+        manager.cancel();
+        manager.bind(false);
+        manager.stopListening();
+        manager.cancel();
+        assertTrue(recognizer().calls.isEmpty());
+
+        manager.startListening(SESSION);
+        manager.stopListening();
+        manager.cancel();
+        assertEquals(Arrays.asList("start " + RecognizerIntent.ACTION_RECOGNIZE_SPEECH, "stop", "cancel"),
+                recognizer().calls);
+        assertEquals(RecognizerManager.State.IDLE, manager.getState());
+    }
+
+    @Test
+    public void releaseIfIdleKeepsRunningSession() {
+        manager.startListening(SESSION);
+        manager.releaseIfIdle();
+        assertFalse(recognizer().destroyed);
+
+        recognizer().listener.onResults(new Bundle());
+        FakeRecognizer released = recognizer();
+        manager.releaseIfIdle();
+        assertTrue(released.destroyed);
+        assertEquals(RecognizerManager.State.UNBOUND, manager.getState());
+
+        manager.startListening(SESSION);
+        assertSame(created.get(1), recognizer());
+    }
+
+    @Test
+    public void eventsArePassedOn() {
+        manager.startListening(SESSION);
+        RecognitionListener listener = recognizer().listener;
+        listener.onBeginningOfSpeech();
+        listener.onRmsChanged(3);
+        listener.onPartialResults(new Bundle());
+        listener.onEndOfSpeech();
+
+        assertEquals(Arrays.asList("begin", "rms", "partial", "end"), events);
+    }
+
+    @Test
+    public void failedBindIsReported() {
+        createFailure = new SecurityException("not allowed");
+        try {
+            manager.bind(false);
+            fail();
+        } catch (SecurityException expected) {
+        }
+        assertEquals(RecognizerManager.State.UNBOUND, manager.getState());
+    }
+
+    private FakeRecognizer recognizer() {
+        return created.get(created.size() - 1);
+    }
+
+    private class RecordingListener implements RecognitionListener {
+
+        @Override
+        public void onReadyForSpeech(Bundle params) {
+            events.add("ready");
+        }
+
+        @Override
+        public void onBeginningOfSpeech() {
+            events.add("begin");
+        }
+
+        @Override
+        public void onRmsChanged(float rmsdB) {
+            events.add("rms");
+        }
+
+        @Override
+        public void onBufferReceived(byte[] buffer) {
+            events.add("buffer");
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+            events.add("end");
+        }
+
+        @Override
+        public void onError(int error) {
+            events.add("error " + error);
+        }
+
+        @Override
+        public void onResults(Bundle results) {
+            events.add("results");
+        }
+
+        @Override
+        public void onPartialResults(Bundle partialResults) {
+            events.add("partial");
+        }
+
+        @Override
+        public void onEvent(int eventType, Bundle params) {
+            events.add("event " + eventType);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.pbakondy;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures tones through the resampler: the output is fitted with a sine of the input
+ * frequency, what the fit does not explain is noise and distortion.
+ */
+public class ResamplerTest {
+
+    private static final int OUTPUT_RATE = 16000;
+    private static final double AMPLITUDE = 10000;
+    // Half a second, the first 100 ms are skipped for the filter to settle
+    private static final double SECONDS = 0.5;
+    private static final int SETTLE = OUTPUT_RATE / 10;
+
+    private static final int[][] INPUTS = {{48000, 1}, {48000, 2}, {44100, 1}, {44100, 2}};
+
+    @Test
+    public void cleanAtOneKilohertz() {
+        for (int[] input : INPUTS) {
+            Tone tone = measure(input[0], input[1], 1000);
+            assertTrue(name(input) + " SNR " + tone.snrDb, tone.snrDb > 75);
+            assertEquals(name(input) + " gain", 0, tone.gainDb, 0.1);
+        }
+    }
+
+    @Test
+    public void flatPassband() {
+        for (int[] input : INPUTS) {
+            for (int frequency : new int[]{100, 300, 3000, 5000, 6000}) {
+                Tone tone = measure(input[0], input[1], frequency);
+                String name = name(input) + " at " + frequency + " Hz";
+                assertTrue(name + " gain " + tone.gainDb, tone.gainDb > -1 && tone.gainDb < 0.2);
+                assertTrue(name + " SNR " + tone.snrDb, tone.snrDb > 60);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsAboveOutputNyquist() {
+        for (int[] input : INPUTS) {
+            for (int frequency : new int[]{10000, 11000, 12000, 16000, 20000}) {
+                double levelDb = outputLevelDb(input[0], input[1], frequency);
+                assertTrue(name(input) + " at " + frequency + " Hz leaks " + levelDb + " dB", levelDb < -75);
+            }
+        }
+    }
+
+    @Test
+    public void attenuatesTransitionBand() {
+        // The 48 tap filter rolls off between the output Nyquist rate and 10 kHz
+        for (int[] input : INPUTS) {
+            double previousDb = 0;
+            for (int frequency : new int[]{8500, 9000, 9500}) {
+                double levelDb = outputLevelDb(input[0], input[1], frequency);
+                assertTrue(name(input) + " at " + frequency + " Hz leaks " + levelDb + " dB",
+                        levelDb < -15 && levelDb < previousDb);
+                previousDb = levelDb;
+            }
+        }
+    }
+
+    @Test
+    public void averagesChannels() {
+        // Opposite channels cancel out
+        int frames = 4800;
+        ByteBuffer in = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (AMPLITUDE * Math.sin(2 * Math.PI * 1000 * i / 48000.0));
+            in.putShort(sample).putShort((short) -sample);
+        }
+        in.flip();
+        for (short sample : resample(new Resampler(48000, 2, OUTPUT_RATE), in, in.remaining())) {
+            assertEquals(0, sample);
+        }
+    }
+
+    @Test
+    public void chunkSizeDoesNotMatter() {
+        for (int[] input : INPUTS) {
+            ByteBuffer in = tone(input[0], input[1], 1000);
+            short[] whole = resample(new Resampler(input[0], input[1], OUTPUT_RATE), in.duplicate(), in.remaining());
+            // Odd sizes leave partial frames for the next call
+            short[] chunked = resample(new Resampler(input[0], input[1], OUTPUT_RATE), in.duplicate(), 1921);
+            assertArrayEquals(name(input), whole, chunked);
+        }
+    }
+
+    @Test
+    public void outputLengthFollowsRatio() {
+        for (int[] input : INPUTS) {
+            ByteBuffer in = tone(input[0], input[1], 1000);
+            int frames = in.remaining() / (2 * input[1]);
+            short[] out = resample(new Resampler(input[0], input[1], OUTPUT_RATE), in, 640);
+            assertEquals(name(input), (double) frames * OUTPUT_RATE / input[0], out.length, 1);
+        }
+    }
+
+    @Test
+    public void resetForgetsHistory() {
+        Resampler resampler = new Resampler(44100, 1, OUTPUT_RATE);
+        ByteBuffer in = tone(44100, 1, 1000);
+        short[] first = resample(resampler, in.duplicate(), 882);
+        resampler.reset();
+        short[] second = resample(resampler, in.duplicate(), 882);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void identity() {
+        assertTrue(Resampler.isIdentity(16000, 1, 16000));
+        assertFalse(Resampler.isIdentity(16000, 2, 16000));
+        assertFalse(Resampler.isIdentity(48000, 1, 16000));
+    }
+
+    private static class Tone {
+
+        double gainDb;
+        double snrDb;
+    }
+
+    private static Tone measure(int rate, int channels, double frequency) {
+        short[] out = resample(new Resampler(rate, channels, OUTPUT_RATE), tone(rate, channels, frequency), 1280);
+
+        // Least squares fit of a sin b cos at the input frequency
+        double ss = 0;
+        double cc = 0;
+        double sc = 0;
+        double ys = 0;
+        double yc = 0;
+        for (int i = SETTLE; i < out.length; i++) {
+            double s = Math.sin(2 * Math.PI * frequency * i / OUTPUT_RATE);
+            double c = Math.cos(2 * Math.PI * frequency * i / OUTPUT_RATE);
+            ss += s * s;
+            cc += c * c;
+            sc += s * c;
+            ys += out[i] * s;
+            yc += out[i] * c;
+        }
+        double determinant = ss * cc - sc * sc;
+        double a = (ys * cc - yc * sc) / determinant;
+        double b = (yc * ss - ys * sc) / determinant;
+
+        double signal = 0;
+        double error = 0;
+        for (int i = SETTLE; i < out.length; i++) {
+            double fit = a * Math.sin(2 * Math.PI * frequency * i / OUTPUT_RATE)
+                    + b * Math.cos(2 * Math.PI * frequency * i / OUTPUT_RATE);
+            signal += fit * fit;
+            error += (out[i] - fit) * (out[i] - fit);
+        }
+
+        Tone tone = new Tone();
+        tone.gainDb = 20 * Math.log10(Math.hypot(a, b) / AMPLITUDE);
+        tone.snrDb = 10 * Math.log10(signal / error);
+        return tone;
+    }
+
+    /**
+     * @return RMS of the settled output relative to the RMS of the input tone
+     */
+    private static double outputLevelDb(int rate, int channels, double frequency) {
+        short[] out = resample(new Resampler(rate, channels, OUTPUT_RATE), tone(rate, channels, frequency), 1280);
+        double energy = 0;
+        for (int i = SETTLE; i < out.length; i++) {
+            energy += (double) out[i] * out[i];
+        }
+        double rms = Math.sqrt(energy / (out.length - SETTLE));
+        return 20 * Math.log10(Math.max(rms, 1e-3) / (AMPLITUDE / Math.sqrt(2)));
+    }
+
+    private static ByteBuffer tone(int rate, int channels, double frequency) {
+        int frames = (int) (rate * SECONDS);
+        ByteBuffer in = ByteBuffer.allocate(frames * 2 * channels).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / rate));
+            for (int c = 0; c < channels; c++) {
+                in.putShort(sample);
+            }
+        }
+        in.flip();
+        return in;
+    }
+
+    private static short[] resample(Resampler resampler, ByteBuffer in, int chunkBytes) {
+        ByteBuffer out = ByteBuffer.allocate(resampler.maxOutputBytes(in.remaining())).order(ByteOrder.LITTLE_ENDIAN);
+        int end = in.limit();
+        in.limit(in.position());
+        while (in.limit() < end) {
+            // A partial frame stays in the input and is completed by the next chunk
+            in.limit(Math.min(end, in.limit() + chunkBytes));
+            int before = out.position();
+            int available = in.remaining();
+            int written = resampler.process(in, out);
+            assertEquals(written, out.position() - before);
+            assertTrue(written <= resampler.maxOutputBytes(available));
+        }
+        out.flip();
+        short[] samples = new short[out.remaining() / 2];
+        out.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static String name(int[] input) {
+        return input[0] + " Hz " + (input[1] == 1 ? "mono" : "stereo");
+    }
+}
@@ -0,0 +1,178 @@
+package com.pbakondy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic 16 kHz clips with known speech boundaries, standing in for recorded clips.
+ * <p>
+ * Speech is a run of syllables: a voiced part with a wandering pitch and harmonics
+ * that fall off like a vowel's, sometimes led by a fricative burst, separated by short
+ * gaps within a word and longer ones between words. It is mixed with white noise, low
+ * rumble or mains hum at a given signal to noise ratio.
+ */
+class SpeechCorpus {
+
+    static final int RATE = 16000;
+
+    static final String[] NOISES = {"white", "rumble", "hum"};
+
+    static class Clip {
+
+        String name;
+        short[] pcm;
+        int speechStart;
+        int speechEnd;
+    }
+
+    /**
+     * Every combination of lead-in, noise and SNR, with a different utterance each
+     */
+    static List<Clip> all() {
+        List<Clip> clips = new ArrayList<>();
+        int seed = 0;
+        for (double leadIn : new double[]{0, 0.05, 0.3, 1.0}) {
+            for (String noise : NOISES) {
+                for (int snrDb : new int[]{30, 20, 10}) {
+                    clips.add(clip(seed++, leadIn, noise, snrDb));
+                }
+            }
+        }
+        return clips;
+    }
+
+    static Clip clip(int seed, double leadInSeconds, String noise, int snrDb) {
+        Random random = new Random(seed);
+        int leadIn = (int) (leadInSeconds * RATE);
+        double[] speech = utterance(random, 1.0 + random.nextDouble() * 2);
+        int trail = RATE;
+
+        double[] mix = new double[leadIn + speech.length + trail];
+        System.arraycopy(speech, 0, mix, leadIn, speech.length);
+
+        double speechLevel = 0.05 + random.nextDouble() * 0.15;
+        double speechRms = rms(speech) / speechLevel;
+        double[] noiseSignal = noise(random, noise, mix.length);
+        double noiseScale = speechLevel / rms(noiseSignal) * Math.pow(10, -snrDb / 20.0);
+
+        Clip clip = new Clip();
+        clip.name = String.format("%-6s %2d dB lead %4.0f ms", noise, snrDb, leadInSeconds * 1000);
+        clip.pcm = new short[mix.length];
+        for (int i = 0; i < mix.length; i++) {
+            double sample = (mix[i] / speechRms + noiseSignal[i] * noiseScale) * 32767;
+            clip.pcm[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+        }
+        clip.speechStart = leadIn;
+        clip.speechEnd = leadIn + speech.length;
+        return clip;
+    }
+
+    private static double[] utterance(Random random, double seconds) {
+        List<double[]> parts = new ArrayList<>();
+        int total = 0;
+        while (total < seconds * RATE) {
+            int syllables = 1 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                double[] syllable = syllable(random);
+                parts.add(syllable);
+                total += syllable.length;
+                if (i < syllables - 1) {
+                    double[] gap = new double[(int) (RATE * (0.03 + random.nextDouble() * 0.07))];
+                    parts.add(gap);
+                    total += gap.length;
+                }
+            }
+            if (total < seconds * RATE) {
+                double[] gap = new double[(int) (RATE * (0.12 + random.nextDouble() * 0.13))];
+                parts.add(gap);
+                total += gap.length;
+            }
+        }
+
+        double[] speech = new double[total];
+        int position = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, speech, position, part.length);
+            position += part.length;
+        }
+        return speech;
+    }
+
+    private static double[] syllable(Random random) {
+        int fricative = random.nextInt(3) == 0 ? (int) (RATE * (0.04 + random.nextDouble() * 0.04)) : 0;
+        int voiced = (int) (RATE * (0.12 + random.nextDouble() * 0.18));
+        double[] syllable = new double[fricative + voiced];
+
+        // High-passed noise, well below the vowel
+        double previous = 0;
+        for (int i = 0; i < fricative; i++) {
+            double white = random.nextGaussian();
+            syllable[i] = (white - previous) * 0.15 * envelope(i, fricative);
+            previous = white;
+        }
+
+        double pitch = 100 + random.nextDouble() * 120;
+        double glide = (random.nextDouble() - 0.5) * 40;
+        double loudness = 0.4 + random.nextDouble() * 0.6;
+        double phase = 0;
+        for (int i = 0; i < voiced; i++) {
+            double f0 = pitch + glide * i / voiced;
+            phase += 2 * Math.PI * f0 / RATE;
+            double sample = 0;
+            for (int harmonic = 1; harmonic * f0 < 4000; harmonic++) {
+                sample += Math.sin(harmonic * phase) / harmonic;
+            }
+            syllable[fricative + i] = sample * loudness * envelope(i, voiced);
+        }
+        return syllable;
+    }
+
+    private static double[] noise(Random random, String type, int length) {
+        double[] noise = new double[length];
+        double state = 0;
+        for (int i = 0; i < length; i++) {
+            switch (type) {
+                case "white":
+                    noise[i] = random.nextGaussian();
+                    break;
+                case "rumble":
+                    // One pole low-pass, most energy below 200 Hz
+                    state = 0.92 * state + random.nextGaussian();
+                    noise[i] = state;
+                    break;
+                default:
+                    noise[i] = Math.sin(2 * Math.PI * 50 * i / RATE)
+                            + 0.5 * Math.sin(2 * Math.PI * 150 * i / RATE)
+                            + 0.1 * random.nextGaussian();
+            }
+        }
+        return noise;
+    }
+
+    /**
+     * Raised cosine attack and release of 20 ms
+     */
+    private static double envelope(int i, int length) {
+        int ramp = Math.min(RATE / 50, length / 2);
+        if (i < ramp) {
+            return 0.5 - 0.5 * Math.cos(Math.PI * i / ramp);
+        }
+        if (i >= length - ramp) {
+            return 0.5 - 0.5 * Math.cos(Math.PI * (length - i) / ramp);
+        }
+        return 1;
+    }
+
+    private static double rms(double[] signal) {
+        double energy = 0;
+        int count = 0;
+        for (double sample : signal) {
+            if (sample != 0) {
+                energy += sample * sample;
+                count++;
+            }
+        }
+        return Math.sqrt(energy / Math.max(1, count));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pbakondy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the detector over the synthetic corpus and scores what trimming would keep: the
+ * speech lost outside the trimmed range and the silence kept inside it, with the pre- and
+ * post-roll that {@link PcmCapture} adds.
+ */
+public class VoiceActivityCorpusTest {
+
+    private static final int ROLL = SpeechCorpus.RATE / 5;
+
+    @Test
+    public void trimmingKeepsSpeech() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-26s %8s %8s %8s %8s%n", "clip", "startMs", "endMs", "lostMs", "extraMs"));
+        int failures = 0;
+        long lostTotal = 0;
+        long extraTotal = 0;
+        int clips = 0;
+
+        for (SpeechCorpus.Clip clip : SpeechCorpus.all()) {
+            VoiceActivityDetector detector = new VoiceActivityDetector(SpeechCorpus.RATE, new VoiceActivityDetector.Listener() {
+                @Override
+                public void onSpeechStart(long sample) {
+                }
+
+                @Override
+                public void onSpeechEnd(long sample) {
+                }
+            });
+            detector.process(clip.pcm, 0, clip.pcm.length);
+
+            long start = detector.getSpeechStartSample();
+            long end = detector.getSpeechEndSample();
+            long keepFrom = start < 0 ? clip.pcm.length : Math.max(0, start - ROLL);
+            long keepTo = end < 0 ? clip.pcm.length : Math.min(clip.pcm.length, end + ROLL);
+
+            long lost = Math.max(0, keepFrom - clip.speechStart) + Math.max(0, clip.speechEnd - keepTo);
+            long extra = Math.max(0, clip.speechStart - keepFrom) + Math.max(0, keepTo - clip.speechEnd);
+            lostTotal += lost;
+            extraTotal += extra;
+            clips++;
+
+            boolean ok = lost <= SpeechCorpus.RATE / 20 && extra <= SpeechCorpus.RATE;
+            if (!ok) {
+                failures++;
+            }
+            report.append(String.format("%-26s %8d %8d %8d %8d%s%n", clip.name,
+                    ms(start - clip.speechStart), ms(end - clip.speechEnd), ms(lost), ms(extra), ok ? "" : "  FAIL"));
+        }
+        report.append(String.format("mean lost %d ms, mean extra %d ms%n", ms(lostTotal / clips), ms(extraTotal / clips)));
+
+        assertTrue(report.toString(), failures == 0);
+    }
+
+    private static long ms(long samples) {
+        return samples * 1000 / SpeechCorpus.RATE;
+    }
+}
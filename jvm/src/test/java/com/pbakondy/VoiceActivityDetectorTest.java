@@ -0,0 +1,138 @@
+package com.pbakondy;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int RATE = 16000;
+    private static final int FRAME = RATE / 50;
+
+    private final List<Long> starts = new ArrayList<>();
+    private final List<Long> ends = new ArrayList<>();
+
+    private final VoiceActivityDetector.Listener listener = new VoiceActivityDetector.Listener() {
+        @Override
+        public void onSpeechStart(long sample) {
+            starts.add(sample);
+        }
+
+        @Override
+        public void onSpeechEnd(long sample) {
+            ends.add(sample);
+        }
+    };
+
+    @Test
+    public void findsToneBetweenNoise() {
+        short[] pcm = clip(RATE, RATE, RATE);
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE, listener);
+        detector.process(pcm, 0, pcm.length);
+
+        assertEquals(1, starts.size());
+        assertEquals(1, ends.size());
+        assertNear(RATE, detector.getSpeechStartSample());
+        assertNear(2 * RATE, detector.getSpeechEndSample());
+        assertFalse(detector.isSpeaking());
+    }
+
+    @Test
+    public void silenceIsNotSpeech() {
+        short[] pcm = clip(3 * RATE, 0, 0);
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE, listener);
+        detector.process(pcm, 0, pcm.length);
+
+        assertTrue(starts.isEmpty());
+        assertEquals(-1, detector.getSpeechStartSample());
+        assertEquals(-1, detector.getSpeechEndSample());
+    }
+
+    @Test
+    public void chunkingDoesNotMatter() {
+        short[] pcm = clip(RATE, RATE, RATE);
+        ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(pcm);
+
+        VoiceActivityDetector whole = new VoiceActivityDetector(RATE, listener);
+        whole.process(pcm, 0, pcm.length);
+
+        VoiceActivityDetector chunked = new VoiceActivityDetector(RATE, listener);
+        int[] sizes = {2, 6, 640, 1282, 94};
+        int position = 0;
+        for (int i = 0; position < bytes.capacity(); i++) {
+            int end = Math.min(bytes.capacity(), position + sizes[i % sizes.length]);
+            bytes.limit(end).position(position);
+            chunked.process(bytes);
+            position = end;
+        }
+
+        assertEquals(whole.getSpeechStartSample(), chunked.getSpeechStartSample());
+        assertEquals(whole.getSpeechEndSample(), chunked.getSpeechEndSample());
+    }
+
+    @Test
+    public void speechFromTheFirstSample() {
+        // The first frames are speech, the floor is only found in the pause after it
+        short[] pcm = clip(0, RATE, RATE);
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE, listener);
+        detector.process(pcm, 0, pcm.length);
+
+        assertEquals(0, detector.getSpeechStartSample());
+        assertNear(RATE, detector.getSpeechEndSample());
+        assertEquals(1, starts.size());
+    }
+
+    @Test
+    public void floorDoesNotRiseDuringLongSpeech() {
+        // Longer than the history the floor is taken from
+        short[] pcm = clip(RATE, 4 * RATE, RATE);
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE, listener);
+        detector.process(pcm, 0, pcm.length);
+
+        assertEquals(1, starts.size());
+        assertEquals(1, ends.size());
+        assertNear(5 * RATE, detector.getSpeechEndSample());
+        assertTrue(detector.getLookbackSamples() < 4 * RATE);
+    }
+
+    @Test
+    public void resetForgetsSpeech() {
+        short[] pcm = clip(RATE, RATE, RATE);
+        VoiceActivityDetector detector = new VoiceActivityDetector(RATE, listener);
+        detector.process(pcm, 0, pcm.length);
+        detector.reset();
+
+        assertEquals(-1, detector.getSpeechStartSample());
+        assertEquals(-1, detector.getSpeechEndSample());
+        assertFalse(detector.isSpeaking());
+    }
+
+    /**
+     * Quiet noise with a loud 300 Hz tone in the middle
+     */
+    static short[] clip(int before, int tone, int after) {
+        Random random = new Random(42);
+        short[] pcm = new short[before + tone + after];
+        for (int i = 0; i < pcm.length; i++) {
+            double sample = random.nextGaussian() * 30;
+            if (i >= before && i < before + tone) {
+                sample += 8000 * Math.sin(2 * Math.PI * 300 * i / RATE);
+            }
+            pcm[i] = (short) Math.round(sample);
+        }
+        return pcm;
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(expected - actual) <= 2 * FRAME);
+    }
+}
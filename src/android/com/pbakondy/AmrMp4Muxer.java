@@ -0,0 +1,270 @@
+// ISO/IEC 14496-12 and 3GPP TS 26.244
+
+package com.pbakondy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Wraps the frames of an AMR file into a 3GP / MP4 container without transcoding.
+ * <p>
+ * Frames are stored one per sample in a single chunk, the moov box is written
+ * in front of mdat so the file can be played progressively. The payload is moved
+ * with {@link FileChannel#transferTo}, only the sample table lives on the heap.
+ */
+public class AmrMp4Muxer {
+
+    private static final int MOVIE_TIMESCALE = 1000;
+    private static final int LANGUAGE_UND = 0x55C4;
+    private static final int[] UNITY_MATRIX = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+
+    private final ByteBuffer box;
+    private final int[] starts = new int[16];
+    private int depth;
+
+    private AmrMp4Muxer(int capacity) {
+        box = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Remuxes an AMR file
+     *
+     * @param inputFile  AMR-NB or AMR-WB storage format file
+     * @param outputFile destination, overwritten if it exists
+     * @return the parsed track, its duration is the duration of the output
+     */
+    public static AmrParser.Track remux(File inputFile, File outputFile) throws IOException {
+        try (FileInputStream in = new FileInputStream(inputFile);
+             FileOutputStream out = new FileOutputStream(outputFile)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+
+            AmrParser.Track track = AmrParser.parse(inChannel);
+
+            AmrMp4Muxer header = new AmrMp4Muxer(1024 + 4 * track.getFrameCount());
+            header.writeFtyp();
+            int ftypSize = header.box.position();
+            // The chunk offset depends on the moov size, which does not depend on the offset value
+            int moovSize = header.writeMoov(track, 0);
+            header.box.position(ftypSize);
+            header.writeMoov(track, ftypSize + moovSize + 8);
+            header.writeMdatHeader(track.getDataLength());
+
+            header.box.flip();
+            while (header.box.hasRemaining()) {
+                outChannel.write(header.box);
+            }
+
+            long position = track.getDataOffset();
+            long end = position + track.getDataLength();
+            while (position < end) {
+                long transferred = inChannel.transferTo(position, end - position, outChannel);
+                if (transferred <= 0) {
+                    throw new IOException("Could not copy AMR frames");
+                }
+                position += transferred;
+            }
+            out.getFD().sync();
+
+            return track;
+        }
+    }
+
+    private void writeFtyp() {
+        open("ftyp");
+        fourcc("3gp4");
+        box.putInt(0);
+        fourcc("isom");
+        fourcc("3gp4");
+        close();
+    }
+
+    private int writeMoov(AmrParser.Track track, long chunkOffset) {
+        int start = box.position();
+        long mediaDuration = (long) track.getFrameCount() * track.getSamplesPerFrame();
+        long movieDuration = track.getDurationMs();
+
+        open("moov");
+
+        fullBox("mvhd", 0, 0);
+        box.putInt(0); // creation_time
+        box.putInt(0); // modification_time
+        box.putInt(MOVIE_TIMESCALE);
+        box.putInt((int) movieDuration);
+        box.putInt(0x00010000); // rate
+        box.putShort((short) 0x0100); // volume
+        zeros(2 + 8);
+        matrix();
+        zeros(6 * 4); // pre_defined
+        box.putInt(2); // next_track_ID
+        close();
+
+        open("trak");
+
+        fullBox("tkhd", 0, 0x07);
+        box.putInt(0); // creation_time
+        box.putInt(0); // modification_time
+        box.putInt(1); // track_ID
+        zeros(4);
+        box.putInt((int) movieDuration);
+        zeros(8);
+        box.putShort((short) 0); // layer
+        box.putShort((short) 0); // alternate_group
+        box.putShort((short) 0x0100); // volume
+        zeros(2);
+        matrix();
+        box.putInt(0); // width
+        box.putInt(0); // height
+        close();
+
+        open("mdia");
+
+        fullBox("mdhd", 0, 0);
+        box.putInt(0); // creation_time
+        box.putInt(0); // modification_time
+        box.putInt(track.getSampleRate());
+        box.putInt((int) mediaDuration);
+        box.putShort((short) LANGUAGE_UND);
+        box.putShort((short) 0);
+        close();
+
+        fullBox("hdlr", 0, 0);
+        box.putInt(0); // pre_defined
+        fourcc("soun");
+        zeros(3 * 4);
+        for (char c : "SoundHandler".toCharArray()) {
+            box.put((byte) c);
+        }
+        box.put((byte) 0);
+        close();
+
+        open("minf");
+
+        fullBox("smhd", 0, 0);
+        box.putShort((short) 0); // balance
+        zeros(2);
+        close();
+
+        open("dinf");
+        fullBox("dref", 0, 0);
+        box.putInt(1);
+        fullBox("url ", 0, 0x01); // media data is in this file
+        close();
+        close();
+        close();
+
+        open("stbl");
+
+        fullBox("stsd", 0, 0);
+        box.putInt(1);
+        open(track.isWideband() ? "sawb" : "samr");
+        zeros(6);
+        box.putShort((short) 1); // data_reference_index
+        zeros(8);
+        box.putShort((short) 1); // channelcount
+        box.putShort((short) 16); // samplesize
+        zeros(4);
+        box.putInt(track.getSampleRate() << 16);
+        open("damr");
+        box.putInt(0); // vendor
+        box.put((byte) 0); // decoder_version
+        box.putShort((short) track.getModeSet());
+        box.put((byte) 0); // mode_change_period
+        box.put((byte) 1); // frames_per_sample
+        close();
+        close();
+        close();
+
+        fullBox("stts", 0, 0);
+        if (track.getFrameCount() > 0) {
+            box.putInt(1);
+            box.putInt(track.getFrameCount());
+            box.putInt(track.getSamplesPerFrame());
+        } else {
+            box.putInt(0);
+        }
+        close();
+
+        fullBox("stsc", 0, 0);
+        if (track.getFrameCount() > 0) {
+            box.putInt(1);
+            box.putInt(1); // first_chunk
+            box.putInt(track.getFrameCount());
+            box.putInt(1); // sample_description_index
+        } else {
+            box.putInt(0);
+        }
+        close();
+
+        fullBox("stsz", 0, 0);
+        box.putInt(0); // sample_size, sizes follow
+        box.putInt(track.getFrameCount());
+        for (int i = 0; i < track.getFrameCount(); i++) {
+            box.putInt(track.getFrameSize(i));
+        }
+        close();
+
+        fullBox("stco", 0, 0);
+        if (track.getFrameCount() > 0) {
+            box.putInt(1);
+            box.putInt((int) chunkOffset);
+        } else {
+            box.putInt(0);
+        }
+        close();
+
+        close(); // stbl
+        close(); // minf
+        close(); // mdia
+        close(); // trak
+        close(); // moov
+
+        return box.position() - start;
+    }
+
+    private void writeMdatHeader(long payloadSize) throws IOException {
+        if (payloadSize + 8 > 0xFFFFFFFFL) {
+            throw new IOException("AMR data too large");
+        }
+        box.putInt((int) (payloadSize + 8));
+        fourcc("mdat");
+    }
+
+    private void open(String type) {
+        starts[depth++] = box.position();
+        box.putInt(0);
+        fourcc(type);
+    }
+
+    private void fullBox(String type, int version, int flags) {
+        open(type);
+        box.putInt((version << 24) | flags);
+    }
+
+    private void close() {
+        int start = starts[--depth];
+        box.putInt(start, box.position() - start);
+    }
+
+    private void fourcc(String type) {
+        for (int i = 0; i < 4; i++) {
+            box.put((byte) type.charAt(i));
+        }
+    }
+
+    private void zeros(int count) {
+        for (int i = 0; i < count; i++) {
+            box.put((byte) 0);
+        }
+    }
+
+    private void matrix() {
+        for (int value : UNITY_MATRIX) {
+            box.putInt(value);
+        }
+    }
+}
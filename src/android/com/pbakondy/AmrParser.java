@@ -0,0 +1,195 @@
+// https://www.rfc-editor.org/rfc/rfc4867#section-5
+
+package com.pbakondy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Indexes the frames of an AMR-NB or AMR-WB storage format file without decoding them.
+ * <p>
+ * Only frame headers are inspected, payloads are skipped, so the index costs one int
+ * per 20 ms of audio.
+ */
+public class AmrParser {
+
+    private static final byte[] MAGIC_NB = "#!AMR\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAGIC_WB = "#!AMR-WB\n".getBytes(StandardCharsets.US_ASCII);
+
+    // Frame size in bytes including the one byte header, indexed by frame type, -1 is invalid
+    private static final int[] FRAME_SIZES_NB = {13, 14, 16, 18, 20, 21, 27, 32, 6, -1, -1, -1, -1, -1, -1, 1};
+    private static final int[] FRAME_SIZES_WB = {18, 24, 33, 37, 41, 47, 51, 59, 61, 6, -1, -1, -1, -1, 1, 1};
+
+    private static final int SPEECH_MODES_NB = 8;
+    private static final int SPEECH_MODES_WB = 9;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    public static class Track {
+
+        private boolean wideband;
+        private long dataOffset;
+        private long dataLength;
+        private int modeSet;
+        private int frameCount;
+        private int[] frameSizes = new int[256];
+
+        public boolean isWideband() {
+            return wideband;
+        }
+
+        public int getSampleRate() {
+            return wideband ? 16000 : 8000;
+        }
+
+        public int getSamplesPerFrame() {
+            return wideband ? 320 : 160;
+        }
+
+        /**
+         * @return position of the first frame in the source file
+         */
+        public long getDataOffset() {
+            return dataOffset;
+        }
+
+        /**
+         * @return length of all complete frames in bytes
+         */
+        public long getDataLength() {
+            return dataLength;
+        }
+
+        /**
+         * @return bit mask of the speech modes present in the stream
+         */
+        public int getModeSet() {
+            return modeSet;
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        public int getFrameSize(int index) {
+            return frameSizes[index];
+        }
+
+        public long getDurationMs() {
+            return frameCount * 20L;
+        }
+
+        private void addFrame(int size) {
+            if (frameCount == frameSizes.length) {
+                frameSizes = Arrays.copyOf(frameSizes, frameCount * 2);
+            }
+            frameSizes[frameCount++] = size;
+            dataLength += size;
+        }
+    }
+
+    /**
+     * Reads the frame index of an AMR file. A truncated last frame is left out.
+     *
+     * @param channel channel positioned anywhere, it is read from the start
+     * @throws IOException if the file is not AMR or contains an invalid frame type
+     */
+    public static Track parse(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long size = channel.size();
+        long position = 0;
+
+        channel.read(buffer, 0);
+        buffer.flip();
+
+        Track track = new Track();
+        if (startsWith(buffer, MAGIC_WB)) {
+            track.wideband = true;
+            position = MAGIC_WB.length;
+        } else if (startsWith(buffer, MAGIC_NB)) {
+            position = MAGIC_NB.length;
+        } else {
+            throw new IOException("Not an AMR file");
+        }
+        track.dataOffset = position;
+
+        int[] frameSizes = track.wideband ? FRAME_SIZES_WB : FRAME_SIZES_NB;
+        int speechModes = track.wideband ? SPEECH_MODES_WB : SPEECH_MODES_NB;
+        long bufferStart = 0;
+
+        while (position < size) {
+            int index = (int) (position - bufferStart);
+            if (index >= buffer.limit()) {
+                buffer.clear();
+                bufferStart = position;
+                index = 0;
+                if (channel.read(buffer, position) <= 0) {
+                    break;
+                }
+                buffer.flip();
+            }
+
+            int frameType = (buffer.get(index) >> 3) & 0x0F;
+            int frameSize = frameSizes[frameType];
+            if (frameSize < 0) {
+                throw new IOException("Invalid AMR frame type " + frameType + " at " + position);
+            }
+            if (position + frameSize > size) {
+                break;
+            }
+            if (frameType < speechModes) {
+                track.modeSet |= 1 << frameType;
+            }
+            track.addFrame(frameSize);
+            position += frameSize;
+        }
+
+        return track;
+    }
+
+    /**
+     * Writes an AMR file holding a range of the frames of a track, the frames are copied
+     * unchanged as they are self-delimiting
+     *
+     * @param in    the file the track was parsed from
+     * @param from  index of the first frame to keep
+     * @param to    index after the last frame to keep
+     * @param out   channel positioned where the file starts
+     */
+    public static void writeFrames(FileChannel in, Track track, int from, int to, FileChannel out) throws IOException {
+        long position = track.getDataOffset();
+        for (int i = 0; i < from; i++) {
+            position += track.getFrameSize(i);
+        }
+        long end = position;
+        for (int i = from; i < to; i++) {
+            end += track.getFrameSize(i);
+        }
+
+        ByteBuffer magic = ByteBuffer.wrap(track.isWideband() ? MAGIC_WB : MAGIC_NB);
+        while (magic.hasRemaining()) {
+            out.write(magic);
+        }
+        while (position < end) {
+            long transferred = in.transferTo(position, end - position, out);
+            if (transferred <= 0) {
+                throw new IOException("Could not copy AMR frames");
+            }
+            position += transferred;
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] magic) {
+        if (buffer.remaining() < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+package com.pbakondy;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Leaves the silence before and after speech out of an AMR file.
+ * <p>
+ * The file is decoded only to run the voice activity detection over it, the cut is
+ * made at frame boundaries and the kept frames are copied without transcoding.
+ */
+public class AmrTrimmer {
+
+    // Kept around the speech like the captured PCM, 10 frames of 20 ms
+    private static final int ROLL_FRAMES = 10;
+    private static final long TIMEOUT_US = 10000;
+
+    private AmrTrimmer() {
+    }
+
+    /**
+     * @param inputFile  AMR-NB or AMR-WB storage format file
+     * @param outputFile destination, overwritten if it exists
+     * @return false if the file holds no speech or no silence to leave out, the output is then not written
+     */
+    public static boolean trim(File inputFile, File outputFile) throws IOException {
+        AmrParser.Track track;
+        try (FileInputStream in = new FileInputStream(inputFile)) {
+            track = AmrParser.parse(in.getChannel());
+        }
+
+        // Only the detected positions are needed
+        VoiceActivityDetector detector = new VoiceActivityDetector(track.getSampleRate(), new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStart(long sample) {
+            }
+
+            @Override
+            public void onSpeechEnd(long sample) {
+            }
+        });
+        decode(inputFile, detector);
+        long speechStart = detector.getSpeechStartSample();
+        long speechEnd = detector.getSpeechEndSample();
+        if (speechStart < 0) {
+            return false;
+        }
+
+        int samplesPerFrame = track.getSamplesPerFrame();
+        int frameCount = track.getFrameCount();
+        int first = (int) Math.max(0, speechStart / samplesPerFrame - ROLL_FRAMES);
+        int end = frameCount;
+        if (speechEnd >= 0) {
+            end = (int) Math.min(frameCount, (speechEnd + samplesPerFrame - 1) / samplesPerFrame + ROLL_FRAMES);
+        }
+        if (first == 0 && end == frameCount) {
+            return false;
+        }
+
+        try (FileInputStream in = new FileInputStream(inputFile);
+             FileOutputStream out = new FileOutputStream(outputFile)) {
+            AmrParser.writeFrames(in.getChannel(), track, first, end, out.getChannel());
+        }
+        return true;
+    }
+
+    private static void decode(File inputFile, VoiceActivityDetector detector) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(inputFile.getAbsolutePath());
+            if (extractor.getTrackCount() < 1) {
+                throw new IOException("No audio track in " + inputFile.getName());
+            }
+            extractor.selectTrack(0);
+            MediaFormat format = extractor.getTrackFormat(0);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        ByteBuffer buffer = codec.getInputBuffer(index);
+                        int size = extractor.readSampleData(buffer, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(index);
+                    if (info.size > 0) {
+                        buffer.position(info.offset);
+                        buffer.limit(info.offset + info.size);
+                        detector.process(buffer);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Could not decode " + inputFile.getName(), e);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.pbakondy;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
@@ -13,30 +16,160 @@ import androidx.media3.transformer.EditedMediaItem;
 import androidx.media3.transformer.Effects;
 import androidx.media3.transformer.ExportException;
 import androidx.media3.transformer.ExportResult;
+import androidx.media3.transformer.ProgressHolder;
 import androidx.media3.transformer.Transformer;
 import androidx.media3.transformer.VideoEncoderSettings;
 
 import java.io.File;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AudioConverter {
 
+    /**
+     * AMR frames remuxed into a 3GP / MP4 container, no transcoding
+     */
+    public static final String FORMAT_AMR = "amr";
+
+    /**
+     * Decoded and re-encoded to AAC with the Media3 Transformer
+     */
+    public static final String FORMAT_AAC = "aac";
+
     private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService remuxExecutor = Executors.newSingleThreadExecutor();
+    private DefaultEncoderFactory encoderFactory;
+    private volatile SpeechMetrics metrics;
 
     public AudioConverter(Context context) {
         this.context = context;
     }
 
     /**
-     * Converts an AMR audio file to MP4 with AAC encoding
+     * Stops the remux thread once the queued remuxes are done
+     */
+    public void release() {
+        remuxExecutor.shutdown();
+    }
+
+    /**
+     * @param metrics receives the duration of every successful conversion, or null
+     */
+    public void setMetrics(SpeechMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static class Result {
+
+        public final long durationMs;
+        public final long fileSizeBytes;
+
+        Result(long durationMs, long fileSizeBytes) {
+            this.durationMs = durationMs;
+            this.fileSizeBytes = fileSizeBytes;
+        }
+    }
+
+    /**
+     * A running conversion. Every method has to be called on the main looper.
+     */
+    public static class Conversion {
+
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        private Transformer transformer;
+
+        public CompletableFuture<Result> getFuture() {
+            return future;
+        }
+
+        /**
+         * @return progress in percent, or -1 if not known yet
+         */
+        @OptIn(markerClass = UnstableApi.class)
+        public int getProgress() {
+            if (transformer == null || future.isDone()) {
+                return future.isDone() ? 100 : -1;
+            }
+            ProgressHolder holder = new ProgressHolder();
+            if (transformer.getProgress(holder) == Transformer.PROGRESS_STATE_AVAILABLE) {
+                return holder.progress;
+            }
+            return -1;
+        }
+
+        public void cancel() {
+            if (transformer != null) {
+                transformer.cancel();
+            }
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Converts an AMR audio file to MP4
+     * <p>
+     * Can be called from any thread, the Transformer itself is driven from the main looper.
      *
      * @param inputPath  Path to the input AMR file
      * @param outputPath Path where the output MP4 file will be saved
-     * @return CompletableFuture containing ExportResult
+     * @param format     {@link #FORMAT_AMR} or {@link #FORMAT_AAC}
+     * @return CompletableFuture containing the Result
      */
+    public CompletableFuture<Result> convert(String inputPath, String outputPath, String format) {
+        return start(inputPath, outputPath, format).getFuture();
+    }
+
+    /**
+     * Starts converting an AMR audio file to MP4
+     *
+     * @param inputPath  Path to the input AMR file
+     * @param outputPath Path where the output MP4 file will be saved
+     * @param format     {@link #FORMAT_AMR} or {@link #FORMAT_AAC}
+     * @return the running Conversion
+     */
+    public Conversion start(String inputPath, String outputPath, String format) {
+        final long startedAt = SystemClock.elapsedRealtime();
+        Conversion conversion = FORMAT_AAC.equals(format)
+                ? transcode(inputPath, outputPath)
+                : remux(inputPath, outputPath);
+
+        final SpeechMetrics conversionMetrics = metrics;
+        if (conversionMetrics != null) {
+            conversion.future.thenRun(() -> conversionMetrics.recordConversion(
+                    SystemClock.elapsedRealtime() - startedAt));
+        }
+        return conversion;
+    }
+
+    private Conversion remux(String inputPath, String outputPath) {
+        Conversion conversion = new Conversion();
+        CompletableFuture<Result> future = conversion.future;
+
+        remuxExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                File outputFile = new File(outputPath);
+                if (outputFile.getParentFile() != null) {
+                    outputFile.getParentFile().mkdirs();
+                }
+                AmrParser.Track track = AmrMp4Muxer.remux(new File(inputPath), outputFile);
+                future.complete(new Result(track.getDurationMs(), outputFile.length()));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return conversion;
+    }
+
     @OptIn(markerClass = UnstableApi.class)
-    public CompletableFuture<ExportResult> convert(String inputPath, String outputPath) {
-        CompletableFuture<ExportResult> future = new CompletableFuture<>();
+    private Conversion transcode(String inputPath, String outputPath) {
+        Conversion conversion = new Conversion();
+        CompletableFuture<Result> future = conversion.future;
 
         // Create output file parent directories if needed
         File outputFile = new File(outputPath);
@@ -58,7 +191,7 @@ public class AudioConverter {
         Transformer.Listener listener = new Transformer.Listener() {
             @Override
             public void onCompleted(@NonNull Composition composition, @NonNull ExportResult exportResult) {
-                future.complete(exportResult);
+                future.complete(new Result(exportResult.durationMs, exportResult.fileSizeBytes));
             }
 
             @Override
@@ -68,21 +201,43 @@ public class AudioConverter {
             }
         };
 
-        // Build Transformer
-        Transformer transformer = new Transformer.Builder(context)
-                .addListener(listener)
-                .setMaxDelayBetweenMuxerSamplesMs(C.TIME_UNSET)
-                .setEncoderFactory(
-                        new DefaultEncoderFactory.Builder(context)
-                                .setEnableFallback(true)
-                                .setEnableCodecDbLite(false)
-                                .setRequestedVideoEncoderSettings(VideoEncoderSettings.DEFAULT)
-                                .build())
-                .build();
+        Runnable startTransformer = () -> {
+            if (future.isDone()) {
+                // Cancelled before it got to start
+                return;
+            }
 
-        // Start conversion
-        transformer.start(editedMediaItem, outputPath);
+            // Build Transformer, the encoder factory is shared between conversions
+            Transformer transformer = new Transformer.Builder(context)
+                    .setLooper(Looper.getMainLooper())
+                    .addListener(listener)
+                    .setMaxDelayBetweenMuxerSamplesMs(C.TIME_UNSET)
+                    .setEncoderFactory(getEncoderFactory())
+                    .build();
+            conversion.transformer = transformer;
+
+            // Start conversion
+            transformer.start(editedMediaItem, outputPath);
+        };
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            startTransformer.run();
+        } else {
+            mainHandler.post(startTransformer);
+        }
 
-        return future;
+        return conversion;
+    }
+
+    @OptIn(markerClass = UnstableApi.class)
+    private DefaultEncoderFactory getEncoderFactory() {
+        if (encoderFactory == null) {
+            encoderFactory = new DefaultEncoderFactory.Builder(context)
+                    .setEnableFallback(true)
+                    .setEnableCodecDbLite(false)
+                    .setRequestedVideoEncoderSettings(VideoEncoderSettings.DEFAULT)
+                    .build();
+        }
+        return encoderFactory;
     }
 }
@@ -0,0 +1,85 @@
+package com.pbakondy;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the bytes of an audio file over a keep-callback channel.
+ * <p>
+ * The file is read straight into the arrays handed to the bridge, in chunks of
+ * {@value #CHUNK_BYTES} bytes so large clips never need one big allocation. Every chunk
+ * is a multipart result, the JS callback gets a description of the chunk and an
+ * ArrayBuffer with its bytes.
+ */
+public class AudioDelivery {
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    /**
+     * Sends the whole file, has to be called off the UI thread
+     */
+    public static void send(CallbackContext callbackContext, File file) throws IOException, JSONException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long totalSize = channel.size();
+            int chunks = (int) Math.max(1, (totalSize + CHUNK_BYTES - 1) / CHUNK_BYTES);
+            String path = "file://" + file.getAbsolutePath();
+            String mimeType = mimeType(file);
+
+            long offset = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                byte[] bytes = new byte[(int) Math.min(CHUNK_BYTES, totalSize - offset)];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException("Audio file shrank while sending: " + path);
+                    }
+                }
+
+                JSONObject description = new JSONObject();
+                description.put("isAudio", true);
+                description.put("file", path);
+                description.put("mimeType", mimeType);
+                description.put("offset", offset);
+                description.put("size", bytes.length);
+                description.put("totalSize", totalSize);
+                description.put("chunk", chunk);
+                description.put("chunks", chunks);
+
+                List<PluginResult> parts = new ArrayList<>(2);
+                parts.add(new PluginResult(PluginResult.Status.OK, description));
+                parts.add(new PluginResult(PluginResult.Status.OK, bytes));
+                PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+
+                offset += bytes.length;
+            }
+        }
+    }
+
+    static String mimeType(File file) {
+        String name = file.getName();
+        if (name.endsWith(".wav")) {
+            return "audio/wav";
+        }
+        if (name.endsWith(".flac")) {
+            return "audio/flac";
+        }
+        if (name.endsWith(".amr")) {
+            return "audio/amr";
+        }
+        return "audio/mp4";
+    }
+}
@@ -0,0 +1,233 @@
+package com.pbakondy;
+
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams captured audio to JS while it is recorded.
+ * <p>
+ * The capture thread copies every frame into a direct ring buffer, a sender thread cuts
+ * it into sequenced chunks and sends them over a keep-callback channel as multipart
+ * results, a JSON description plus an ArrayBuffer. JS acknowledges chunks, at most
+ * {@code window} chunks are in flight. While JS is behind audio piles up in the ring and
+ * goes out in larger chunks once the window opens; only if the ring overflows new audio
+ * is dropped, which the descriptions report. Instead of a callback the chunks can go to
+ * an {@link EventChannel}, where they are numbered in {@code chunk}.
+ */
+public class AudioStreamer {
+
+    private static final String LOG_TAG = "AudioStreamer";
+
+    private static final int RING_BYTES = 1024 * 1024; // 32 s at 16 kHz
+    private static final int MAX_CHUNK_BYTES = 64 * 1024;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long ACK_TIMEOUT_MS = 5000;
+
+    private final CallbackContext callbackContext;
+    private final int stream;
+    private final int chunkBytes;
+    private final int window;
+
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(RING_BYTES);
+    private final ByteBuffer writeView = ring.duplicate();
+    private final ByteBuffer readView = ring.duplicate();
+
+    private volatile long written;
+    private volatile long read;
+    private volatile long dropped;
+    private volatile long acked;
+    private volatile long lastAckAt;
+    private volatile boolean finished;
+    private volatile boolean closed;
+
+    private long seq;
+    private Thread sender;
+    private EventChannel eventChannel;
+    private int session;
+
+    /**
+     * @param stream     identifies this stream in chunks and acknowledgements
+     * @param chunkBytes size of a chunk while JS keeps up
+     * @param window     number of chunks that may be sent without acknowledgement
+     */
+    public AudioStreamer(CallbackContext callbackContext, int stream, int chunkBytes, int window) {
+        this.callbackContext = callbackContext;
+        this.stream = stream;
+        this.chunkBytes = Math.max(2, Math.min(MAX_CHUNK_BYTES, chunkBytes)) & ~1;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Sends the chunks to the channel instead of the callback, call before {@link #start}
+     */
+    public void setEventChannel(EventChannel eventChannel, int session) {
+        this.eventChannel = eventChannel;
+        this.session = session;
+    }
+
+    public int getStream() {
+        return stream;
+    }
+
+    public void start() {
+        lastAckAt = System.currentTimeMillis();
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send();
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, "Could not send chunk: " + e.getMessage());
+                }
+            }
+        }, "AudioStreamer");
+        sender.start();
+    }
+
+    /**
+     * Copies the bytes between position and limit, called on the capture thread.
+     * The buffer itself is not modified.
+     */
+    public void offer(ByteBuffer pcm) {
+        int length = pcm.remaining();
+        if (RING_BYTES - (written - read) < length) {
+            dropped += length;
+            return;
+        }
+        int from = pcm.position();
+        int offset = (int) (written % RING_BYTES);
+        int first = Math.min(length, RING_BYTES - offset);
+        copy(pcm, from, offset, first);
+        copy(pcm, from + first, 0, length - first);
+        long before = written;
+        written = before + length;
+
+        // Only wake the sender when a chunk got complete
+        if ((before - read) < chunkBytes && (written - read) >= chunkBytes) {
+            LockSupport.unpark(sender);
+        }
+    }
+
+    /**
+     * Acknowledges every chunk up to and including seq
+     */
+    public void ack(long ackSeq) {
+        if (ackSeq + 1 > acked) {
+            acked = ackSeq + 1;
+            lastAckAt = System.currentTimeMillis();
+            LockSupport.unpark(sender);
+        }
+    }
+
+    /**
+     * No more audio comes, the rest is sent followed by the last chunk
+     */
+    public void finish() {
+        finished = true;
+        LockSupport.unpark(sender);
+    }
+
+    /**
+     * Stops sending right away
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(sender);
+    }
+
+    private void copy(ByteBuffer pcm, int from, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        ByteBuffer source = pcm.duplicate();
+        source.limit(from + length);
+        source.position(from);
+        writeView.limit(offset + length);
+        writeView.position(offset);
+        writeView.put(source);
+    }
+
+    private void send() throws JSONException {
+        boolean ackTimedOut = false;
+        while (!closed) {
+            boolean done = finished;
+            long available = written - read;
+
+            boolean windowOpen = seq - acked < window || ackTimedOut;
+            if (!windowOpen && done && System.currentTimeMillis() - lastAckAt > ACK_TIMEOUT_MS) {
+                // Do not hold the end of the stream forever for a JS side that stopped acknowledging
+                Log.d(LOG_TAG, "stream " + stream + " not acknowledged, sending the rest");
+                ackTimedOut = true;
+                windowOpen = true;
+            }
+
+            if (windowOpen && (available >= chunkBytes || done)) {
+                int size = (int) Math.min(available, MAX_CHUNK_BYTES);
+                boolean last = done && size == available;
+                if (!last) {
+                    size &= ~1;
+                }
+                sendChunk(size, last);
+                if (last) {
+                    return;
+                }
+                continue;
+            }
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+    }
+
+    private void sendChunk(int size, boolean last) throws JSONException {
+        long offset = read;
+        byte[] bytes = new byte[size];
+        int ringOffset = (int) (offset % RING_BYTES);
+        int first = Math.min(size, RING_BYTES - ringOffset);
+        readView.limit(ringOffset + first);
+        readView.position(ringOffset);
+        readView.get(bytes, 0, first);
+        if (first < size) {
+            readView.limit(size - first);
+            readView.position(0);
+            readView.get(bytes, first, size - first);
+        }
+        read = offset + size;
+
+        JSONObject description = new JSONObject();
+        description.put("stream", stream);
+        description.put("offset", offset);
+        description.put("size", size);
+        description.put("last", last);
+        description.put("dropped", dropped);
+        description.put("encoding", "pcm16le");
+        description.put("sampleRate", PcmCapture.SAMPLE_RATE);
+        description.put("channels", 1);
+
+        if (eventChannel != null) {
+            // The channel numbers its events in seq
+            description.put("chunk", seq);
+            eventChannel.send(EventChannel.AUDIO_CHUNK, session, description, bytes);
+            seq++;
+            return;
+        }
+        description.put("isAudioChunk", true);
+        description.put("seq", seq);
+
+        List<PluginResult> parts = new ArrayList<>(2);
+        parts.add(new PluginResult(PluginResult.Status.OK, description));
+        parts.add(new PluginResult(PluginResult.Status.OK, bytes));
+        PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        seq++;
+    }
+}
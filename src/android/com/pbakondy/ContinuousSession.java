@@ -0,0 +1,109 @@
+package com.pbakondy;
+
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * State of a continuous recognition, which restarts the recognizer after every segment.
+ * <p>
+ * Keeps the prebuilt recognizer intent, stitches the segments into one transcript,
+ * computes the backoff after segments without speech and measures the gap between the
+ * end of one segment and the recognizer being ready for the next one.
+ * Has to be used on the UI thread.
+ */
+public class ContinuousSession {
+
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 2000;
+
+    private final Intent intent;
+    private final StringBuilder transcript = new StringBuilder();
+
+    private boolean active = true;
+    private int segments;
+    private long segmentEndedAt = -1;
+    private long lastGapMs = -1;
+    private long maxGapMs = -1;
+    private long totalGapMs;
+    private int gaps;
+    private long backoffMs;
+
+    public ContinuousSession(Intent intent) {
+        this.intent = intent;
+    }
+
+    public Intent getIntent() {
+        return intent;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void stop() {
+        active = false;
+    }
+
+    /**
+     * A segment ended with a result, restart right away
+     */
+    public void onSegment(String text) {
+        if (text != null && !text.isEmpty()) {
+            if (transcript.length() > 0) {
+                transcript.append(' ');
+            }
+            transcript.append(text);
+        }
+        segments++;
+        backoffMs = 0;
+        segmentEndedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * A segment ended without speech
+     *
+     * @return delay before the next restart
+     */
+    public long onNoSpeech() {
+        backoffMs = backoffMs == 0 ? MIN_BACKOFF_MS : Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+        segmentEndedAt = SystemClock.elapsedRealtime();
+        return backoffMs;
+    }
+
+    /**
+     * The recognizer is listening again
+     */
+    public void onReady() {
+        if (segmentEndedAt < 0) {
+            return;
+        }
+        lastGapMs = SystemClock.elapsedRealtime() - segmentEndedAt;
+        maxGapMs = Math.max(maxGapMs, lastGapMs);
+        totalGapMs += lastGapMs;
+        gaps++;
+        segmentEndedAt = -1;
+    }
+
+    public String getTranscript() {
+        return transcript.toString();
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return gap before the current segment, -1 for the first one
+     */
+    public long getLastGapMs() {
+        return lastGapMs;
+    }
+
+    public long getMaxGapMs() {
+        return maxGapMs;
+    }
+
+    public long getAverageGapMs() {
+        return gaps == 0 ? -1 : totalGapMs / gaps;
+    }
+}
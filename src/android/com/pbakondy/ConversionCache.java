@@ -0,0 +1,101 @@
+package com.pbakondy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed store of converted captures.
+ * <p>
+ * Outputs are named after the SHA-256 of the captured audio and the output format,
+ * so converting the same capture again is a file lookup. Conversions write to a
+ * {@code .part} file which is only renamed once complete, a half-written output is
+ * never served. An instance is meant to be used from a single I/O thread.
+ */
+public class ConversionCache {
+
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final MessageDigest digest;
+
+    public ConversionCache(File directory) {
+        this.directory = directory;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return hex encoded SHA-256 of the file content
+     */
+    public String hash(File file) throws IOException {
+        digest.reset();
+        try (InputStream in = new FileInputStream(file)) {
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return the finished output for the hash, or null if it was not converted yet
+     */
+    public File lookup(String hash, String format) {
+        File output = outputFor(hash, format);
+        if (output.isFile() && output.length() > 0) {
+            output.setLastModified(System.currentTimeMillis());
+            return output;
+        }
+        return null;
+    }
+
+    public File outputFor(String hash, String format) {
+        return new File(directory, hash + "-" + format + ".mp4");
+    }
+
+    /**
+     * @return the file a conversion writes to before it is published
+     */
+    public File partialFor(String hash, String format) {
+        directory.mkdirs();
+        return new File(directory, hash + "-" + format + ".mp4" + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Moves a finished partial file to its final name
+     */
+    public File publish(File partial) throws IOException {
+        File output = new File(publishedPath(partial.getAbsolutePath()));
+        if (!partial.renameTo(output)) {
+            throw new IOException("Could not publish " + output.getName());
+        }
+        return output;
+    }
+
+    /**
+     * @return the path the partial file will have once published
+     */
+    public String publishedPath(String partialPath) {
+        if (partialPath.endsWith(PARTIAL_SUFFIX)) {
+            return partialPath.substring(0, partialPath.length() - PARTIAL_SUFFIX.length());
+        }
+        return partialPath;
+    }
+}
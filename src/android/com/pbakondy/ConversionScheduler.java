@@ -0,0 +1,288 @@
+package com.pbakondy;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queues conversions in front of {@link AudioConverter} so back-to-back sessions
+ * do not fight over the hardware encoders.
+ * <p>
+ * At most {@code maxConcurrent} AAC conversions run at a time, AMR remuxes use no
+ * codec and start right away. The most recently submitted pending job starts first,
+ * submitting the same output again returns the job that is already queued or running,
+ * and jobs that wait longer than the stale timeout are cancelled. All bookkeeping
+ * happens on the main looper.
+ */
+public class ConversionScheduler {
+
+    private static final String LOG_TAG = "ConversionScheduler";
+
+    private static final int MAX_CONCURRENCY = 2;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final long DEFAULT_STALE_AFTER_MS = 30000;
+
+    public interface ProgressListener {
+        /**
+         * Called on the main looper, with 100 once the job has completed
+         */
+        void onProgress(Job job, int progress);
+    }
+
+    public static class Job {
+
+        private final String inputPath;
+        private final String outputPath;
+        private final String format;
+        private final long submittedAt;
+        private final CompletableFuture<AudioConverter.Result> future = new CompletableFuture<>();
+        private AudioConverter.Conversion conversion;
+        private int lastProgress = -1;
+
+        private Job(String inputPath, String outputPath, String format) {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.format = format;
+            this.submittedAt = SystemClock.elapsedRealtime();
+        }
+
+        public String getInputPath() {
+            return inputPath;
+        }
+
+        public String getOutputPath() {
+            return outputPath;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public CompletableFuture<AudioConverter.Result> getFuture() {
+            return future;
+        }
+    }
+
+    private final AudioConverter audioConverter;
+    private final int maxConcurrent;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+    private final List<Job> running = new ArrayList<>();
+    private int runningEncoders;
+    private final Map<String, Job> jobsByOutput = new HashMap<>();
+    private long staleAfterMs = DEFAULT_STALE_AFTER_MS;
+    private volatile ProgressListener progressListener;
+
+    private final Runnable progressPoller = new Runnable() {
+        @Override
+        public void run() {
+            for (Job job : running) {
+                int progress = job.conversion.getProgress();
+                if (progress >= 0 && progress != job.lastProgress && progress < 100) {
+                    job.lastProgress = progress;
+                    notifyProgress(job, progress);
+                }
+            }
+            if (!running.isEmpty()) {
+                handler.postDelayed(this, PROGRESS_INTERVAL_MS);
+            }
+        }
+    };
+
+    public ConversionScheduler(AudioConverter audioConverter) {
+        this(audioConverter, codecConcurrency());
+    }
+
+    public ConversionScheduler(AudioConverter audioConverter, int maxConcurrent) {
+        this.audioConverter = audioConverter;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setStaleAfterMs(long staleAfterMs) {
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    /**
+     * Queues a conversion, can be called from any thread and never blocks
+     *
+     * @return completes on the main looper with the new job, or the queued or running
+     * one for the same output
+     */
+    public CompletableFuture<Job> submit(String inputPath, String outputPath, String format) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return CompletableFuture.completedFuture(enqueue(inputPath, outputPath, format));
+        }
+
+        CompletableFuture<Job> submitted = new CompletableFuture<>();
+        handler.post(() -> submitted.complete(enqueue(inputPath, outputPath, format)));
+        return submitted;
+    }
+
+    /**
+     * Cancels a job whether it is pending or running, can be called from any thread
+     */
+    public void cancel(Job job) {
+        handler.post(() -> cancelNow(job));
+    }
+
+    /**
+     * Cancels every pending and running job, can be called from any thread
+     */
+    public void cancelAll() {
+        handler.post(() -> {
+            // Pending jobs first, so finished running ones do not start them
+            for (Job job : new ArrayList<>(pending)) {
+                cancelNow(job);
+            }
+            for (Job job : new ArrayList<>(running)) {
+                cancelNow(job);
+            }
+        });
+    }
+
+    private void cancelNow(Job job) {
+        if (pending.remove(job)) {
+            finish(job);
+            job.future.completeExceptionally(new CancellationException("Conversion cancelled"));
+        } else if (running.contains(job)) {
+            job.conversion.cancel();
+        }
+    }
+
+    private Job enqueue(String inputPath, String outputPath, String format) {
+        Job existing = jobsByOutput.get(key(outputPath, format));
+        if (existing != null) {
+            Log.d(LOG_TAG, "coalesced conversion to " + outputPath);
+            // Coalesced jobs count as the newest request
+            if (pending.remove(existing)) {
+                pending.addFirst(existing);
+            }
+            return existing;
+        }
+
+        Job job = new Job(inputPath, outputPath, format);
+        jobsByOutput.put(key(outputPath, format), job);
+        pending.addFirst(job);
+        schedule();
+        return job;
+    }
+
+    private void schedule() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Job> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            if (now - job.submittedAt > staleAfterMs) {
+                Log.d(LOG_TAG, "dropping stale conversion of " + job.inputPath);
+                iterator.remove();
+                finish(job);
+                job.future.completeExceptionally(new CancellationException("Conversion went stale"));
+            }
+        }
+
+        iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            boolean encodes = usesEncoder(job);
+            if (encodes && runningEncoders >= maxConcurrent) {
+                continue;
+            }
+            iterator.remove();
+            running.add(job);
+            if (encodes) {
+                runningEncoders++;
+            }
+            job.conversion = audioConverter.start(job.inputPath, job.outputPath, job.format);
+            job.conversion.getFuture().whenComplete((result, throwable) ->
+                    handler.post(() -> onConversionDone(job, result, throwable)));
+            if (running.size() == 1) {
+                handler.removeCallbacks(progressPoller);
+                handler.postDelayed(progressPoller, PROGRESS_INTERVAL_MS);
+            }
+        }
+    }
+
+    private void onConversionDone(Job job, AudioConverter.Result result, Throwable throwable) {
+        running.remove(job);
+        if (usesEncoder(job)) {
+            runningEncoders--;
+        }
+        finish(job);
+        if (throwable != null) {
+            job.future.completeExceptionally(throwable);
+        } else {
+            job.future.complete(result);
+            notifyProgress(job, 100);
+        }
+        schedule();
+    }
+
+    private void finish(Job job) {
+        String key = key(job.outputPath, job.format);
+        if (jobsByOutput.get(key) == job) {
+            jobsByOutput.remove(key);
+        }
+    }
+
+    private static boolean usesEncoder(Job job) {
+        return AudioConverter.FORMAT_AAC.equals(job.format);
+    }
+
+    private static String key(String outputPath, String format) {
+        return format + ":" + outputPath;
+    }
+
+    private void notifyProgress(Job job, int progress) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onProgress(job, progress);
+        }
+    }
+
+    /**
+     * Number of AAC conversions the device can run side by side, based on its AAC encoders
+     */
+    static int codecConcurrency() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 1;
+        }
+        int encoders = 0;
+        int maxInstances = 1;
+        try {
+            for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                if (!info.isEncoder()) {
+                    continue;
+                }
+                for (String type : info.getSupportedTypes()) {
+                    if (MediaFormat.MIMETYPE_AUDIO_AAC.equalsIgnoreCase(type)) {
+                        encoders++;
+                        maxInstances = Math.max(maxInstances,
+                                info.getCapabilitiesForType(type).getMaxSupportedInstances());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Could not query codecs: " + e.getMessage());
+            return 1;
+        }
+        return Math.max(1, Math.min(MAX_CONCURRENCY, Math.min(encoders, maxInstances)));
+    }
+}
@@ -0,0 +1,113 @@
+package com.pbakondy;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One keep-callback channel that carries every event of every session.
+ * <p>
+ * Partials, levels and segments arrive at the pace and in the batches of the per-call
+ * callbacks, see {@link EventScheduler}, everything else is sent as it happens. Each
+ * event is a JSON object with its {@code type}, the {@code session} it belongs to, a
+ * {@code seq} that counts up by one across all events and the {@code timeMs} it was
+ * sent, in elapsed realtime. Numbering and sending happen under one lock, so the order of the
+ * numbers is the order in which JS receives them. Events with bytes are multipart
+ * results, the event plus an ArrayBuffer. Thread-safe.
+ */
+public class EventChannel {
+
+    private static final String LOG_TAG = "EventChannel";
+
+    public static final String ENGINE = "engine";
+    public static final String READY = "ready";
+    public static final String SPEECH_START = "speechStart";
+    public static final String SPEECH_END = "speechEnd";
+    public static final String PARTIAL = "partial";
+    public static final String SEGMENT = "segment";
+    public static final String FINAL = "final";
+    public static final String LEVEL = "level";
+    public static final String AUDIO_CHUNK = "audioChunk";
+    public static final String ERROR = "error";
+    public static final String METRICS = "metrics";
+
+    private volatile CallbackContext callbackContext;
+    private long seq;
+
+    /**
+     * Replaces the subscriber, numbering starts over. The previous subscriber gets an error
+     * that closes its channel.
+     */
+    public synchronized void subscribe(CallbackContext callbackContext) {
+        if (this.callbackContext != null) {
+            this.callbackContext.error("Replaced by a new subscription");
+        }
+        this.callbackContext = callbackContext;
+        this.seq = 0;
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    public synchronized void unsubscribe() {
+        if (callbackContext != null) {
+            callbackContext.success();
+            callbackContext = null;
+        }
+    }
+
+    /**
+     * Cheap check to skip building events nobody receives
+     */
+    public boolean isSubscribed() {
+        return callbackContext != null;
+    }
+
+    public void send(String type, int session) {
+        send(type, session, new JSONObject(), null);
+    }
+
+    public void send(String type, int session, JSONObject event) {
+        send(type, session, event, null);
+    }
+
+    /**
+     * Adds type, session, seq and timeMs to the event and sends it
+     *
+     * @param bytes sent as ArrayBuffer next to the event, or null
+     */
+    public synchronized void send(String type, int session, JSONObject event, byte[] bytes) {
+        if (callbackContext == null) {
+            return;
+        }
+        try {
+            event.put("type", type);
+            event.put("session", session);
+            event.put("seq", seq);
+            event.put("timeMs", SystemClock.elapsedRealtime());
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Could not build " + type + " event: " + e.getMessage());
+            return;
+        }
+
+        PluginResult result;
+        if (bytes == null) {
+            result = new PluginResult(PluginResult.Status.OK, event);
+        } else {
+            List<PluginResult> parts = new ArrayList<>(2);
+            parts.add(new PluginResult(PluginResult.Status.OK, event));
+            parts.add(new PluginResult(PluginResult.Status.OK, bytes));
+            result = new PluginResult(PluginResult.Status.OK, parts);
+        }
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        seq++;
+    }
+}
@@ -0,0 +1,203 @@
+package com.pbakondy;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Paces the events of a session on their way to the WebView bridge.
+ * <p>
+ * Events are delivered at most once per minimum interval. Until then only the latest
+ * event of each type is kept, the payload is built when it is delivered so it always
+ * reflects the newest state. Final results and errors are delivered immediately and
+ * drop whatever is still pending. Events sent with a channel type are also delivered to
+ * the {@link EventChannel}, at the same pace and from the same payload, without the
+ * {@code is...} flag the type replaces. Every method has to be called on the handler's
+ * thread.
+ */
+public class EventScheduler {
+
+    private static final String LOG_TAG = "EventScheduler";
+
+    public interface Event {
+        JSONObject build() throws JSONException;
+    }
+
+    private final Handler handler;
+    private final EventChannel eventChannel;
+    private final Map<String, Event> pending = new LinkedHashMap<>();
+    private final Map<String, String> channelTypes = new LinkedHashMap<>();
+
+    private CallbackContext callbackContext;
+    private int session;
+    private long minIntervalMs;
+    private long lastFlushAt;
+    private boolean flushScheduled;
+
+    private long delivered;
+    private long coalesced;
+    private long dropped;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    public EventScheduler(Handler handler) {
+        this(handler, null);
+    }
+
+    public EventScheduler(Handler handler, EventChannel eventChannel) {
+        this.handler = handler;
+        this.eventChannel = eventChannel;
+    }
+
+    public void start(CallbackContext callbackContext, long minIntervalMs) {
+        start(callbackContext, minIntervalMs, 0);
+    }
+
+    /**
+     * Starts delivering to a new session, anything pending for the previous one is dropped
+     *
+     * @param session id the session has on the channel
+     */
+    public void start(CallbackContext callbackContext, long minIntervalMs, int session) {
+        dropPending();
+        this.callbackContext = callbackContext;
+        this.session = session;
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.lastFlushAt = 0;
+    }
+
+    /**
+     * Queues an event, replacing a pending event of the same type
+     */
+    public void send(String type, Event event) {
+        send(type, null, event);
+    }
+
+    /**
+     * Queues an event that is also delivered to the channel
+     *
+     * @param channelType type on the channel, or null to leave it out
+     */
+    public void send(String type, String channelType, Event event) {
+        if (callbackContext == null) {
+            return;
+        }
+        if (pending.put(type, event) != null) {
+            coalesced++;
+        }
+        if (channelType != null) {
+            channelTypes.put(type, channelType);
+        }
+
+        long wait = lastFlushAt + minIntervalMs - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            handler.removeCallbacks(flush);
+            flushScheduled = false;
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flush, wait);
+        }
+    }
+
+    /**
+     * Delivers a final result or an error right away and ends the session
+     */
+    public void finish(PluginResult result) {
+        dropPending();
+        if (callbackContext == null) {
+            return;
+        }
+        callbackContext.sendPluginResult(result);
+        delivered++;
+        if (!result.getKeepCallback()) {
+            callbackContext = null;
+            Log.d(LOG_TAG, "delivered: " + delivered + ", coalesced: " + coalesced + ", dropped: " + dropped);
+        }
+    }
+
+    /**
+     * @return context of the running session, null if there is none
+     */
+    public CallbackContext getCallbackContext() {
+        return callbackContext;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    private void flush() {
+        lastFlushAt = SystemClock.elapsedRealtime();
+        if (callbackContext == null) {
+            pending.clear();
+            channelTypes.clear();
+            return;
+        }
+        for (Map.Entry<String, Event> entry : pending.entrySet()) {
+            try {
+                JSONObject event = entry.getValue().build();
+                PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+                delivered++;
+
+                String channelType = channelTypes.get(entry.getKey());
+                if (channelType != null && eventChannel != null && eventChannel.isSubscribed()) {
+                    eventChannel.send(channelType, session, toChannel(channelType, event));
+                }
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, "Could not build event: " + e.getMessage());
+            }
+        }
+        pending.clear();
+        channelTypes.clear();
+    }
+
+    /**
+     * @return copy of the event without the flag of its type, the channel adds its own fields
+     */
+    private static JSONObject toChannel(String channelType, JSONObject event) throws JSONException {
+        String flag = "is" + Character.toUpperCase(channelType.charAt(0)) + channelType.substring(1);
+        JSONObject copy = new JSONObject();
+        Iterator<String> keys = event.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.equals(flag)) {
+                copy.put(key, event.get(key));
+            }
+        }
+        return copy;
+    }
+
+    private void dropPending() {
+        handler.removeCallbacks(flush);
+        flushScheduled = false;
+        dropped += pending.size();
+        pending.clear();
+        channelTypes.clear();
+    }
+}
@@ -0,0 +1,609 @@
+package com.pbakondy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streaming FLAC encoder for 16 bit little endian mono PCM.
+ * <p>
+ * Samples are collected into fixed blocks of {@value #BLOCK_SIZE}, every full block is
+ * encoded to a frame and written right away, so the file is complete as soon as the last
+ * samples are in. Each block is tried as a constant, with the fixed predictors of order
+ * 0 to 4 and with LPC up to order {@value #MAX_LPC_ORDER}, the residual is Rice coded
+ * with the best partition order. All buffers are allocated once and reused. Not
+ * thread-safe.
+ */
+public class FlacEncoder {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_LPC_ORDER = 8;
+    private static final int LPC_PRECISION = 12;
+    private static final int MAX_PARTITION_ORDER = 6;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int STREAMINFO_OFFSET = 8;
+
+    private final int sampleRate;
+
+    private final int[] block = new int[BLOCK_SIZE];
+    private final int[] residual = new int[BLOCK_SIZE];
+    private final int[] bestResidual = new int[BLOCK_SIZE];
+    private final double[] window = new double[BLOCK_SIZE];
+    private final double[] autocorrelation = new double[MAX_LPC_ORDER + 1];
+    private final double[][] lpc = new double[MAX_LPC_ORDER][MAX_LPC_ORDER];
+    private final int[] qlp = new int[MAX_LPC_ORDER];
+    private final int[] bestQlp = new int[MAX_LPC_ORDER];
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] candidateParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] bestRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final BitWriter out = new BitWriter(BLOCK_SIZE * 3);
+    private final ByteBuffer header = ByteBuffer.allocate(42);
+
+    private FileChannel channel;
+    private int blockFill;
+    private int pendingByte = -1;
+    private long samples;
+    private long frames;
+    private long[] frameOffsets = new long[64];
+    private int lastPartitionOrder;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize;
+
+    public FlacEncoder(int sampleRate) {
+        this.sampleRate = sampleRate;
+        // Welch window for the autocorrelation, computed once
+        double half = (BLOCK_SIZE - 1) / 2.0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            double x = (i - half) / half;
+            window[i] = 1 - x * x;
+        }
+    }
+
+    /**
+     * Writes the stream header at the start of the channel
+     */
+    public void start(FileChannel channel) throws IOException {
+        this.channel = channel;
+        blockFill = 0;
+        pendingByte = -1;
+        samples = 0;
+        frames = 0;
+        minFrameSize = Integer.MAX_VALUE;
+        maxFrameSize = 0;
+        channel.truncate(0);
+        channel.position(0);
+        writeHeader();
+    }
+
+    /**
+     * Encodes the bytes between position and limit, moving the position to the limit.
+     * An odd trailing byte is kept for the next call.
+     */
+    public void write(ByteBuffer pcm) throws IOException {
+        while (pcm.hasRemaining()) {
+            int low;
+            if (pendingByte >= 0) {
+                low = pendingByte;
+                pendingByte = -1;
+            } else {
+                low = pcm.get() & 0xFF;
+                if (!pcm.hasRemaining()) {
+                    pendingByte = low;
+                    return;
+                }
+            }
+            block[blockFill++] = (short) (low | (pcm.get() << 8));
+            if (blockFill == BLOCK_SIZE) {
+                encodeFrame(BLOCK_SIZE);
+                blockFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Encodes the last partial block and completes the stream header
+     */
+    public void finish() throws IOException {
+        if (blockFill > 0) {
+            encodeFrame(blockFill);
+            blockFill = 0;
+        }
+        writeHeader();
+    }
+
+    /**
+     * Drops the frames that start at or after a sample, has to be called after {@link #finish()}
+     *
+     * @return number of samples left in the stream
+     */
+    public long truncate(long sample) throws IOException {
+        long frame = (sample + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (frame < frames) {
+            channel.truncate(frameOffsets[(int) frame]);
+            frames = frame;
+            samples = frame * BLOCK_SIZE;
+            // Sizes of the dropped frames may have been the extremes, mark them unknown
+            minFrameSize = 0;
+            maxFrameSize = 0;
+            writeHeader();
+        }
+        return samples;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.put((byte) 'f').put((byte) 'L').put((byte) 'a').put((byte) 'C');
+        // Last metadata block, STREAMINFO, 34 bytes
+        header.put((byte) 0x80).put((byte) 0).put((byte) 0).put((byte) 34);
+        // The last block does not count for the minimum block size
+        header.putShort((short) BLOCK_SIZE);
+        header.putShort((short) BLOCK_SIZE);
+        putInt24(frames > 0 ? minFrameSize : 0);
+        putInt24(maxFrameSize);
+        // 20 bits sample rate, 3 bits channels - 1, 5 bits bits per sample - 1, 36 bits samples
+        long packed = ((long) sampleRate << 44) | ((long) (BITS_PER_SAMPLE - 1) << 36) | (samples & 0xFFFFFFFFFL);
+        header.putLong(packed);
+        // MD5 left zero, which means not computed
+        for (int i = 0; i < 16; i++) {
+            header.put((byte) 0);
+        }
+        header.flip();
+        long position = channel.position();
+        channel.write(header, 0);
+        channel.position(Math.max(position, STREAMINFO_OFFSET + 34));
+    }
+
+    private void putInt24(int value) {
+        header.put((byte) (value >> 16)).put((byte) (value >> 8)).put((byte) value);
+    }
+
+    private void encodeFrame(int blockSize) throws IOException {
+        out.reset();
+
+        // Frame header: sync code, fixed block size strategy
+        out.write(0xFFF8, 16);
+        boolean fullBlock = blockSize == BLOCK_SIZE;
+        out.write(fullBlock ? 0xC : 0x7, 4); // 4096, or 16 bit block size - 1 at the end
+        out.write(0, 4); // sample rate from STREAMINFO
+        out.write(0, 4); // mono
+        out.write(0x4, 3); // 16 bits per sample
+        out.write(0, 1);
+        writeUtf8(frames);
+        if (!fullBlock) {
+            out.write(blockSize - 1, 16);
+        }
+        out.write(Crc.crc8(out.buffer(), 0, out.bytes()), 8);
+
+        encodeSubframe(blockSize);
+
+        out.alignToByte();
+        out.write(Crc.crc16(out.buffer(), 0, out.bytes()), 16);
+
+        if (frames == frameOffsets.length) {
+            long[] grown = new long[frameOffsets.length * 2];
+            System.arraycopy(frameOffsets, 0, grown, 0, frameOffsets.length);
+            frameOffsets = grown;
+        }
+        frameOffsets[(int) frames] = channel.position();
+
+        ByteBuffer frame = ByteBuffer.wrap(out.buffer(), 0, out.bytes());
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+
+        frames++;
+        samples += blockSize;
+        minFrameSize = Math.min(minFrameSize, out.bytes());
+        maxFrameSize = Math.max(maxFrameSize, out.bytes());
+    }
+
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            out.write((int) value, 8);
+            return;
+        }
+        int continuation = 1;
+        while (value >= 1L << (5 * continuation + 6)) {
+            continuation++;
+        }
+        int lead = (0xFF00 >> (continuation + 1)) & 0xFF;
+        out.write(lead | (int) (value >> (6 * continuation)), 8);
+        for (int i = continuation - 1; i >= 0; i--) {
+            out.write(0x80 | (int) ((value >> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    private void encodeSubframe(int blockSize) {
+        boolean constant = true;
+        for (int i = 1; i < blockSize && constant; i++) {
+            constant = block[i] == block[0];
+        }
+        if (constant) {
+            out.write(0, 8); // padding, CONSTANT, no wasted bits
+            out.writeSigned(block[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        // Fixed predictors
+        long bestBits = (long) blockSize * BITS_PER_SAMPLE; // verbatim
+        int bestType = -1;
+        int bestOrder = 0;
+        int bestPartitionOrder = 0;
+        int bestShift = 0;
+        for (int order = 0; order <= Math.min(MAX_FIXED_ORDER, blockSize - 1); order++) {
+            fixedResidual(order, blockSize);
+            long bits = riceBits(order, blockSize) + (long) order * BITS_PER_SAMPLE;
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestType = 0;
+                bestOrder = order;
+                bestPartitionOrder = lastPartitionOrder;
+                keepBest(blockSize);
+            }
+        }
+
+        // LPC on the windowed autocorrelation
+        int maxOrder = Math.min(MAX_LPC_ORDER, blockSize - 1);
+        if (maxOrder > 0 && computeLpc(blockSize, maxOrder)) {
+            for (int order = 1; order <= maxOrder; order++) {
+                int shift = quantizeLpc(order);
+                if (shift < 0) {
+                    continue;
+                }
+                lpcResidual(order, shift, blockSize);
+                long bits = riceBits(order, blockSize) + (long) order * BITS_PER_SAMPLE
+                        + 4 + 5 + (long) order * LPC_PRECISION;
+                if (bits < bestBits) {
+                    bestBits = bits;
+                    bestType = 1;
+                    bestOrder = order;
+                    bestShift = shift;
+                    bestPartitionOrder = lastPartitionOrder;
+                    keepBest(blockSize);
+                    System.arraycopy(qlp, 0, bestQlp, 0, order);
+                }
+            }
+        }
+
+        if (bestType < 0) {
+            out.write(0x02, 8); // VERBATIM
+            for (int i = 0; i < blockSize; i++) {
+                out.writeSigned(block[i], BITS_PER_SAMPLE);
+            }
+            return;
+        }
+
+        if (bestType == 0) {
+            out.write(0x10 | (bestOrder << 1), 8); // FIXED
+        } else {
+            out.write(0x40 | ((bestOrder - 1) << 1), 8); // LPC
+        }
+        for (int i = 0; i < bestOrder; i++) {
+            out.writeSigned(block[i], BITS_PER_SAMPLE);
+        }
+        if (bestType == 1) {
+            out.write(LPC_PRECISION - 1, 4);
+            out.writeSigned(bestShift, 5);
+            for (int i = 0; i < bestOrder; i++) {
+                out.writeSigned(bestQlp[i], LPC_PRECISION);
+            }
+        }
+        writeResidual(bestOrder, bestPartitionOrder, blockSize);
+    }
+
+    private void keepBest(int blockSize) {
+        System.arraycopy(residual, 0, bestResidual, 0, blockSize);
+        System.arraycopy(riceParameters, 0, bestRiceParameters, 0, 1 << lastPartitionOrder);
+    }
+
+    private void fixedResidual(int order, int blockSize) {
+        int[] x = block;
+        for (int i = order; i < blockSize; i++) {
+            switch (order) {
+                case 0:
+                    residual[i] = x[i];
+                    break;
+                case 1:
+                    residual[i] = x[i] - x[i - 1];
+                    break;
+                case 2:
+                    residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+                    break;
+                case 3:
+                    residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                    break;
+                default:
+                    residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Levinson-Durbin on the autocorrelation, lpc[order - 1] holds the predictor of each order
+     */
+    private boolean computeLpc(int blockSize, int maxOrder) {
+        double half = (blockSize - 1) / 2.0;
+        for (int lag = 0; lag <= maxOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < blockSize; i++) {
+                sum += windowed(i, blockSize, half) * windowed(i - lag, blockSize, half);
+            }
+            autocorrelation[lag] = sum;
+        }
+        if (autocorrelation[0] == 0) {
+            return false;
+        }
+
+        double error = autocorrelation[0];
+        for (int order = 1; order <= maxOrder; order++) {
+            double k = autocorrelation[order];
+            for (int j = 0; j < order - 1; j++) {
+                k -= lpc[order - 2][j] * autocorrelation[order - 1 - j];
+            }
+            k /= error;
+            double[] current = lpc[order - 1];
+            for (int j = 0; j < order - 1; j++) {
+                current[j] = lpc[order - 2][j] - k * lpc[order - 2][order - 2 - j];
+            }
+            current[order - 1] = k;
+            error *= 1 - k * k;
+            if (error <= 0) {
+                return order > 1;
+            }
+        }
+        return true;
+    }
+
+    private double windowed(int i, int blockSize, double half) {
+        if (blockSize == BLOCK_SIZE) {
+            return block[i] * window[i];
+        }
+        double x = (i - half) / half;
+        return block[i] * (1 - x * x);
+    }
+
+    /**
+     * @return the shift of the quantized coefficients in qlp, -1 if they can not be used
+     */
+    private int quantizeLpc(int order) {
+        double[] coefficients = lpc[order - 1];
+        double max = 0;
+        for (int i = 0; i < order; i++) {
+            if (Double.isNaN(coefficients[i])) {
+                return -1;
+            }
+            max = Math.max(max, Math.abs(coefficients[i]));
+        }
+        if (max == 0) {
+            return -1;
+        }
+        int limit = (1 << (LPC_PRECISION - 1)) - 1;
+        int shift = LPC_PRECISION - 1 - (Math.getExponent(max) + 1);
+        shift = Math.min(15, shift);
+        if (shift < 0) {
+            return -1;
+        }
+        double carry = 0;
+        for (int i = 0; i < order; i++) {
+            carry += coefficients[i] * (1 << shift);
+            long q = Math.round(carry);
+            q = Math.max(-limit - 1, Math.min(limit, q));
+            carry -= q;
+            qlp[i] = (int) q;
+        }
+        return shift;
+    }
+
+    private void lpcResidual(int order, int shift, int blockSize) {
+        for (int i = order; i < blockSize; i++) {
+            long sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += (long) qlp[j] * block[i - 1 - j];
+            }
+            residual[i] = block[i] - (int) (sum >> shift);
+        }
+    }
+
+    /**
+     * Finds the cheapest partition order and Rice parameters for the residual
+     *
+     * @return bits of the coded residual, the choice is left in lastPartitionOrder and riceParameters
+     */
+    private long riceBits(int order, int blockSize) {
+        int maxPartitionOrder = 0;
+        while (maxPartitionOrder < MAX_PARTITION_ORDER
+                && (blockSize & ((1 << (maxPartitionOrder + 1)) - 1)) == 0
+                && (blockSize >> (maxPartitionOrder + 1)) > order) {
+            maxPartitionOrder++;
+        }
+
+        // Sums of the finest partitions, coarser ones add them up
+        int finest = 1 << maxPartitionOrder;
+        int finestSize = blockSize >> maxPartitionOrder;
+        for (int p = 0; p < finest; p++) {
+            int start = p == 0 ? order : p * finestSize;
+            long sum = 0;
+            for (int i = start; i < (p + 1) * finestSize; i++) {
+                int r = residual[i];
+                sum += (r << 1) ^ (r >> 31);
+            }
+            partitionSums[p] = sum;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        int bestOrder = 0;
+        for (int partitionOrder = maxPartitionOrder; partitionOrder >= 0; partitionOrder--) {
+            int partitions = 1 << partitionOrder;
+            int partitionSize = blockSize >> partitionOrder;
+            int merged = finest / partitions;
+            long bits = 2 + 4; // coding method, partition order
+            for (int p = 0; p < partitions; p++) {
+                long sum = 0;
+                for (int f = p * merged; f < (p + 1) * merged; f++) {
+                    sum += partitionSums[f];
+                }
+                int start = p == 0 ? order : p * partitionSize;
+                int end = (p + 1) * partitionSize;
+                int k = riceParameter(sum, end - start);
+                candidateParameters[p] = k;
+                bits += 4 + (long) (end - start) * (k + 1) + partitionCost(start, end, k);
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = partitionOrder;
+                System.arraycopy(candidateParameters, 0, riceParameters, 0, partitions);
+            }
+        }
+        lastPartitionOrder = bestOrder;
+        return bestBits;
+    }
+
+    private static int riceParameter(long sum, int count) {
+        if (count == 0 || sum < count) {
+            return 0;
+        }
+        int k = 63 - Long.numberOfLeadingZeros(sum / count);
+        return Math.min(MAX_RICE_PARAMETER, k);
+    }
+
+    private long partitionCost(int start, int end, int k) {
+        long bits = 0;
+        for (int i = start; i < end; i++) {
+            int r = residual[i];
+            bits += ((r << 1) ^ (r >> 31)) >>> k;
+        }
+        return bits;
+    }
+
+    private void writeResidual(int order, int partitionOrder, int blockSize) {
+        out.write(0, 2); // Rice with 4 bit parameters
+        out.write(partitionOrder, 4);
+        int partitions = 1 << partitionOrder;
+        int partitionSize = blockSize >> partitionOrder;
+        for (int p = 0; p < partitions; p++) {
+            int k = bestRiceParameters[p];
+            out.write(k, 4);
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            for (int i = start; i < end; i++) {
+                int r = bestResidual[i];
+                out.writeRice((r << 1) ^ (r >> 31), k);
+            }
+        }
+    }
+
+    /**
+     * MSB first bit writer into a growable byte array
+     */
+    private static class BitWriter {
+
+        private byte[] buffer;
+        private int length;
+        private long accumulator;
+        private int bits;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void reset() {
+            length = 0;
+            accumulator = 0;
+            bits = 0;
+        }
+
+        void write(int value, int count) {
+            accumulator = (accumulator << count) | (value & ((1L << count) - 1));
+            bits += count;
+            while (bits >= 8) {
+                bits -= 8;
+                put((byte) (accumulator >>> bits));
+            }
+        }
+
+        void writeSigned(int value, int count) {
+            write(value, count);
+        }
+
+        void writeRice(int folded, int k) {
+            int quotient = folded >>> k;
+            while (quotient >= 32) {
+                write(0, 32);
+                quotient -= 32;
+            }
+            write(1, quotient + 1);
+            if (k > 0) {
+                write(folded, k);
+            }
+        }
+
+        void alignToByte() {
+            if (bits > 0) {
+                write(0, 8 - bits);
+            }
+        }
+
+        /**
+         * @return complete bytes written so far
+         */
+        int bytes() {
+            return length;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        private void put(byte value) {
+            if (length == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+            buffer[length++] = value;
+        }
+    }
+
+    private static class Crc {
+
+        private static final int[] CRC8 = new int[256];
+        private static final int[] CRC16 = new int[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc8 = i;
+                int crc16 = i << 8;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                    crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+                }
+                CRC8[i] = crc8 & 0xFF;
+                CRC16[i] = crc16 & 0xFFFF;
+            }
+        }
+
+        static int crc8(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++) {
+                crc = CRC8[(crc ^ data[i]) & 0xFF];
+            }
+            return crc;
+        }
+
+        static int crc16(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++) {
+                crc = ((crc << 8) ^ CRC16[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+            }
+            return crc;
+        }
+    }
+}
@@ -2,54 +2,244 @@
 
 package com.pbakondy;
 
+import android.app.Activity;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.speech.RecognizerIntent;
+import android.util.Log;
 
 import org.apache.cordova.CallbackContext;
 import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Answers language queries from a catalogue cached on disk.
+ * <p>
+ * The catalogue is served immediately while it is younger than the TTL, a stale
+ * one is still served but refreshed in the background, and it is dropped when the
+ * recognizer package is updated, which every request checks. Callers that arrive while a broadcast is in flight
+ * all wait for that one broadcast, each on its own callback.
+ */
 public class LanguageDetailsChecker extends BroadcastReceiver {
 
+    private static final String LOG_TAG = "LanguageDetailsChecker";
     private static final String ERROR = "Could not get list of languages";
 
+    private static final String PREFERENCES = "com.pbakondy.SpeechRecognition.languages";
+    private static final String KEY_LANGUAGES = "languages";
+    private static final String KEY_PREFERENCE = "languagePreference";
+    private static final String KEY_FETCHED_AT = "fetchedAt";
+    private static final String KEY_RECOGNIZER_VERSION = "recognizerVersion";
+
+    private static final long TTL_MS = 24 * 60 * 60 * 1000L;
+    private static final long BROADCAST_TIMEOUT_MS = 5000;
+
+    private static class PendingRequest {
+        final CallbackContext callbackContext;
+        final boolean details;
+
+        PendingRequest(CallbackContext callbackContext, boolean details) {
+            this.callbackContext = callbackContext;
+            this.details = details;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<PendingRequest> pending = new ArrayList<>();
+
     private List<String> supportedLanguages;
     private String languagePreference;
-    private CallbackContext callbackContext;
+    private long fetchedAt;
+    private long cachedVersion;
+    private boolean broadcastInFlight;
 
-    public LanguageDetailsChecker(CallbackContext callbackContext) {
+    private final Runnable broadcastTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(LOG_TAG, "language details broadcast timed out");
+            finishBroadcast(false);
+        }
+    };
+
+    public LanguageDetailsChecker(Context context) {
         super();
-        this.callbackContext = callbackContext;
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        load();
+    }
+
+    /**
+     * Answers with the supported languages
+     *
+     * @param details if true the answer is an object with {@code languages} and
+     *                {@code languagePreference}, otherwise the array of languages
+     */
+    public void request(CallbackContext callbackContext, boolean details) {
+        long version = recognizerVersion();
+        boolean refresh;
+        synchronized (this) {
+            if (supportedLanguages != null && version != cachedVersion) {
+                Log.d(LOG_TAG, "recognizer updated, dropping cached languages");
+                supportedLanguages = null;
+                languagePreference = null;
+                fetchedAt = 0;
+                preferences.edit().clear().apply();
+            }
+            if (supportedLanguages != null) {
+                reply(callbackContext, details);
+                refresh = System.currentTimeMillis() - fetchedAt > TTL_MS;
+            } else {
+                pending.add(new PendingRequest(callbackContext, details));
+                refresh = true;
+            }
+            if (refresh) {
+                if (broadcastInFlight) {
+                    return;
+                }
+                broadcastInFlight = true;
+            }
+        }
+
+        if (refresh) {
+            sendBroadcast();
+        }
+    }
+
+    private void sendBroadcast() {
+        Intent detailsIntent = RecognizerIntent.getVoiceDetailsIntent(context);
+        if (detailsIntent == null) {
+            detailsIntent = new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS);
+        }
+        handler.postDelayed(broadcastTimeout, BROADCAST_TIMEOUT_MS);
+        context.sendOrderedBroadcast(detailsIntent, null, this, handler, Activity.RESULT_OK, null, null);
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
         Bundle results = getResultExtras(true);
 
-        if (results.containsKey(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE)) {
-            languagePreference = results.getString(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE);
+        synchronized (this) {
+            if (results.containsKey(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE)) {
+                languagePreference = results.getString(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE);
+            }
+
+            if (results.containsKey(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES)) {
+                supportedLanguages = results.getStringArrayList(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES);
+                fetchedAt = System.currentTimeMillis();
+                cachedVersion = recognizerVersion();
+                save();
+            }
+        }
+
+        handler.removeCallbacks(broadcastTimeout);
+        finishBroadcast(results.containsKey(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES));
+    }
+
+    private void finishBroadcast(boolean success) {
+        List<PendingRequest> waiting;
+        synchronized (this) {
+            if (!broadcastInFlight) {
+                return;
+            }
+            broadcastInFlight = false;
+            waiting = new ArrayList<>(pending);
+            pending.clear();
         }
 
-        if (results.containsKey(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES)) {
-            supportedLanguages = results.getStringArrayList(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES);
+        for (PendingRequest request : waiting) {
+            if (success) {
+                reply(request.callbackContext, request.details);
+            } else {
+                request.callbackContext.error(ERROR);
+            }
+        }
+    }
 
-            JSONArray languages = new JSONArray(supportedLanguages);
+    private synchronized void reply(CallbackContext callbackContext, boolean details) {
+        JSONArray languages = new JSONArray(supportedLanguages);
+        if (!details) {
             callbackContext.success(languages);
             return;
         }
+        try {
+            JSONObject result = new JSONObject();
+            result.put("languages", languages);
+            result.put("languagePreference", languagePreference != null ? languagePreference : JSONObject.NULL);
+            callbackContext.success(result);
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    private void load() {
+        cachedVersion = recognizerVersion();
+        if (preferences.getLong(KEY_RECOGNIZER_VERSION, -1) != cachedVersion) {
+            preferences.edit().clear().apply();
+            return;
+        }
 
-        callbackContext.error(ERROR);
+        String languages = preferences.getString(KEY_LANGUAGES, null);
+        if (languages == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(languages);
+            List<String> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(array.getString(i));
+            }
+            supportedLanguages = list;
+            languagePreference = preferences.getString(KEY_PREFERENCE, null);
+            fetchedAt = preferences.getLong(KEY_FETCHED_AT, 0);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Could not read cached languages: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        preferences.edit()
+                .putString(KEY_LANGUAGES, new JSONArray(supportedLanguages).toString())
+                .putString(KEY_PREFERENCE, languagePreference)
+                .putLong(KEY_FETCHED_AT, fetchedAt)
+                .putLong(KEY_RECOGNIZER_VERSION, cachedVersion)
+                .apply();
+    }
+
+    private long recognizerVersion() {
+        Intent detailsIntent = RecognizerIntent.getVoiceDetailsIntent(context);
+        if (detailsIntent == null || detailsIntent.getPackage() == null) {
+            return 0;
+        }
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(detailsIntent.getPackage(), 0);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                return info.getLongVersionCode();
+            }
+            return info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
     }
 
-    public List<String> getSupportedLanguages() {
+    public synchronized List<String> getSupportedLanguages() {
         return supportedLanguages;
     }
 
-    public String getLanguagePreference() {
+    public synchronized String getLanguagePreference() {
         return languagePreference;
     }
 }
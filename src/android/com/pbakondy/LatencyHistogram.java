@@ -0,0 +1,111 @@
+package com.pbakondy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free histogram of latencies, in milliseconds unless noted otherwise.
+ * <p>
+ * Buckets are log-linear, four per power of two, so a percentile is reported with at most
+ * 25 % error whatever the range. Recording is a few atomic increments and never allocates,
+ * it is safe from any thread. Percentiles are read from a racy snapshot which is fine for
+ * metrics.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int OCTAVES = 24; // up to about 4.6 hours
+    private static final int BUCKETS = 1 + OCTAVES * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long valueMs) {
+        long value = Math.max(0, valueMs);
+        buckets.incrementAndGet(bucketOf(value));
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return largest value of the bucket holding the quantile, -1 if nothing was recorded
+     */
+    public long getPercentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("count", getCount());
+        result.put("p50", getPercentile(0.5));
+        result.put("p90", getPercentile(0.9));
+        result.put("p99", getPercentile(0.99));
+        result.put("max", max.get());
+        return result;
+    }
+
+    private static int bucketOf(long value) {
+        if (value == 0) {
+            return 0;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(value);
+        if (octave >= OCTAVES) {
+            return BUCKETS - 1;
+        }
+        // The bits right below the highest one pick the bucket within the octave
+        int sub = octave >= SUB_BUCKET_BITS
+                ? (int) (value >> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1)
+                : (int) (value << (SUB_BUCKET_BITS - octave)) & (SUB_BUCKETS - 1);
+        return 1 + octave * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return largest value that falls into the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        int octave = (bucket - 1) / SUB_BUCKETS;
+        int sub = (bucket - 1) % SUB_BUCKETS;
+        if (octave < SUB_BUCKET_BITS) {
+            // Narrower than one step per bucket, each holds a single value
+            return ((long) (SUB_BUCKETS + sub) << octave) >> SUB_BUCKET_BITS;
+        }
+        return ((long) (SUB_BUCKETS + sub + 1) << (octave - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.pbakondy;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Collects input level samples between two deliveries.
+ * <p>
+ * Samples go into a fixed float ring, when it is full the oldest ones are overwritten.
+ * On delivery they are aggregated into windows of {@code windowSize} samples, each
+ * reported as {@code [min, max, mean]} in dB. Not thread-safe, the recognizer
+ * callbacks and the delivery both run on the UI thread.
+ */
+public class LevelMeter {
+
+    private static final int CAPACITY = 256;
+
+    private final float[] samples = new float[CAPACITY];
+    private int head;
+    private int size;
+    private int windowSize = 1;
+
+    public void reset(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+        head = 0;
+        size = 0;
+    }
+
+    public void add(float rmsdB) {
+        samples[(head + size) % CAPACITY] = rmsdB;
+        if (size < CAPACITY) {
+            size++;
+        } else {
+            head = (head + 1) % CAPACITY;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the windows collected since the last call, oldest first
+     */
+    public JSONArray drain() throws JSONException {
+        JSONArray windows = new JSONArray();
+        while (size > 0) {
+            int count = Math.min(windowSize, size);
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            float sum = 0;
+            for (int i = 0; i < count; i++) {
+                float value = samples[head];
+                head = (head + 1) % CAPACITY;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+            size -= count;
+
+            JSONArray window = new JSONArray();
+            window.put(round(min));
+            window.put(round(max));
+            window.put(round(sum / count));
+            windows.put(window);
+        }
+        head = 0;
+        return windows;
+    }
+
+    private static double round(float value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
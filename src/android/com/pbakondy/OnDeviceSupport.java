@@ -0,0 +1,183 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+import android.speech.RecognitionSupport;
+import android.speech.RecognitionSupportCallback;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Knows which languages the on-device recognizer can serve.
+ * <p>
+ * The on-device recognizer exists from API 31. From API 33 it is asked for its installed
+ * languages, the answer is refreshed once it is older than ten minutes. Before that, or
+ * before the first answer, a language counts as installed until a session for it fails,
+ * so the first attempt decides. Languages that failed are not tried again until a probe
+ * reports them installed. Every method has to be called on the UI thread.
+ */
+public class OnDeviceSupport {
+
+    private static final String LOG_TAG = "OnDeviceSupport";
+
+    private static final long PROBE_TTL_MS = 10 * 60 * 1000L;
+
+    private final Context context;
+    private final Set<String> failed = new HashSet<>();
+    private final List<CallbackContext> pending = new ArrayList<>();
+
+    private List<String> installed;
+    private List<String> pendingDownload;
+    private List<String> supported;
+    private SpeechRecognizer prober;
+    private long probedAt;
+
+    public OnDeviceSupport(Context context) {
+        this.context = context;
+    }
+
+    public boolean isAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && SpeechRecognizer.isOnDeviceRecognitionAvailable(context);
+    }
+
+    /**
+     * @return whether a session in the language should start on the device
+     */
+    public boolean canServe(String language) {
+        if (!isAvailable()) {
+            return false;
+        }
+        String tag = normalize(language);
+        if (failed.contains(tag)) {
+            return false;
+        }
+        return installed == null || contains(installed, tag);
+    }
+
+    /**
+     * Remembers that the on-device recognizer could not serve the language
+     */
+    public void markFailed(String language) {
+        failed.add(normalize(language));
+    }
+
+    /**
+     * Probes in the background unless the last answer is recent
+     */
+    public void refresh() {
+        if (probedAt == 0 || SystemClock.elapsedRealtime() - probedAt > PROBE_TTL_MS) {
+            probe(null);
+        }
+    }
+
+    /**
+     * Asks the on-device recognizer for its languages, callers that arrive while a probe
+     * is running share its answer
+     *
+     * @param callbackContext gets the answer, or null to only refresh
+     */
+    public void probe(CallbackContext callbackContext) {
+        if (callbackContext != null) {
+            pending.add(callbackContext);
+        }
+        if (prober != null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || !isAvailable()) {
+            reply();
+            return;
+        }
+
+        try {
+            prober = SpeechRecognizer.createOnDeviceSpeechRecognizer(context);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Could not create on-device recognizer: " + e.getMessage());
+            reply();
+            return;
+        }
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        prober.checkRecognitionSupport(intent, context.getMainExecutor(), new RecognitionSupportCallback() {
+            @Override
+            public void onSupportResult(RecognitionSupport support) {
+                installed = support.getInstalledOnDeviceLanguages();
+                pendingDownload = support.getPendingOnDeviceLanguages();
+                supported = support.getSupportedOnDeviceLanguages();
+                // An installed language gets another chance
+                for (String language : installed) {
+                    failed.remove(normalize(language));
+                }
+                probedAt = SystemClock.elapsedRealtime();
+                Log.d(LOG_TAG, "installed on device: " + installed);
+                finishProbe();
+            }
+
+            @Override
+            public void onError(int error) {
+                Log.d(LOG_TAG, "support check failed: " + error);
+                probedAt = SystemClock.elapsedRealtime();
+                finishProbe();
+            }
+        });
+    }
+
+    private void finishProbe() {
+        prober.destroy();
+        prober = null;
+        reply();
+    }
+
+    private void reply() {
+        List<CallbackContext> waiting = new ArrayList<>(pending);
+        pending.clear();
+        for (CallbackContext callbackContext : waiting) {
+            try {
+                callbackContext.success(toJSON());
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+        }
+    }
+
+    private JSONObject toJSON() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("available", isAvailable());
+        if (installed != null) {
+            result.put("installed", new JSONArray(installed));
+            result.put("pending", new JSONArray(pendingDownload));
+            result.put("supported", new JSONArray(supported));
+        }
+        result.put("failed", new JSONArray(failed));
+        return result;
+    }
+
+    private static boolean contains(List<String> languages, String tag) {
+        for (String language : languages) {
+            String other = normalize(language);
+            // A pack for "en" serves "en-us" and the other way round
+            if (other.equals(tag) || other.startsWith(tag + "-") || tag.startsWith(other + "-")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String language) {
+        return language.replace('_', '-').toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,154 @@
+package com.pbakondy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the stream of partial hypotheses into small deltas.
+ * <p>
+ * Hypotheses are compared by content. The part of the best hypothesis that did not
+ * change since the previous partial, cut back to a word boundary, is stable. A delta
+ * is taken against what was last delivered, so partials that were coalesced before
+ * delivery still add up: it carries the text that became stable since the last delta
+ * and the unstable tail. When the recognizer rewrote text that was already delivered
+ * as stable the revision counter goes up and {@link #getStableLength()} tells where
+ * the stable text has to be cut.
+ * <p>
+ * Not thread-safe, the recognizer callbacks all arrive on the UI thread.
+ */
+public class PartialResultTracker {
+
+    private final List<String> lastMatches = new ArrayList<>();
+    private final StringBuilder lastText = new StringBuilder();
+
+    private int stableEnd;
+    private int minStableEnd;
+    private int delivered;
+    private int revision;
+    private boolean revised;
+    private String stable = "";
+    private String unstable = "";
+
+    public void reset() {
+        lastMatches.clear();
+        lastText.setLength(0);
+        stableEnd = 0;
+        minStableEnd = 0;
+        delivered = 0;
+        revision = 0;
+        revised = false;
+        stable = "";
+        unstable = "";
+    }
+
+    /**
+     * @return false if the hypotheses are the same as the previous ones
+     */
+    public boolean update(List<String> matches) {
+        if (matches == null || matches.isEmpty() || sameAsLast(matches)) {
+            return false;
+        }
+        lastMatches.clear();
+        lastMatches.addAll(matches);
+
+        String text = matches.get(0);
+        stableEnd = wordBoundary(text, commonPrefix(lastText, text), lastText.length());
+        minStableEnd = Math.min(minStableEnd, stableEnd);
+
+        lastText.setLength(0);
+        lastText.append(text);
+        return true;
+    }
+
+    /**
+     * Computes the delta against the last delivered state and marks it delivered
+     */
+    public void takeDelta() {
+        String text = lastMatches.isEmpty() ? "" : lastMatches.get(0);
+
+        revised = minStableEnd < delivered;
+        int from = delivered;
+        if (revised) {
+            revision++;
+            from = minStableEnd;
+        }
+        stable = text.substring(from, stableEnd);
+        unstable = text.substring(stableEnd);
+
+        delivered = stableEnd;
+        minStableEnd = stableEnd;
+    }
+
+    /**
+     * @return the hypotheses of the last update
+     */
+    public List<String> getMatches() {
+        return lastMatches;
+    }
+
+    /**
+     * @return text that became stable with the last delta
+     */
+    public String getStable() {
+        return stable;
+    }
+
+    /**
+     * @return the tail of the best hypothesis that may still change
+     */
+    public String getUnstable() {
+        return unstable;
+    }
+
+    /**
+     * @return number of times delivered stable text was rewritten in this session
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return whether the last delta rewrote delivered stable text
+     */
+    public boolean isRevised() {
+        return revised;
+    }
+
+    /**
+     * @return length the delivered stable text has to be cut to before appending, if revised
+     */
+    public int getStableLength() {
+        return delivered - stable.length();
+    }
+
+    private boolean sameAsLast(List<String> matches) {
+        if (matches.size() != lastMatches.size()) {
+            return false;
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            if (!matches.get(i).equals(lastMatches.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int commonPrefix(CharSequence previous, String text) {
+        int length = Math.min(previous.length(), text.length());
+        int i = 0;
+        while (i < length && previous.charAt(i) == text.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int wordBoundary(String text, int end, int previousLength) {
+        if (end == text.length() && end == previousLength) {
+            return end;
+        }
+        while (end > 0 && !Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,491 @@
+package com.pbakondy;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records 16 bit mono PCM next to the recognizer and writes it to a WAV or FLAC file.
+ * <p>
+ * The capture thread reads every frame from {@link AudioRecord} into a direct buffer and
+ * copies it into a preallocated direct ring buffer, a writer thread drains the ring to
+ * disk in large sequential chunks. Memory use is fixed and nothing is allocated per
+ * frame. If the disk falls behind by more than the ring size new audio is dropped and
+ * counted as an overrun.
+ * <p>
+ * Each recording has its own ring, counters and encoder, owned by its writer, so a
+ * recording can start while the writer of the previous one is still finishing its file.
+ * They are reused by later recordings once the writer is done.
+ * <p>
+ * With a {@link VoiceActivityDetector} attached every frame is analysed on the capture
+ * thread. When trimming, the writer skips the silence before speech while it is still in
+ * the ring and the file is truncated after the last speech, so trimming costs no copy.
+ * An attached {@link AudioStreamer} gets every frame as well, untrimmed.
+ * <p>
+ * Devices that can not record 16 kHz mono are recorded in their own format, a
+ * {@link Resampler} turns every frame into 16 kHz mono before it enters the ring, so the
+ * detector, the streamer and the encoders always see the same format.
+ */
+public class PcmCapture {
+
+    private static final String LOG_TAG = "PcmCapture";
+
+    public static final int SAMPLE_RATE = 16000;
+
+    public static final String FORMAT_WAV = "wav";
+    public static final String FORMAT_FLAC = "flac";
+
+    private static final int FRAME_BYTES = SAMPLE_RATE / 50 * 2; // 20 ms
+    private static final int RING_BYTES = 256 * 1024;
+    private static final int DRAIN_BYTES = 64 * 1024;
+    private static final int WAV_HEADER_BYTES = 44;
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int PREROLL_BYTES = SAMPLE_RATE / 5 * 2; // 200 ms
+    private static final int POSTROLL_BYTES = SAMPLE_RATE / 5 * 2;
+    private static final int MAX_IDLE_RECORDINGS = 2;
+
+    // Rate and channels tried in order, all but the first are resampled
+    private static final int[][] DEVICE_FORMATS = {
+            {SAMPLE_RATE, 1}, {48000, 1}, {44100, 1}, {48000, 2}, {44100, 2}
+    };
+
+    // AudioRecord fills a direct buffer from its start whatever the position is
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_BYTES);
+    private final ArrayDeque<Recording> idle = new ArrayDeque<>();
+
+    private Resampler resampler;
+    private ByteBuffer deviceFrame;
+    private ByteBuffer resampled;
+    private int deviceRate;
+    private int deviceChannels;
+
+    private volatile boolean running;
+
+    private VoiceActivityDetector vad;
+    private boolean trimSilence;
+    private AudioStreamer streamer;
+
+    private AudioRecord audioRecord;
+    private Thread captureThread;
+    private Recording recording;
+
+    /**
+     * Attaches a detector to the next recordings
+     *
+     * @param vad         detector fed with every captured frame, or null
+     * @param trimSilence leave out the silence before and after speech
+     */
+    public synchronized void setVoiceActivityDetector(VoiceActivityDetector vad, boolean trimSilence) {
+        this.vad = vad;
+        this.trimSilence = vad != null && trimSilence;
+    }
+
+    /**
+     * Attaches a streamer to the next recording, it is started and finished with it
+     *
+     * @param streamer streamer fed with every captured frame, or null
+     */
+    public synchronized void setStreamer(AudioStreamer streamer) {
+        this.streamer = streamer;
+    }
+
+    /**
+     * Starts recording to a WAV file, has to be stopped with {@link #stop()}
+     *
+     * @param file WAV file to write
+     * @return completes with the file once it is fully written
+     */
+    public CompletableFuture<File> start(File file) throws IOException {
+        return start(file, FORMAT_WAV);
+    }
+
+    /**
+     * Starts recording, has to be stopped with {@link #stop()}
+     *
+     * @param file   file to write
+     * @param format {@link #FORMAT_WAV} or {@link #FORMAT_FLAC}, FLAC is encoded while recording
+     * @return completes with the file once it is fully written
+     */
+    public synchronized CompletableFuture<File> start(File file, String format) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Capture already running");
+        }
+
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(0);
+            audioRecord = openAudioRecord();
+        } catch (IOException | RuntimeException e) {
+            output.close();
+            throw e;
+        }
+
+        if (vad != null) {
+            vad.reset();
+        }
+        final Recording next = idle.isEmpty() ? new Recording() : idle.pop();
+        next.open(file, output, format, trimSilence ? vad : null);
+        recording = next;
+        running = true;
+
+        captureThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                capture(next);
+            }
+        }, "PcmCapture");
+
+        audioRecord.startRecording();
+        if (streamer != null) {
+            streamer.start();
+        }
+        next.writer.start();
+        captureThread.start();
+        return next.future;
+    }
+
+    /**
+     * Stops recording, the future returned by start completes once the file is written
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            captureThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        audioRecord.stop();
+        audioRecord.release();
+        audioRecord = null;
+        if (streamer != null) {
+            streamer.finish();
+            streamer = null;
+        }
+
+        if (recording.overruns > 0) {
+            Log.d(LOG_TAG, "capture overruns: " + recording.overruns);
+        }
+        // The writer finishes the file on its own
+        recording.captureDone = true;
+        LockSupport.unpark(recording.writer);
+        recording = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private synchronized void recycle(Recording done) {
+        if (idle.size() < MAX_IDLE_RECORDINGS) {
+            idle.push(done);
+        }
+    }
+
+    /**
+     * Opens the microphone in the first format the device supports, resampling
+     * to 16 kHz mono when that is not the first one
+     */
+    private AudioRecord openAudioRecord() throws IOException {
+        for (int[] format : DEVICE_FORMATS) {
+            int rate = format[0];
+            int channels = format[1];
+            int channelMask = channels == 1 ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
+            int minBufferSize = AudioRecord.getMinBufferSize(rate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+            if (minBufferSize <= 0) {
+                continue;
+            }
+            int frameBytes = rate / 50 * 2 * channels;
+            AudioRecord record;
+            try {
+                record = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, rate,
+                        channelMask, AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, frameBytes * 8));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                record.release();
+                continue;
+            }
+
+            if (Resampler.isIdentity(rate, channels, SAMPLE_RATE)) {
+                resampler = null;
+            } else {
+                if (rate != deviceRate || channels != deviceChannels || resampler == null) {
+                    resampler = new Resampler(rate, channels, SAMPLE_RATE);
+                    deviceFrame = ByteBuffer.allocateDirect(frameBytes);
+                    resampled = ByteBuffer.allocateDirect(resampler.maxOutputBytes(frameBytes));
+                }
+                resampler.reset();
+                Log.d(LOG_TAG, "capturing at " + rate + " Hz, " + channels + " channels, resampling");
+            }
+            deviceRate = rate;
+            deviceChannels = channels;
+            return record;
+        }
+        throw new IOException("Could not open the microphone");
+    }
+
+    private void capture(Recording target) {
+        while (running) {
+            boolean ok = resampler != null ? captureResampled(target) : captureDirect(target);
+            if (!ok) {
+                break;
+            }
+            if (target.written - target.drained >= DRAIN_BYTES) {
+                LockSupport.unpark(target.writer);
+            }
+        }
+    }
+
+    /**
+     * Reads a 16 kHz mono frame and puts it into the ring
+     */
+    private boolean captureDirect(Recording target) {
+        frame.clear();
+        int read = audioRecord.read(frame, FRAME_BYTES);
+        if (read < 0) {
+            Log.e(LOG_TAG, "AudioRecord read failed: " + read);
+            return false;
+        }
+        frame.limit(read);
+        enqueue(target, frame);
+        return true;
+    }
+
+    /**
+     * Reads a frame in the device format and puts it into the ring resampled
+     */
+    private boolean captureResampled(Recording target) {
+        deviceFrame.clear();
+        int read = audioRecord.read(deviceFrame, deviceFrame.capacity());
+        if (read < 0) {
+            Log.e(LOG_TAG, "AudioRecord read failed: " + read);
+            return false;
+        }
+        deviceFrame.limit(read);
+        resampled.clear();
+        resampler.process(deviceFrame, resampled);
+        resampled.flip();
+        enqueue(target, resampled);
+        return true;
+    }
+
+    /**
+     * Copies the bytes between position and limit into the ring and hands them to the
+     * detector and the streamer, drops them if the ring has no room
+     */
+    private void enqueue(Recording target, ByteBuffer pcm) {
+        if (RING_BYTES - (target.written - target.drained) < pcm.remaining()) {
+            // Disk is behind
+            target.overruns++;
+            return;
+        }
+        ByteBuffer view = target.captureView;
+        int end = pcm.limit();
+        while (pcm.hasRemaining()) {
+            int offset = (int) (target.written % RING_BYTES);
+            int length = Math.min(pcm.remaining(), RING_BYTES - offset);
+            view.limit(offset + length);
+            view.position(offset);
+            pcm.limit(pcm.position() + length);
+            view.put(pcm);
+            pcm.limit(end);
+
+            view.position(offset);
+            if (vad != null) {
+                vad.process(view);
+                target.speechStartSample = vad.getSpeechStartSample();
+                target.speechEndSample = vad.getSpeechEndSample();
+            }
+            if (streamer != null) {
+                streamer.offer(view);
+            }
+            target.written += length;
+        }
+    }
+
+    /**
+     * Ring, counters, encoder and output of one recording
+     */
+    private class Recording implements Runnable {
+
+        final ByteBuffer ring = ByteBuffer.allocateDirect(RING_BYTES);
+        final ByteBuffer captureView = ring.duplicate();
+        final ByteBuffer drainView = ring.duplicate();
+        final ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        FlacEncoder flacEncoder;
+
+        volatile long written;
+        volatile long drained;
+        volatile boolean captureDone;
+        volatile long overruns;
+        // Copied from the detector on the capture thread, it is reset by the next recording
+        volatile long speechStartSample;
+        volatile long speechEndSample;
+
+        File file;
+        RandomAccessFile output;
+        FlacEncoder encoder;
+        boolean trim;
+        long lookbackBytes;
+        CompletableFuture<File> future;
+        Thread writer;
+
+        void open(File file, RandomAccessFile output, String format, VoiceActivityDetector trimWith) {
+            this.file = file;
+            this.output = output;
+            if (FORMAT_FLAC.equals(format) && flacEncoder == null) {
+                flacEncoder = new FlacEncoder(SAMPLE_RATE);
+            }
+            encoder = FORMAT_FLAC.equals(format) ? flacEncoder : null;
+            trim = trimWith != null;
+            lookbackBytes = trim ? trimWith.getLookbackSamples() * 2L : 0;
+            written = 0;
+            drained = 0;
+            overruns = 0;
+            captureDone = false;
+            speechStartSample = -1;
+            speechEndSample = -1;
+            future = new CompletableFuture<>();
+            writer = new Thread(this, "PcmCaptureWriter");
+        }
+
+        @Override
+        public void run() {
+            try (RandomAccessFile out = output) {
+                FileChannel channel = out.getChannel();
+                if (encoder != null) {
+                    encoder.start(channel);
+                } else {
+                    writeHeader(channel, 0);
+                }
+                long firstByte = drain(channel);
+                long dataBytes = 0;
+                if (firstByte >= 0) {
+                    long endByte = drained;
+                    long speechEnd = trim ? speechEndSample : -1;
+                    if (speechEnd >= 0) {
+                        endByte = Math.min(endByte, speechEnd * 2 + POSTROLL_BYTES);
+                    }
+                    dataBytes = Math.max(0, endByte - firstByte);
+                }
+                if (encoder != null) {
+                    // Trimming the end drops whole frames only
+                    encoder.finish();
+                    encoder.truncate((dataBytes + 1) / 2);
+                } else {
+                    channel.truncate(WAV_HEADER_BYTES + dataBytes);
+                    writeHeader(channel, dataBytes);
+                }
+                out.getFD().sync();
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Could not write capture: " + e.getMessage());
+                finish(e);
+                return;
+            }
+            finish(null);
+        }
+
+        private void finish(Exception error) {
+            CompletableFuture<File> result = future;
+            File done = file;
+            output = null;
+            file = null;
+            future = null;
+            recycle(this);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(done);
+            }
+        }
+
+        /**
+         * Writes the ring to disk until the capture is done
+         *
+         * @return the capture byte offset of the first byte written, -1 if nothing was
+         */
+        private long drain(FileChannel channel) throws IOException {
+            long firstByte = trim ? -1 : 0;
+            while (true) {
+                boolean stopping = captureDone;
+
+                if (firstByte < 0) {
+                    long speechStart = speechStartSample;
+                    if (speechStart < 0) {
+                        // No speech yet, keep the pre-roll of a speech start that is found late
+                        long keepFrom = (written - PREROLL_BYTES - lookbackBytes) & ~1L;
+                        if (keepFrom > drained) {
+                            drained = keepFrom;
+                        }
+                        if (stopping) {
+                            return -1;
+                        }
+                        LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+                        continue;
+                    }
+                    firstByte = Math.max(drained, speechStart * 2 - PREROLL_BYTES);
+                    drained = firstByte;
+                }
+
+                long available = written - drained;
+                if (available == 0 || (available < DRAIN_BYTES && !stopping)) {
+                    if (stopping) {
+                        return firstByte;
+                    }
+                    LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+                    continue;
+                }
+
+                int offset = (int) (drained % RING_BYTES);
+                int length = (int) Math.min(available, RING_BYTES - offset);
+                drainView.limit(offset + length);
+                drainView.position(offset);
+                if (encoder != null) {
+                    encoder.write(drainView);
+                }
+                while (drainView.hasRemaining()) {
+                    channel.write(drainView);
+                }
+                drained += length;
+            }
+        }
+
+        private void writeHeader(FileChannel channel, long dataBytes) throws IOException {
+            header.clear();
+            header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+            header.putInt((int) (36 + dataBytes));
+            header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+            header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+            header.putInt(16);
+            header.putShort((short) 1); // PCM
+            header.putShort((short) 1); // mono
+            header.putInt(SAMPLE_RATE);
+            header.putInt(SAMPLE_RATE * 2);
+            header.putShort((short) 2); // block align
+            header.putShort((short) 16);
+            header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+            header.putInt((int) dataBytes);
+            header.flip();
+            channel.write(header, 0);
+            channel.position(Math.max(channel.position(), WAV_HEADER_BYTES));
+        }
+    }
+}
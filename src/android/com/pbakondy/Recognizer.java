@@ -0,0 +1,47 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.speech.RecognitionListener;
+
+/**
+ * The part of {@link android.speech.SpeechRecognizer} the plugin uses, so a scripted
+ * recognizer can stand in for the system one.
+ */
+public interface Recognizer {
+
+    /**
+     * Where the speech is recognized
+     */
+    enum Engine {
+        NETWORK("network"),
+        ON_DEVICE("onDevice");
+
+        private final String key;
+
+        Engine(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    interface Factory {
+        /**
+         * @throws SecurityException if the recognition service can not be used
+         */
+        Recognizer create(Context context);
+    }
+
+    void setRecognitionListener(RecognitionListener listener);
+
+    void startListening(Intent intent);
+
+    void stopListening();
+
+    void cancel();
+
+    void destroy();
+}
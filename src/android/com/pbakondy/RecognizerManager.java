@@ -0,0 +1,203 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+/**
+ * Owns the {@link Recognizer} instance, by default the system {@link SpeechRecognizer}.
+ * <p>
+ * A healthy instance is kept bound and reused across sessions, which saves the service
+ * binding on every start. After an error that leaves the service unusable the instance
+ * is destroyed and a fresh one is bound right away, so the next session does not fail.
+ * Every method has to be called on the UI thread.
+ */
+public class RecognizerManager {
+
+    private static final String LOG_TAG = "RecognizerManager";
+
+    // SpeechRecognizer.ERROR_SERVER_DISCONNECTED, API 31
+    private static final int ERROR_SERVER_DISCONNECTED = 11;
+
+    public enum State {
+        UNBOUND,
+        IDLE,
+        STARTING,
+        LISTENING
+    }
+
+    private final Context context;
+    private final RecognitionListener listener;
+    private final Recognizer.Factory factory;
+    private final TrackingListener trackingListener = new TrackingListener();
+
+    private Recognizer recognizer;
+    private State state = State.UNBOUND;
+    private long startedAt;
+    private long lastReadyLatencyMs = -1;
+    private int sessions;
+
+    public RecognizerManager(Context context, RecognitionListener listener) {
+        this(context, listener, SystemRecognizer.FACTORY);
+    }
+
+    public RecognizerManager(Context context, RecognitionListener listener, Recognizer.Factory factory) {
+        this.context = context;
+        this.listener = listener;
+        this.factory = factory;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return time from the last startListening to onReadyForSpeech, -1 if not known
+     */
+    public long getLastReadyLatencyMs() {
+        return lastReadyLatencyMs;
+    }
+
+    /**
+     * Creates and binds the recognizer if it is not bound yet
+     *
+     * @param warmUp start and cancel a request so the service gets bound now
+     * @throws SecurityException if the recognition service can not be used
+     */
+    public void bind(boolean warmUp) {
+        if (recognizer != null) {
+            return;
+        }
+        recognizer = factory.create(context);
+        recognizer.setRecognitionListener(trackingListener);
+        state = State.IDLE;
+
+        if (warmUp) {
+            recognizer.startListening(new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS));
+            recognizer.cancel();
+        }
+    }
+
+    public void startListening(Intent intent) {
+        if (recognizer == null) {
+            bind(false);
+        } else if (state != State.IDLE) {
+            // Starting over an active session ends in ERROR_RECOGNIZER_BUSY
+            recognizer.cancel();
+        }
+
+        sessions++;
+        state = State.STARTING;
+        startedAt = SystemClock.elapsedRealtime();
+        recognizer.startListening(intent);
+    }
+
+    public void stopListening() {
+        if (recognizer != null && state != State.IDLE) {
+            recognizer.stopListening();
+        }
+    }
+
+    public void cancel() {
+        if (recognizer != null && state != State.IDLE) {
+            recognizer.cancel();
+            state = State.IDLE;
+        }
+    }
+
+    /**
+     * Releases the service binding unless a session is running
+     */
+    public void releaseIfIdle() {
+        if (state == State.IDLE) {
+            release();
+        }
+    }
+
+    public void release() {
+        if (recognizer != null) {
+            recognizer.cancel();
+            recognizer.destroy();
+            recognizer = null;
+        }
+        state = State.UNBOUND;
+    }
+
+    private void rebind() {
+        Log.d(LOG_TAG, "rebinding recognizer");
+        release();
+        try {
+            bind(false);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Could not rebind recognizer: " + e.getMessage());
+            release();
+        }
+    }
+
+    private static boolean isFatal(int errorCode) {
+        return errorCode == SpeechRecognizer.ERROR_RECOGNIZER_BUSY
+                || errorCode == SpeechRecognizer.ERROR_CLIENT
+                || errorCode == ERROR_SERVER_DISCONNECTED;
+    }
+
+    private class TrackingListener implements RecognitionListener {
+
+        @Override
+        public void onReadyForSpeech(Bundle params) {
+            state = State.LISTENING;
+            lastReadyLatencyMs = SystemClock.elapsedRealtime() - startedAt;
+            Log.d(LOG_TAG, "session " + sessions + " ready in " + lastReadyLatencyMs + "ms");
+            listener.onReadyForSpeech(params);
+        }
+
+        @Override
+        public void onBeginningOfSpeech() {
+            listener.onBeginningOfSpeech();
+        }
+
+        @Override
+        public void onRmsChanged(float rmsdB) {
+            listener.onRmsChanged(rmsdB);
+        }
+
+        @Override
+        public void onBufferReceived(byte[] buffer) {
+            listener.onBufferReceived(buffer);
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+            listener.onEndOfSpeech();
+        }
+
+        @Override
+        public void onError(int error) {
+            state = State.IDLE;
+            if (isFatal(error)) {
+                rebind();
+            }
+            listener.onError(error);
+        }
+
+        @Override
+        public void onResults(Bundle results) {
+            state = State.IDLE;
+            listener.onResults(results);
+        }
+
+        @Override
+        public void onPartialResults(Bundle partialResults) {
+            listener.onPartialResults(partialResults);
+        }
+
+        @Override
+        public void onEvent(int eventType, Bundle params) {
+            listener.onEvent(eventType, params);
+        }
+    }
+}
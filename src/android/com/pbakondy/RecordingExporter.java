@@ -0,0 +1,180 @@
+package com.pbakondy;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copies recordings into the public Downloads collection.
+ * <p>
+ * A batch runs on its own background thread, item by item. Every file is moved with
+ * {@link FileChannel#transferTo} straight into the file descriptor of a new MediaStore
+ * entry, in slices of {@value #SLICE_BYTES} bytes so progress can be reported between
+ * them. The entry stays pending, hidden from other apps, until its copy is complete. A
+ * failed item is removed again and reported, the batch goes on with the next one. Only
+ * files indexed by the {@link RecordingStore} are exported, anything else fails.
+ */
+public class RecordingExporter {
+
+    private static final String LOG_TAG = "RecordingExporter";
+
+    private static final long SLICE_BYTES = 8 * 1024 * 1024;
+
+    private final ContentResolver resolver;
+    private final RecordingStore store;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public RecordingExporter(ContentResolver resolver, RecordingStore store) {
+        this.resolver = resolver;
+        this.store = store;
+    }
+
+    /**
+     * Queues a batch. The callback gets an event per item and slice, then a summary.
+     *
+     * @param folder path below Downloads, or null
+     */
+    public void export(final List<File> files, final String folder, final CallbackContext callbackContext) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exportAll(files, folder, callbackContext);
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void exportAll(List<File> files, String folder, CallbackContext callbackContext) throws JSONException {
+        long start = SystemClock.elapsedRealtime();
+        int exported = 0;
+        long totalBytes = 0;
+
+        for (int index = 0; index < files.size(); index++) {
+            File file = files.get(index);
+            JSONObject event = new JSONObject();
+            event.put("isExport", true);
+            event.put("index", index);
+            event.put("file", "file://" + file.getAbsolutePath());
+            try {
+                Uri uri = exportOne(file, folder, index, callbackContext);
+                event.put("uri", uri.toString());
+                event.put("size", file.length());
+                exported++;
+                totalBytes += file.length();
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "export of " + file.getName() + " failed: " + e.getMessage());
+                event.put("error", e.getMessage());
+            }
+            sendEvent(callbackContext, event);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("exported", exported);
+        result.put("failed", files.size() - exported);
+        result.put("bytes", totalBytes);
+        result.put("durationMs", SystemClock.elapsedRealtime() - start);
+        callbackContext.success(result);
+    }
+
+    private Uri exportOne(File file, String folder, int index, CallbackContext callbackContext)
+            throws IOException, JSONException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            throw new IOException("Export to Downloads requires Android 10");
+        }
+        // Paths come from the page, never make other private files public
+        if (!store.contains(file)) {
+            throw new FileNotFoundException("Not a recording: " + file.getName());
+        }
+        if (!file.isFile()) {
+            throw new FileNotFoundException("No such file: " + file.getName());
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, file.getName());
+        values.put(MediaStore.MediaColumns.MIME_TYPE, AudioDelivery.mimeType(file));
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, folder == null
+                ? Environment.DIRECTORY_DOWNLOADS
+                : Environment.DIRECTORY_DOWNLOADS + File.separator + folder);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        Uri uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("Could not create a Downloads entry");
+        }
+
+        try {
+            copy(file, uri, index, callbackContext);
+            values.clear();
+            values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            resolver.update(uri, values, null, null);
+            return uri;
+        } catch (IOException | JSONException | RuntimeException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+    }
+
+    private void copy(File file, Uri uri, int index, CallbackContext callbackContext)
+            throws IOException, JSONException {
+        ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "w");
+        if (pfd == null) {
+            throw new FileNotFoundException("Could not open " + uri);
+        }
+        try (FileInputStream in = new FileInputStream(file);
+             FileOutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pfd)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = inChannel.transferTo(position, Math.min(SLICE_BYTES, size - position), outChannel);
+                if (transferred <= 0) {
+                    throw new IOException("Copy stalled at " + position + " of " + size + " bytes");
+                }
+                position += transferred;
+                if (position < size) {
+                    JSONObject progress = new JSONObject();
+                    progress.put("isExportProgress", true);
+                    progress.put("index", index);
+                    progress.put("bytes", position);
+                    progress.put("size", size);
+                    sendEvent(callbackContext, progress);
+                }
+            }
+            out.getFD().sync();
+        }
+    }
+
+    private static void sendEvent(CallbackContext callbackContext, JSONObject event) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+}
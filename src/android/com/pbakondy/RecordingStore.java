@@ -0,0 +1,285 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns every audio file the plugin writes.
+ * <p>
+ * Files live in one directory and are indexed with their size and last access, in least
+ * recently used order. Whenever a file is added the store is trimmed in the background
+ * to a byte and a count cap, evicting the least recently used files first. Pinned files
+ * are never evicted, pins survive restarts. Files that are still being written are not
+ * indexed until they are added, so they are never evicted either. The index is rebuilt
+ * from the directory on first use. Thread-safe.
+ */
+public class RecordingStore {
+
+    private static final String LOG_TAG = "RecordingStore";
+
+    private static final String PREFERENCES = "com.pbakondy.RecordingStore";
+    private static final String KEY_PINNED = "pinned";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private static class Entry {
+
+        final File file;
+        final long size;
+        long lastAccess;
+
+        Entry(File file, long size, long lastAccess) {
+            this.file = file;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final File directory;
+    private final SharedPreferences preferences;
+    private final long maxBytes;
+    private final int maxCount;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Access order, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinned = new HashSet<>();
+    private long totalBytes;
+    private boolean loaded;
+
+    private final Runnable trim = new Runnable() {
+        @Override
+        public void run() {
+            trim();
+        }
+    };
+
+    public RecordingStore(Context context, File directory, long maxBytes, int maxCount) {
+        this.directory = directory;
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        this.maxBytes = maxBytes;
+        this.maxCount = maxCount;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return a new empty file in the store, indexed once {@link #add} is called
+     */
+    public File create(String prefix, String suffix) throws IOException {
+        directory.mkdirs();
+        return File.createTempFile(prefix, suffix, directory);
+    }
+
+    /**
+     * Indexes a completely written file and trims the store in the background
+     */
+    public synchronized void add(File file) {
+        load();
+        Entry previous = entries.remove(file.getName());
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        Entry entry = new Entry(file, file.length(), System.currentTimeMillis());
+        entries.put(file.getName(), entry);
+        totalBytes += entry.size;
+        executor.execute(trim);
+    }
+
+    /**
+     * Marks a file as used, it becomes the last to be evicted
+     */
+    public synchronized void touch(File file) {
+        load();
+        Entry entry = entries.get(file.getName());
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+            file.setLastModified(entry.lastAccess);
+        }
+    }
+
+    /**
+     * @return whether the file is an indexed entry of the store
+     */
+    public synchronized boolean contains(File file) {
+        load();
+        return entries.containsKey(file.getName()) && isInStore(file);
+    }
+
+    /**
+     * @return false if the file is not in the store
+     */
+    public synchronized boolean pin(File file, boolean pin) {
+        load();
+        String name = file.getName();
+        if (!entries.containsKey(name) || !isInStore(file)) {
+            return false;
+        }
+        if (pin ? pinned.add(name) : pinned.remove(name)) {
+            preferences.edit().putStringSet(KEY_PINNED, new HashSet<>(pinned)).apply();
+        }
+        if (!pin) {
+            executor.execute(trim);
+        }
+        return true;
+    }
+
+    /**
+     * @return the indexed files, least recently used first
+     */
+    public synchronized JSONArray list() throws JSONException {
+        load();
+        JSONArray result = new JSONArray();
+        // Iterating does not count as access
+        for (Entry entry : entries.values()) {
+            JSONObject item = new JSONObject();
+            item.put("file", "file://" + entry.file.getAbsolutePath());
+            item.put("size", entry.size);
+            item.put("lastAccess", entry.lastAccess);
+            item.put("pinned", pinned.contains(entry.file.getName()));
+            result.put(item);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes every file that is not pinned, or every file at all
+     *
+     * @return number of files deleted
+     */
+    public int purge(boolean includePinned) {
+        List<File> victims = new ArrayList<>();
+        synchronized (this) {
+            load();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (includePinned || !pinned.contains(entry.file.getName())) {
+                    iterator.remove();
+                    totalBytes -= entry.size;
+                    victims.add(entry.file);
+                }
+            }
+            if (includePinned && !pinned.isEmpty()) {
+                pinned.clear();
+                preferences.edit().remove(KEY_PINNED).apply();
+            }
+        }
+        return delete(victims);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void trim() {
+        List<File> victims = new ArrayList<>();
+        synchronized (this) {
+            int count = entries.size();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((totalBytes > maxBytes || count > maxCount) && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (pinned.contains(entry.file.getName())) {
+                    continue;
+                }
+                iterator.remove();
+                totalBytes -= entry.size;
+                count--;
+                victims.add(entry.file);
+            }
+        }
+        int deleted = delete(victims);
+        if (deleted > 0) {
+            Log.d(LOG_TAG, "evicted " + deleted + " recordings, " + totalBytes + " bytes left");
+        }
+    }
+
+    private static int delete(List<File> files) {
+        int deleted = 0;
+        for (File file : files) {
+            if (file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private boolean isInStore(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        return parent != null && parent.equals(directory.getAbsoluteFile());
+    }
+
+    /**
+     * Builds the index from the directory, oldest modification first
+     */
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        pinned.addAll(preferences.getStringSet(KEY_PINNED, new HashSet<String>()));
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<Entry> found = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.getName().endsWith(PARTIAL_SUFFIX)) {
+                // Left over from a conversion that never finished
+                file.delete();
+                continue;
+            }
+            found.add(new Entry(file, file.length(), file.lastModified()));
+        }
+        Collections.sort(found, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.lastAccess, b.lastAccess);
+            }
+        });
+        for (Entry entry : found) {
+            entries.put(entry.file.getName(), entry);
+            totalBytes += entry.size;
+        }
+
+        // Forget pins of files that are gone
+        Set<String> names = new HashSet<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            names.add(entry.getKey());
+        }
+        if (pinned.retainAll(names)) {
+            preferences.edit().putStringSet(KEY_PINNED, new HashSet<>(pinned)).apply();
+        }
+        executor.execute(trim);
+    }
+}
@@ -0,0 +1,144 @@
+package com.pbakondy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Streaming polyphase resampler and downmixer from interleaved 16 bit little endian PCM
+ * to mono 16 bit little endian PCM.
+ * <p>
+ * The rate change is reduced to a ratio up / down. A Kaiser windowed sinc low-pass at the
+ * lower of both Nyquist rates is designed once for the upsampled rate and split into
+ * {@code up} phases of {@value #TAPS} taps. Each output sample is a single dot product of
+ * one phase with the newest input samples, which are kept in a small history across
+ * calls, so chunks may be of any size. Channels are averaged before filtering. Nothing is
+ * allocated while processing. Not thread-safe.
+ */
+public class Resampler {
+
+    private static final int TAPS = 48;
+    private static final double KAISER_BETA = 8.0;
+    private static final double ROLL_OFF = 0.92;
+
+    private final int channels;
+    private final int up;
+    private final int down;
+    private final float[][] phases;
+    private final float[] history = new float[TAPS * 2];
+
+    private int newest;
+    private int phase;
+
+    public Resampler(int inputRate, int inputChannels, int outputRate) {
+        int gcd = gcd(inputRate, outputRate);
+        this.channels = inputChannels;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.phases = design(up, down);
+    }
+
+    /**
+     * @return whether samples pass unchanged, no resampler is needed then
+     */
+    public static boolean isIdentity(int inputRate, int inputChannels, int outputRate) {
+        return inputRate == outputRate && inputChannels == 1;
+    }
+
+    public void reset() {
+        Arrays.fill(history, 0);
+        newest = 0;
+        phase = 0;
+    }
+
+    /**
+     * @return most bytes {@link #process} writes for the given input
+     */
+    public int maxOutputBytes(int inputBytes) {
+        long frames = inputBytes / (2L * channels);
+        return (int) ((frames * up + down - 1) / down + 1) * 2;
+    }
+
+    /**
+     * Consumes the whole frames between position and limit of the input and appends
+     * the output at the position of out, which needs room for {@link #maxOutputBytes}.
+     *
+     * @return bytes written
+     */
+    public int process(ByteBuffer in, ByteBuffer out) {
+        int start = out.position();
+        int frameBytes = 2 * channels;
+        while (in.remaining() >= frameBytes) {
+            int position = in.position();
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                int index = position + 2 * c;
+                sum += (short) ((in.get(index) & 0xFF) | (in.get(index + 1) << 8));
+            }
+            in.position(position + frameBytes);
+            push((float) sum / channels);
+
+            // Emit every output that falls between this input and the next
+            while (phase < up) {
+                float[] taps = phases[phase];
+                float acc = 0;
+                for (int k = 0; k < TAPS; k++) {
+                    acc += taps[k] * history[newest + k];
+                }
+                int sample = Math.round(acc);
+                sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+                out.put((byte) sample).put((byte) (sample >> 8));
+                phase += down;
+            }
+            phase -= up;
+        }
+        return out.position() - start;
+    }
+
+    private void push(float sample) {
+        // Mirrored ring, history[newest + k] is the input k samples back
+        newest = newest == 0 ? TAPS - 1 : newest - 1;
+        history[newest] = sample;
+        history[newest + TAPS] = sample;
+    }
+
+    private static float[][] design(int up, int down) {
+        int length = TAPS * up;
+        double center = (length - 1) / 2.0;
+        // Cutoff relative to the upsampled rate, in cycles per sample
+        double cutoff = ROLL_OFF * 0.5 / Math.max(up, down);
+        double norm = bessel0(KAISER_BETA);
+
+        float[][] phases = new float[up][TAPS];
+        for (int n = 0; n < length; n++) {
+            double t = n - center;
+            double sinc = t == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * t) / (2 * Math.PI * cutoff * t);
+            double r = t / center;
+            double window = bessel0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+            // Gain of up makes up for the zeros stuffed in between the inputs
+            phases[n % up][n / up] = (float) (2 * cutoff * up * sinc * window);
+        }
+        return phases;
+    }
+
+    private static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
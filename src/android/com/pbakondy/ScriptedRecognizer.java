@@ -0,0 +1,255 @@
+package com.pbakondy;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.text.TextUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link Recognizer} that replays a scripted timeline instead of listening, so sessions
+ * can be run offline and at any rate.
+ * <p>
+ * A script is a JSON object like
+ * <pre>
+ * { "speed": 1, "steps": [
+ *   { "at": 0, "type": "ready" },
+ *   { "at": 50, "type": "rms", "value": 4, "repeat": 100, "every": 10 },
+ *   { "at": 100, "type": "partial", "text": "hello big world", "repeat": 3, "every": 200 },
+ *   { "at": 900, "type": "results", "text": "hello big world" } ] }
+ * </pre>
+ * Step types are {@code ready}, {@code begin}, {@code rms}, {@code buffer} ({@code size}
+ * bytes), {@code partial}, {@code end}, {@code results} and {@code error} ({@code code}).
+ * A repeated partial reveals its text word by word. Times are divided by {@code speed}.
+ * A session ends with the first results or error step, stopListening jumps right to it.
+ * Callbacks are dispatched on the handler's thread.
+ */
+public class ScriptedRecognizer implements Recognizer {
+
+    public static class Step {
+
+        final long atMs;
+        final String type;
+        final String text;
+        final float value;
+        final int code; // error code, or size of a buffer
+
+        Step(long atMs, String type, String text, float value, int code) {
+            this.atMs = atMs;
+            this.type = type;
+            this.text = text;
+            this.value = value;
+            this.code = code;
+        }
+
+        boolean isTerminal() {
+            return "results".equals(type) || "error".equals(type);
+        }
+    }
+
+    public static class Script {
+
+        private final List<Step> steps;
+
+        private Script(List<Step> steps) {
+            this.steps = steps;
+        }
+
+        public static Script fromJSON(JSONObject json) throws JSONException {
+            double speed = json.optDouble("speed", 1);
+            if (!(speed > 0)) {
+                throw new JSONException("speed has to be positive");
+            }
+            JSONArray array = json.getJSONArray("steps");
+            List<Step> steps = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject step = array.getJSONObject(i);
+                String type = step.getString("type");
+                long at = step.optLong("at", 0);
+                int repeat = Math.max(1, step.optInt("repeat", 1));
+                long every = step.optLong("every", 0);
+                String text = step.optString("text", "");
+                String[] words = text.isEmpty() ? new String[0] : text.split(" ");
+                float value = (float) step.optDouble("value", 0);
+                int code = "buffer".equals(type) ? step.optInt("size", 0) : step.optInt("code", 0);
+
+                for (int r = 0; r < repeat; r++) {
+                    String stepText = text;
+                    if ("partial".equals(type) && repeat > 1 && words.length > 0) {
+                        int count = (int) Math.ceil((r + 1) * (double) words.length / repeat);
+                        stepText = TextUtils.join(" ", Arrays.asList(words).subList(0, count));
+                    }
+                    long stepAt = (long) ((at + r * every) / speed);
+                    steps.add(new Step(stepAt, type, stepText, value, code));
+                }
+            }
+            // Stable, steps at the same time keep the script order
+            Collections.sort(steps, new Comparator<Step>() {
+                @Override
+                public int compare(Step a, Step b) {
+                    return Long.compare(a.atMs, b.atMs);
+                }
+            });
+            return new Script(steps);
+        }
+
+        public int size() {
+            return steps.size();
+        }
+    }
+
+    private final Handler handler;
+    private final Script script;
+
+    private RecognitionListener listener;
+    private boolean running;
+    private int next;
+    private long startedAt;
+    private byte[] buffer = new byte[0];
+    private volatile long lastEmitNanos;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long elapsed = SystemClock.uptimeMillis() - startedAt;
+            // Dispatch everything that is due in one go, like a busy service would
+            while (running && next < script.steps.size() && script.steps.get(next).atMs <= elapsed) {
+                dispatch(script.steps.get(next++));
+            }
+            if (running && next < script.steps.size()) {
+                handler.postAtTime(this, startedAt + script.steps.get(next).atMs);
+            }
+        }
+    };
+
+    public ScriptedRecognizer(Handler handler, Script script) {
+        this.handler = handler;
+        this.script = script;
+    }
+
+    /**
+     * @return System.nanoTime of the last callback, 0 if there was none
+     */
+    public long getLastEmitNanos() {
+        return lastEmitNanos;
+    }
+
+    @Override
+    public void setRecognitionListener(RecognitionListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void startListening(Intent intent) {
+        if (running) {
+            emitError(SpeechRecognizer.ERROR_RECOGNIZER_BUSY);
+            return;
+        }
+        if (RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS.equals(intent.getAction())) {
+            // Warm-up requests get no callbacks
+            return;
+        }
+        running = true;
+        next = 0;
+        startedAt = SystemClock.uptimeMillis();
+        handler.post(tick);
+    }
+
+    @Override
+    public void stopListening() {
+        if (!running) {
+            return;
+        }
+        for (int i = next; i < script.steps.size(); i++) {
+            if (script.steps.get(i).isTerminal()) {
+                next = i;
+                startedAt = SystemClock.uptimeMillis() - script.steps.get(i).atMs;
+                handler.removeCallbacks(tick);
+                handler.post(tick);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+        handler.removeCallbacks(tick);
+    }
+
+    @Override
+    public void destroy() {
+        cancel();
+        listener = null;
+    }
+
+    private void dispatch(Step step) {
+        if (listener == null) {
+            return;
+        }
+        if (step.isTerminal()) {
+            running = false;
+            handler.removeCallbacks(tick);
+        }
+        lastEmitNanos = System.nanoTime();
+        switch (step.type) {
+            case "ready":
+                listener.onReadyForSpeech(new Bundle());
+                break;
+            case "begin":
+                listener.onBeginningOfSpeech();
+                break;
+            case "rms":
+                listener.onRmsChanged(step.value);
+                break;
+            case "buffer":
+                if (buffer.length != step.code) {
+                    buffer = new byte[step.code];
+                }
+                listener.onBufferReceived(buffer);
+                break;
+            case "partial":
+                listener.onPartialResults(resultsBundle(step.text));
+                break;
+            case "end":
+                listener.onEndOfSpeech();
+                break;
+            case "results":
+                listener.onResults(resultsBundle(step.text));
+                break;
+            case "error":
+                listener.onError(step.code);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void emitError(int code) {
+        if (listener != null) {
+            lastEmitNanos = System.nanoTime();
+            listener.onError(code);
+        }
+    }
+
+    private static Bundle resultsBundle(String text) {
+        ArrayList<String> matches = new ArrayList<>();
+        matches.add(text);
+        Bundle bundle = new Bundle();
+        bundle.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, matches);
+        return bundle;
+    }
+}
@@ -0,0 +1,184 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs many sessions back to back against a {@link ScriptedRecognizer} and measures
+ * what reaches the bridge.
+ * <p>
+ * Each session goes through the plugin's normal listening path. Its events are counted,
+ * timed from the recognizer callback that caused them and, when forwarding, passed on to
+ * the WebView as progress of the soak call so the bridge carries the real load. Heap use
+ * is sampled every {@value #HEAP_SAMPLE_SESSIONS} sessions. Every method has to be called
+ * on the handler's thread.
+ */
+public class SoakDriver {
+
+    private static final String LOG_TAG = "SoakDriver";
+
+    private static final int HEAP_SAMPLE_SESSIONS = 100;
+
+    public interface SessionStarter {
+        /**
+         * Starts one session delivering to the given context
+         */
+        void start(CallbackContext callbackContext);
+    }
+
+    private final Handler handler;
+    private final ScriptedRecognizer.Script script;
+    private final LatencyHistogram callbackLatencyUs = new LatencyHistogram();
+
+    private ScriptedRecognizer current;
+    private CallbackContext report;
+    private CallbackContext sessionContext;
+    private SessionStarter starter;
+    private Runnable onDone;
+    private boolean forward;
+    private int sessions;
+
+    private int completed;
+    private int errors;
+    private long events;
+    private long bytes;
+    private long startedAt;
+    private long heapStart;
+    private long heapPeak;
+
+    private final Recognizer.Factory factory = new Recognizer.Factory() {
+        @Override
+        public Recognizer create(Context context) {
+            current = new ScriptedRecognizer(handler, script);
+            return current;
+        }
+    };
+
+    private final Runnable startNext = new Runnable() {
+        @Override
+        public void run() {
+            if (completed == sessions) {
+                finish();
+                return;
+            }
+            starter.start(sessionContext);
+        }
+    };
+
+    public SoakDriver(Handler handler, ScriptedRecognizer.Script script) {
+        this.handler = handler;
+        this.script = script;
+    }
+
+    /**
+     * @return factory for the recognizers the sessions have to use
+     */
+    public Recognizer.Factory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @param sessions number of sessions to run
+     * @param forward  pass every event on to the WebView
+     * @param starter  starts a session through the plugin
+     * @param report   receives the forwarded events and the final report
+     * @param webView  WebView the report goes to
+     * @param onDone   called after the report was sent
+     */
+    public void run(int sessions, boolean forward, SessionStarter starter,
+                    CallbackContext report, CordovaWebView webView, Runnable onDone) {
+        this.sessions = sessions;
+        this.forward = forward;
+        this.starter = starter;
+        this.report = report;
+        this.onDone = onDone;
+        this.sessionContext = new SessionContext(report.getCallbackId(), webView);
+
+        heapStart = usedHeap(true);
+        heapPeak = heapStart;
+        startedAt = SystemClock.elapsedRealtime();
+        handler.post(startNext);
+    }
+
+    private class SessionContext extends CallbackContext {
+
+        SessionContext(String callbackId, CordovaWebView webView) {
+            super(callbackId, webView);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult result) {
+            ScriptedRecognizer recognizer = current;
+            if (recognizer != null && recognizer.getLastEmitNanos() != 0) {
+                callbackLatencyUs.record((System.nanoTime() - recognizer.getLastEmitNanos()) / 1000);
+            }
+            events++;
+            String message = result.getMessage();
+            if (message != null) {
+                bytes += message.length();
+            }
+
+            boolean sessionEnded = !result.getKeepCallback();
+            if (forward) {
+                result.setKeepCallback(true);
+                report.sendPluginResult(result);
+            }
+            if (!sessionEnded) {
+                return;
+            }
+
+            if (result.getStatus() != PluginResult.Status.OK.ordinal()) {
+                errors++;
+            }
+            if (++completed % HEAP_SAMPLE_SESSIONS == 0) {
+                heapPeak = Math.max(heapPeak, usedHeap(false));
+            }
+            // Post so the plugin finishes the session before the next one starts
+            handler.post(startNext);
+        }
+    }
+
+    private void finish() {
+        long durationMs = Math.max(1, SystemClock.elapsedRealtime() - startedAt);
+        long heapEnd = usedHeap(true);
+        heapPeak = Math.max(heapPeak, heapEnd);
+
+        try {
+            JSONObject result = new JSONObject();
+            result.put("sessions", completed);
+            result.put("errors", errors);
+            result.put("durationMs", durationMs);
+            result.put("events", events);
+            result.put("eventsPerSecond", events * 1000 / durationMs);
+            result.put("bytes", bytes);
+            result.put("bytesPerSecond", bytes * 1000 / durationMs);
+            result.put("callbackLatencyUs", callbackLatencyUs.toJSON());
+            result.put("heapStartBytes", heapStart);
+            result.put("heapEndBytes", heapEnd);
+            result.put("heapPeakBytes", heapPeak);
+            Log.d(LOG_TAG, "soak: " + result);
+            report.success(result);
+        } catch (JSONException e) {
+            report.error(e.getMessage());
+        }
+        if (onDone != null) {
+            onDone.run();
+        }
+    }
+
+    private static long usedHeap(boolean collect) {
+        Runtime runtime = Runtime.getRuntime();
+        if (collect) {
+            runtime.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+package com.pbakondy;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency of every stage of a recognition session, measured from the start of the session,
+ * plus the duration of conversions and the count of recognizer errors.
+ * <p>
+ * Stages are also kept per {@link Recognizer.Engine}, so the engines can be compared.
+ * Each stage is recorded once per session. Sessions are marked on the UI thread,
+ * conversions and errors can be recorded from any thread.
+ */
+public class SpeechMetrics {
+
+    public enum Stage {
+        READY("ready"),
+        SPEECH_START("speechStart"),
+        FIRST_PARTIAL("firstPartial"),
+        SPEECH_END("speechEnd"),
+        RESULTS("results");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    // Covers the SpeechRecognizer.ERROR_* codes up to API 33
+    public static final int MAX_ERROR_CODE = 15;
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LatencyHistogram[][] engineStages =
+            new LatencyHistogram[Recognizer.Engine.values().length][Stage.values().length];
+    private final LatencyHistogram conversion = new LatencyHistogram();
+    private final AtomicLongArray errors = new AtomicLongArray(MAX_ERROR_CODE + 1);
+
+    private long sessionStartedAt = -1;
+    private int stagesSeen;
+    private Recognizer.Engine engine = Recognizer.Engine.NETWORK;
+
+    public SpeechMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        for (LatencyHistogram[] histograms : engineStages) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * @param startedAt elapsedRealtime when the session was requested
+     */
+    public void startSession(long startedAt) {
+        sessionStartedAt = startedAt;
+        stagesSeen = 0;
+    }
+
+    /**
+     * Sets the engine the following stages are counted for, also in the middle of a session
+     */
+    public void setEngine(Recognizer.Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Records the time since the session started, unless the stage was seen already
+     */
+    public void mark(Stage stage) {
+        int bit = 1 << stage.ordinal();
+        if (sessionStartedAt < 0 || (stagesSeen & bit) != 0) {
+            return;
+        }
+        stagesSeen |= bit;
+        long elapsed = SystemClock.elapsedRealtime() - sessionStartedAt;
+        stages[stage.ordinal()].record(elapsed);
+        engineStages[engine.ordinal()][stage.ordinal()].record(elapsed);
+    }
+
+    public void recordConversion(long durationMs) {
+        conversion.record(durationMs);
+    }
+
+    /**
+     * @param errorCode one of the SpeechRecognizer.ERROR_* codes, unknown ones are counted as 0
+     */
+    public void recordError(int errorCode) {
+        errors.incrementAndGet(errorCode > 0 && errorCode <= MAX_ERROR_CODE ? errorCode : 0);
+    }
+
+    public long getErrorCount(int errorCode) {
+        return errors.get(errorCode);
+    }
+
+    public JSONObject stagesToJSON() throws JSONException {
+        return toJSON(stages);
+    }
+
+    public JSONObject enginesToJSON() throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Recognizer.Engine engine : Recognizer.Engine.values()) {
+            result.put(engine.getKey(), toJSON(engineStages[engine.ordinal()]));
+        }
+        return result;
+    }
+
+    private static JSONObject toJSON(LatencyHistogram[] histograms) throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Stage stage : Stage.values()) {
+            result.put(stage.key, histograms[stage.ordinal()].toJSON());
+        }
+        return result;
+    }
+
+    public LatencyHistogram getConversion() {
+        return conversion;
+    }
+}
@@ -16,28 +16,23 @@ import org.xmlpull.v1.XmlPullParserFactory;
 
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 
 import android.Manifest;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.MediaRecorder;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 
 import android.os.CountDownTimer;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.MediaStore;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
@@ -51,22 +46,23 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import androidx.annotation.OptIn;
-import androidx.annotation.RequiresApi;
-import androidx.media3.common.util.UnstableApi;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.widget.Toast.LENGTH_LONG;
 
@@ -76,19 +72,50 @@ public class SpeechRecognition extends CordovaPlugin {
 
     private static final String LOG_TAG = "SpeechRecognition";
 
-    private static final int REQUEST_CODE_PERMISSION = 2001;
-    private static final int REQUEST_CODE_SPEECH = 2002;
+    // Sessions double as request codes, which must fit in 16 bits
+    private static final int MAX_SESSION_ID = 0xFFFF;
     private static final String IS_RECOGNITION_AVAILABLE = "isRecognitionAvailable";
     private static final String START_LISTENING = "startListening";
     private static final String STOP_LISTENING = "stopListening";
     private static final String GET_SUPPORTED_LANGUAGES = "getSupportedLanguages";
+    private static final String GET_LANGUAGE_DETAILS = "getLanguageDetails";
     private static final String HAS_PERMISSION = "hasPermission";
     private static final String REQUEST_PERMISSION = "requestPermission";
+    private static final String WATCH_CONVERSION = "watchConversion";
+    private static final String PREWARM = "prewarm";
+    private static final String GET_METRICS = "getMetrics";
+    private static final String SOAK = "soak";
+    private static final String WATCH_AUDIO = "watchAudio";
+    private static final String ACK_AUDIO = "ackAudio";
+    private static final String LIST_RECORDINGS = "listRecordings";
+    private static final String PIN_RECORDING = "pinRecording";
+    private static final String PURGE_RECORDINGS = "purgeRecordings";
+    private static final String EXPORT_RECORDINGS = "exportRecordings";
+    private static final String SUBSCRIBE = "subscribe";
+    private static final String UNSUBSCRIBE = "unsubscribe";
+    private static final String GET_ON_DEVICE_LANGUAGES = "getOnDeviceLanguages";
     private static final int MAX_RESULTS = 5;
+    private static final long CONVERSION_TIMEOUT_MS = 10000;
+    private static final int RECORDINGS_MAX_MB = 100;
+    private static final int RECORDINGS_MAX_COUNT = 200;
     private static final String NOT_AVAILABLE = "Speech recognition service is not available on the system.";
     private static final String MISSING_PERMISSION = "Missing permission";
-
-    private JSONArray mLastPartialResults = new JSONArray();
+    private static final String SESSION_REPLACED = "Replaced by a new session";
+    private static final String SOAK_DISABLED = "Soak is only available in debuggable builds or with the SpeechSoakEnabled preference";
+    private static final String SOAK_BUSY = "Cannot soak while a session is running";
+
+    // SpeechRecognizer.ERROR_SERVER_DISCONNECTED, ERROR_LANGUAGE_NOT_SUPPORTED and
+    // ERROR_LANGUAGE_UNAVAILABLE, API 31
+    private static final int ERROR_SERVER_DISCONNECTED = 11;
+    private static final int ERROR_LANGUAGE_NOT_SUPPORTED = 12;
+    private static final int ERROR_LANGUAGE_UNAVAILABLE = 13;
+
+    private final PartialResultTracker mPartialResults = new PartialResultTracker();
+    private volatile boolean mPartialDeltas;
+    private volatile long mEventIntervalMs;
+    private volatile long mLevelIntervalMs;
+    private volatile int mLevelWindow;
+    private final LevelMeter mLevelMeter = new LevelMeter();
 
     private static final String RECORD_AUDIO_PERMISSION = Manifest.permission.RECORD_AUDIO;
 
@@ -117,16 +144,57 @@ public class SpeechRecognition extends CordovaPlugin {
             </LinearLayout>
             """;
 
-    private CallbackContext callbackContext;
+    // Callbacks of listening sessions, popups and permission requests by session id
+    private final ConcurrentHashMap<Integer, CallbackContext> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger lastSession = new AtomicInteger();
+    private volatile int activeSession;
+    // Whether the active no-popup session still has to send its result, UI thread only
+    private boolean activeSessionOpen;
     private LanguageDetailsChecker languageDetailsChecker;
     private Activity activity;
     private Context context;
     private View view;
-    private SpeechRecognizer recognizer;
-    private File mUserVoiceFile;
+    private RecognizerManager recognizerManager;
+    private Recognizer.Engine recognizerEngine = Recognizer.Engine.NETWORK;
+    private OnDeviceSupport onDeviceSupport;
+    private Intent sessionIntent;
+    private String sessionLanguage;
+    private boolean recognizerReady;
+    private volatile CompletableFuture<File> mAudioFile;
+    private volatile boolean mCaptureAudio;
+    private volatile boolean mDetectSpeech;
+    private volatile boolean mAutoStop;
+    private volatile boolean mTrimSilence;
+    private volatile boolean mContinuous;
+    private volatile boolean mOffline;
+    private volatile boolean mAudioData;
+    private volatile boolean mStreamAudio;
+    private volatile int mStreamChunkMs;
+    private volatile int mStreamWindow;
+    private ContinuousSession continuousSession;
+    private PcmCapture pcmCapture;
+    private VoiceActivityDetector voiceActivityDetector;
+    private volatile String mOutputFormat = AudioConverter.FORMAT_AMR;
+    private volatile String mCaptureFormat = PcmCapture.FORMAT_WAV;
     private CountDownTimer mToastTimerCountDown;
 
     private AudioConverter audioConverter;
+    private ConversionScheduler conversionScheduler;
+    private ConversionCache conversionCache;
+    // Conversions of popup sessions by session id, until they complete
+    private final ConcurrentHashMap<Integer, ConversionScheduler.Job> conversionJobs = new ConcurrentHashMap<>();
+    private RecordingStore recordingStore;
+    private RecordingExporter recordingExporter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final EventChannel eventChannel = new EventChannel();
+    private final EventScheduler eventScheduler = new EventScheduler(mainHandler, eventChannel);
+    private final SpeechMetrics metrics = new SpeechMetrics();
+    private volatile CallbackContext conversionCallbackContext;
+    private volatile CallbackContext audioCallbackContext;
+    private volatile AudioStreamer audioStreamer;
+    private int audioStreams;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final StreamCopier streamCopier = new StreamCopier();
 
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
@@ -135,58 +203,202 @@ public class SpeechRecognition extends CordovaPlugin {
         activity = cordova.getActivity();
         context = webView.getContext();
         view = webView.getView();
-        audioConverter = new AudioConverter(context);
+        // The recognizer and the conversion pipeline are created on first use or by prewarm
+    }
+
+    /**
+     * Creates the recognizer manager if needed, has to be called on the UI thread
+     */
+    private RecognizerManager ensureRecognizer() {
+        if (recognizerManager == null) {
+            recognizerManager = new RecognizerManager(activity, new SpeechRecognitionListener(),
+                    recognizerEngine == Recognizer.Engine.ON_DEVICE
+                            ? SystemRecognizer.ON_DEVICE_FACTORY
+                            : SystemRecognizer.FACTORY);
+        }
+        return recognizerManager;
+    }
+
+    /**
+     * Sets the engine of the following sessions, has to be called on the UI thread
+     */
+    private void selectEngine(Recognizer.Engine engine) {
+        if (engine != recognizerEngine && recognizerManager != null) {
+            recognizerManager.release();
+            recognizerManager = null;
+        }
+        recognizerEngine = engine;
+        metrics.setEngine(engine);
+    }
+
+    private OnDeviceSupport onDeviceSupport() {
+        if (onDeviceSupport == null) {
+            onDeviceSupport = new OnDeviceSupport(activity);
+        }
+        return onDeviceSupport;
+    }
+
+    /**
+     * Binds the recognition service ahead of the first session, has to be called on the UI thread
+     */
+    private void bindRecognizer() {
+        RecognizerManager manager = ensureRecognizer();
+
+        if (audioPermissionGranted(RECORD_AUDIO_PERMISSION)) {
+            try {
+                manager.bind(true);
+            } catch (SecurityException ex) {
+                AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(activity);
+                alertDialogBuilder.setTitle("Speech Recognition");
+                alertDialogBuilder.setMessage("Please install Google App from Google Play to use feature Speech Recognition.");
+                alertDialogBuilder.setNegativeButton("Dismiss", new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        try {
+                            activity.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=com.google.android.googlequicksearchbox")));
+                        } catch (android.content.ActivityNotFoundException anfe) {
+                            activity.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("https://play.google.com/store/apps/details?id=com.google.android.googlequicksearchbox")));
+                        }
+                        dialog.dismiss();
+                    }
+                });
+
+                // Showing Alert Message
+                alertDialogBuilder.show();
+            }
+        }
+    }
+
+    /**
+     * Creates the conversion pipeline if needed, can be called from any thread
+     */
+    private synchronized ConversionScheduler ensureConverter() {
+        if (conversionScheduler == null) {
+            audioConverter = new AudioConverter(context);
+            audioConverter.setMetrics(metrics);
+            conversionCache = new ConversionCache(ensureStore().getDirectory());
+            conversionScheduler = new ConversionScheduler(audioConverter);
+            conversionScheduler.setProgressListener(new ConversionScheduler.ProgressListener() {
+                @Override
+                public void onProgress(ConversionScheduler.Job job, int progress) {
+                    sendConversionProgress(job, progress);
+                }
+            });
+        }
+        return conversionScheduler;
+    }
+
+    /**
+     * Creates the recording store if needed, can be called from any thread
+     */
+    private synchronized RecordingStore ensureStore() {
+        if (recordingStore == null) {
+            long maxBytes = preferences.getInteger("SpeechRecordingsMaxMB", RECORDINGS_MAX_MB) * 1024L * 1024L;
+            int maxCount = preferences.getInteger("SpeechRecordingsMaxCount", RECORDINGS_MAX_COUNT);
+            recordingStore = new RecordingStore(context, new File(context.getCacheDir(), "recordings"), maxBytes, maxCount);
+        }
+        return recordingStore;
+    }
+
+    private synchronized RecordingExporter ensureExporter() {
+        if (recordingExporter == null) {
+            recordingExporter = new RecordingExporter(context.getContentResolver(), ensureStore());
+        }
+        return recordingExporter;
+    }
+
+    private void prewarm(final boolean withConverter, final CallbackContext callbackContextPrewarm) {
+        final long start = SystemClock.elapsedRealtime();
+
         view.post(new Runnable() {
-            @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
             @Override
             public void run() {
-                recognizer = SpeechRecognizer.createSpeechRecognizer(activity);
+                bindRecognizer();
+                final long recognizerMs = SystemClock.elapsedRealtime() - start;
 
-                // Init speech reg 1st time.
-                if (audioPermissionGranted(RECORD_AUDIO_PERMISSION)) {
-                    final AudioManager audioManager = (AudioManager) activity.getSystemService(Context.AUDIO_SERVICE);
-                    try {
-                        final Intent intent = new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS);
-                        recognizer.startListening(intent);
-                        recognizer.cancel();
-                    } catch (SecurityException ex) {
-                        activity.runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(activity);
-                                alertDialogBuilder.setTitle("Speech Recognition");
-                                alertDialogBuilder.setMessage("Please install Google App from Google Play to use feature Speech Recognition.");
-                                alertDialogBuilder.setNegativeButton("Dismiss", new DialogInterface.OnClickListener() {
-                                    public void onClick(DialogInterface dialog, int which) {
-                                        try {
-                                            activity.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=com.google.android.googlequicksearchbox")));
-                                        } catch (android.content.ActivityNotFoundException anfe) {
-                                            activity.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("https://play.google.com/store/apps/details?id=com.google.android.googlequicksearchbox")));
-                                        }
-                                        dialog.dismiss();
-                                    }
-                                });
-
-                                AlertDialog dialog = alertDialogBuilder.create();
-                                // Showing Alert Message
-                                alertDialogBuilder.show();
-                            }
-                        });
-                    } finally {
+                if (!withConverter) {
+                    sendPrewarmResult(callbackContextPrewarm, recognizerMs, -1, recognizerMs);
+                    return;
+                }
 
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long converterStart = SystemClock.elapsedRealtime();
+                        ensureConverter();
+                        long now = SystemClock.elapsedRealtime();
+                        sendPrewarmResult(callbackContextPrewarm, recognizerMs, now - converterStart, now - start);
                     }
-                }
+                });
+            }
+        });
+    }
+
+    /**
+     * Soak replaces the recognizer, so release builds only offer it when asked to
+     */
+    private boolean isSoakEnabled() {
+        boolean debuggable = (activity.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        return debuggable || preferences.getBoolean("SpeechSoakEnabled", false);
+    }
 
-                SpeechRecognitionListener listener = new SpeechRecognitionListener();
-                recognizer.setRecognitionListener(listener);
+    /**
+     * Runs sessions against a scripted recognizer, has to be called on the UI thread
+     */
+    private void soak(ScriptedRecognizer.Script script, int sessions, long eventIntervalMs,
+                      boolean forward, CallbackContext callbackContextSoak) {
+        if (activeSessionOpen) {
+            callbackContextSoak.error(SOAK_BUSY);
+            return;
+        }
+        // The scripted recognizer stands in for the network one
+        selectEngine(Recognizer.Engine.NETWORK);
+        if (recognizerManager != null) {
+            recognizerManager.release();
+        }
+        final SoakDriver driver = new SoakDriver(mainHandler, script);
+        recognizerManager = new RecognizerManager(activity, new SpeechRecognitionListener(), driver.getFactory());
+
+        mPartialDeltas = false;
+        mEventIntervalMs = eventIntervalMs;
+        mLevelIntervalMs = 0;
+        mCaptureAudio = false;
+        mDetectSpeech = false;
+        mAutoStop = false;
+        mTrimSilence = false;
+        mContinuous = false;
+        mOffline = false;
+
+        driver.run(sessions, forward, new SoakDriver.SessionStarter() {
+            @Override
+            public void start(CallbackContext sessionContext) {
+                startListening(sessionContext, Locale.getDefault().toString(), MAX_RESULTS, null, true, false);
+            }
+        }, callbackContextSoak, webView, new Runnable() {
+            @Override
+            public void run() {
+                // The next session gets the system recognizer again
+                recognizerManager.release();
+                recognizerManager = null;
             }
         });
     }
 
+    private void sendPrewarmResult(CallbackContext callbackContext, long recognizerMs, long converterMs, long timeToReadyMs) {
+        try {
+            JSONObject result = new JSONObject();
+            result.put("recognizerMs", recognizerMs);
+            if (converterMs >= 0) {
+                result.put("converterMs", converterMs);
+            }
+            result.put("timeToReadyMs", timeToReadyMs);
+            callbackContext.success(result);
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        this.callbackContext = callbackContext;
-
         Log.d(LOG_TAG, "execute() action " + action);
 
         try {
@@ -219,40 +431,238 @@ public class SpeechRecognition extends CordovaPlugin {
                     prompt = null;
                 }
 
-                mLastPartialResults = new JSONArray();
                 Boolean showPartial = args.optBoolean(3, false);
                 Boolean showPopup = args.optBoolean(4, true);
-                startListening(lang, matches, prompt, showPartial, showPopup);
+
+                String outputFormat = args.optString(5);
+                mOutputFormat = AudioConverter.FORMAT_AAC.equals(outputFormat)
+                        ? AudioConverter.FORMAT_AAC
+                        : AudioConverter.FORMAT_AMR;
+                // FLAC is encoded while capturing, the popup's AMR stays AMR
+                mCaptureFormat = PcmCapture.FORMAT_FLAC.equals(outputFormat)
+                        ? PcmCapture.FORMAT_FLAC
+                        : PcmCapture.FORMAT_WAV;
+
+                mPartialDeltas = args.optBoolean(6, false);
+                mEventIntervalMs = Math.max(0, args.optLong(7, 0));
+                mLevelIntervalMs = Math.max(0, args.optLong(8, 0));
+                mLevelWindow = args.optInt(9, 1);
+                mCaptureAudio = args.optBoolean(10, false);
+                mDetectSpeech = args.optBoolean(11, false);
+                mAutoStop = args.optBoolean(12, false);
+                mTrimSilence = args.optBoolean(13, false);
+                mContinuous = args.optBoolean(14, false);
+                mAudioData = args.optBoolean(15, false);
+                mStreamAudio = args.optBoolean(16, false);
+                mStreamChunkMs = Math.max(20, args.optInt(17, 100));
+                mStreamWindow = Math.max(1, args.optInt(18, 8));
+                mOffline = args.optBoolean(19, false);
+                startListening(callbackContext, lang, matches, prompt, showPartial, showPopup);
 
                 return true;
             }
 
             if (STOP_LISTENING.equals(action)) {
-                final CallbackContext callbackContextStop = this.callbackContext;
+                final CallbackContext callbackContextStop = callbackContext;
+                final long timeoutMs = args.optLong(0, CONVERSION_TIMEOUT_MS);
+                final boolean audioData = args.optBoolean(1, false);
                 view.post(new Runnable() {
                     @Override
                     public void run() {
-                        if (recognizer != null) {
-                            recognizer.stopListening();
+                        if (continuousSession != null && continuousSession.isActive()) {
+                            continuousSession.stop();
+                            mainHandler.removeCallbacks(continuousRestart);
+                            if (recognizerManager == null
+                                    || recognizerManager.getState() == RecognizerManager.State.IDLE) {
+                                // Between two segments, nothing more will arrive
+                                finishContinuous();
+                            }
+                        }
+                        if (recognizerManager != null) {
+                            recognizerManager.stopListening();
                         }
-                        callbackContextStop.success(mUserVoiceFile != null ? "file://" + mUserVoiceFile.getAbsolutePath() : "");
+                        stopCapture();
+                        CompletableFuture<File> conversion = mAudioFile;
+                        if (conversion == null) {
+                            callbackContextStop.success("");
+                            return;
+                        }
+                        withTimeout(conversion, timeoutMs).whenComplete((file, throwable) -> {
+                            if (throwable != null) {
+                                callbackContextStop.error(errorMessage(throwable));
+                            } else if (!audioData) {
+                                callbackContextStop.success("file://" + file.getAbsolutePath());
+                            } else {
+                                ioExecutor.execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        try {
+                                            AudioDelivery.send(callbackContextStop, file);
+                                            callbackContextStop.success("file://" + file.getAbsolutePath());
+                                        } catch (Exception e) {
+                                            callbackContextStop.error(e.getMessage());
+                                        }
+                                    }
+                                });
+                            }
+                        });
                     }
                 });
                 return true;
             }
 
             if (GET_SUPPORTED_LANGUAGES.equals(action)) {
-                getSupportedLanguages();
+                getSupportedLanguages(false, callbackContext);
+                return true;
+            }
+
+            if (GET_LANGUAGE_DETAILS.equals(action)) {
+                getSupportedLanguages(true, callbackContext);
                 return true;
             }
 
             if (HAS_PERMISSION.equals(action)) {
-                hasAudioPermission();
+                hasAudioPermission(callbackContext);
                 return true;
             }
 
             if (REQUEST_PERMISSION.equals(action)) {
-                requestAudioPermission();
+                requestAudioPermission(callbackContext);
+                return true;
+            }
+
+            if (PREWARM.equals(action)) {
+                prewarm(args.optBoolean(0, false), callbackContext);
+                return true;
+            }
+
+            if (GET_METRICS.equals(action)) {
+                callbackContext.success(getMetrics());
+                return true;
+            }
+
+            if (SOAK.equals(action)) {
+                if (!isSoakEnabled()) {
+                    callbackContext.error(SOAK_DISABLED);
+                    return true;
+                }
+                final ScriptedRecognizer.Script script = ScriptedRecognizer.Script.fromJSON(args.getJSONObject(0));
+                final int sessions = Math.max(1, args.optInt(1, 1000));
+                final long eventIntervalMs = Math.max(0, args.optLong(2, 0));
+                final boolean forward = args.optBoolean(3, true);
+                final CallbackContext callbackContextSoak = callbackContext;
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        soak(script, sessions, eventIntervalMs, forward, callbackContextSoak);
+                    }
+                });
+                return true;
+            }
+
+            if (WATCH_AUDIO.equals(action)) {
+                audioCallbackContext = callbackContext;
+                PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+                return true;
+            }
+
+            if (ACK_AUDIO.equals(action)) {
+                AudioStreamer streamer = audioStreamer;
+                if (streamer != null && streamer.getStream() == args.getInt(0)) {
+                    streamer.ack(args.getLong(1));
+                }
+                callbackContext.success();
+                return true;
+            }
+
+            if (LIST_RECORDINGS.equals(action)) {
+                final CallbackContext callbackContextList = callbackContext;
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            callbackContextList.success(ensureStore().list());
+                        } catch (JSONException e) {
+                            callbackContextList.error(e.getMessage());
+                        }
+                    }
+                });
+                return true;
+            }
+
+            if (PIN_RECORDING.equals(action)) {
+                String path = args.getString(0);
+                if (path.startsWith("file://")) {
+                    path = path.substring("file://".length());
+                }
+                if (ensureStore().pin(new File(path), args.optBoolean(1, true))) {
+                    callbackContext.success();
+                } else {
+                    callbackContext.error("Not a recording: " + args.getString(0));
+                }
+                return true;
+            }
+
+            if (PURGE_RECORDINGS.equals(action)) {
+                final CallbackContext callbackContextPurge = callbackContext;
+                final boolean includePinned = args.optBoolean(0, false);
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int deleted = ensureStore().purge(includePinned);
+                        callbackContextPurge.sendPluginResult(new PluginResult(PluginResult.Status.OK, deleted));
+                    }
+                });
+                return true;
+            }
+
+            if (EXPORT_RECORDINGS.equals(action)) {
+                JSONArray paths = args.getJSONArray(0);
+                List<File> files = new ArrayList<>(paths.length());
+                for (int i = 0; i < paths.length(); i++) {
+                    String path = paths.getString(i);
+                    if (path.startsWith("file://")) {
+                        path = path.substring("file://".length());
+                    }
+                    files.add(new File(path));
+                }
+                String folder = args.optString(1);
+                if (folder.isEmpty() || folder.equals("null")) {
+                    folder = null;
+                }
+                ensureExporter().export(files, folder, callbackContext);
+                return true;
+            }
+
+            if (SUBSCRIBE.equals(action)) {
+                eventChannel.subscribe(callbackContext);
+                return true;
+            }
+
+            if (UNSUBSCRIBE.equals(action)) {
+                eventChannel.unsubscribe();
+                callbackContext.success();
+                return true;
+            }
+
+            if (GET_ON_DEVICE_LANGUAGES.equals(action)) {
+                final CallbackContext callbackContextLanguages = callbackContext;
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeviceSupport().probe(callbackContextLanguages);
+                    }
+                });
+                return true;
+            }
+
+            if (WATCH_CONVERSION.equals(action)) {
+                conversionCallbackContext = callbackContext;
+                PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
                 return true;
             }
 
@@ -268,9 +678,20 @@ public class SpeechRecognition extends CordovaPlugin {
         return SpeechRecognizer.isRecognitionAvailable(context);
     }
 
-    private void startListening(String language, int matches, String prompt, final Boolean showPartial, Boolean showPopup) {
+    /**
+     * Registers a callback under a new session id
+     */
+    private int openSession(CallbackContext callbackContext) {
+        int session = lastSession.updateAndGet(id -> id % MAX_SESSION_ID + 1);
+        sessions.put(session, callbackContext);
+        return session;
+    }
+
+    private void startListening(CallbackContext callbackContext, String language, int matches, String prompt,
+                                final Boolean showPartial, Boolean showPopup) {
         Log.d(LOG_TAG, "startListening() language: " + language + ", matches: " + matches + ", prompt: " + prompt + ", showPartial: " + showPartial + ", showPopup: " + showPopup);
-        mUserVoiceFile = null;
+        final long requestedAt = SystemClock.elapsedRealtime();
+        mAudioFile = null;
 
         final Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
         intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL,
@@ -286,63 +707,205 @@ public class SpeechRecognition extends CordovaPlugin {
         if (prompt != null) {
             intent.putExtra(RecognizerIntent.EXTRA_PROMPT, prompt);
         }
+        final boolean offline = mOffline;
+        if (offline) {
+            intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true);
+        }
+
+        final int session = openSession(callbackContext);
 
         if (showPopup) {
-            cordova.startActivityForResult(this, intent, REQUEST_CODE_SPEECH);
+            cordova.startActivityForResult(this, intent, session);
 
             if (prompt != null && prompt.trim().length() > 0) {
                 mToastTimerCountDown = showToast(prompt);
             }
         } else {
-            //final String fileName = context.getExternalCacheDir().getAbsolutePath() + "/audiorecordtest.3gp";
-            //s_filename = fileName;
+            final boolean captureAudio = mCaptureAudio;
+            final boolean continuous = mContinuous;
             view.post(new Runnable() {
                 @Override
                 public void run() {
-                    recognizer.startListening(intent);
-                    //startRecording(fileName);
+                    mainHandler.removeCallbacks(continuousRestart);
+                    continuousSession = continuous ? new ContinuousSession(intent) : null;
+                    metrics.startSession(requestedAt);
+                    mPartialResults.reset();
+                    abortActiveSession();
+                    activeSession = session;
+                    activeSessionOpen = true;
+                    eventScheduler.start(callbackContext, mEventIntervalMs, session);
+                    startLevels();
+                    startRecognizer(intent, language, offline);
+                    if (captureAudio) {
+                        startCapture();
+                    }
                 }
             });
         }
     }
 
-    private static String s_filename = "";
-
-    private static void startPlaying(String fileName) {
-        MediaPlayer player = new MediaPlayer();
+    /**
+     * Starts a no-popup session on the device if asked for and possible, otherwise on the
+     * network recognizer. Has to be called on the UI thread.
+     */
+    private void startRecognizer(Intent intent, String language, boolean offline) {
+        sessionIntent = intent;
+        sessionLanguage = language;
+        recognizerReady = false;
+        if (offline) {
+            // Keep the installed languages current for the next session
+            onDeviceSupport().refresh();
+        }
+        boolean onDevice = offline && onDeviceSupport().canServe(language);
+        selectEngine(onDevice ? Recognizer.Engine.ON_DEVICE : Recognizer.Engine.NETWORK);
         try {
-            player.setDataSource(fileName);
-            player.prepare();
-            player.start();
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "prepare() failed");
+            ensureRecognizer().startListening(intent);
+        } catch (UnsupportedOperationException e) {
+            Log.e(LOG_TAG, "startRecognizer() no on-device recognizer: " + e.getMessage());
+            fallBackToNetwork();
+            return;
         }
+        publishEngine(false);
     }
 
-    private static void stopRecording() {
-        recorder.stop();
-        recorder.release();
-        recorder = null;
+    /**
+     * Starts the session again on the network recognizer
+     */
+    private void fallBackToNetwork() {
+        Log.d(LOG_TAG, "falling back to network recognizer for " + sessionLanguage);
+        onDeviceSupport().markFailed(sessionLanguage);
+        selectEngine(Recognizer.Engine.NETWORK);
+        recognizerReady = false;
+        ensureRecognizer().startListening(sessionIntent);
+        publishEngine(true);
+    }
 
-        startPlaying(s_filename);
+    /**
+     * @return whether the error means the on-device recognizer can not serve the session
+     */
+    private boolean isOnDeviceFailure(int errorCode) {
+        if (recognizerEngine != Recognizer.Engine.ON_DEVICE || recognizerReady) {
+            // Once listening, falling back would lose what was said
+            return false;
+        }
+        return errorCode == ERROR_LANGUAGE_NOT_SUPPORTED
+                || errorCode == ERROR_LANGUAGE_UNAVAILABLE
+                || errorCode == ERROR_SERVER_DISCONNECTED
+                || errorCode == SpeechRecognizer.ERROR_SERVER
+                || errorCode == SpeechRecognizer.ERROR_CLIENT;
     }
 
-    private static void startRecording(String fileName) {
-        recorder = new MediaRecorder();
-        recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-        recorder.setOutputFile(fileName);
-        recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+    private void publishEngine(final boolean fallback) {
+        final Recognizer.Engine engine = recognizerEngine;
+        publish(EventChannel.ENGINE, activeSession, new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject();
+                result.put("engine", engine.getKey());
+                result.put("fallback", fallback);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Records the session next to the recognizer, a failure only means there is no audio file
+     */
+    private void startCapture() {
         try {
-            recorder.prepare();
+            if (pcmCapture == null) {
+                pcmCapture = new PcmCapture();
+                voiceActivityDetector = new VoiceActivityDetector(PcmCapture.SAMPLE_RATE, new SpeechActivityListener());
+            }
+            boolean detect = mDetectSpeech || mAutoStop || mTrimSilence;
+            pcmCapture.setVoiceActivityDetector(detect ? voiceActivityDetector : null, mTrimSilence);
+            if (audioStreamer != null) {
+                audioStreamer.close();
+                audioStreamer = null;
+            }
+            CallbackContext audioCallback = audioCallbackContext;
+            if (mStreamAudio && (audioCallback != null || eventChannel.isSubscribed())) {
+                int chunkBytes = PcmCapture.SAMPLE_RATE * 2 * mStreamChunkMs / 1000;
+                audioStreamer = new AudioStreamer(audioCallback, ++audioStreams, chunkBytes, mStreamWindow);
+                if (audioCallback == null) {
+                    audioStreamer.setEventChannel(eventChannel, activeSession);
+                }
+            }
+            pcmCapture.setStreamer(audioStreamer);
+            String format = mCaptureFormat;
+            final RecordingStore store = ensureStore();
+            File file = store.create("voice", "." + format);
+            mAudioFile = pcmCapture.start(file, format);
+            // Only a complete capture may be evicted
+            mAudioFile.thenAccept(store::add);
         } catch (Exception e) {
-            Log.e(LOG_TAG, "prepare() failed");
+            Log.e(LOG_TAG, "startCapture() failed: " + e.getMessage());
+            mAudioFile = null;
         }
+    }
 
-        recorder.start();
+    private void stopCapture() {
+        if (pcmCapture != null) {
+            pcmCapture.stop();
+        }
     }
 
-    private static MediaRecorder recorder;
+    /**
+     * Called on the capture thread, events are handed over to the UI thread
+     */
+    private class SpeechActivityListener implements VoiceActivityDetector.Listener {
+
+        @Override
+        public void onSpeechStart(long sample) {
+            sendSpeechEvent("isSpeechStart", sample);
+        }
+
+        @Override
+        public void onSpeechEnd(long sample) {
+            sendSpeechEvent("isSpeechEnd", sample);
+            if (mAutoStop) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (recognizerManager != null) {
+                            recognizerManager.stopListening();
+                        }
+                    }
+                });
+            }
+        }
+
+        private void sendSpeechEvent(final String type, long sample) {
+            if (!mDetectSpeech) {
+                return;
+            }
+            final long timeMs = sample * 1000 / PcmCapture.SAMPLE_RATE;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    publish(type.equals("isSpeechStart") ? EventChannel.SPEECH_START : EventChannel.SPEECH_END,
+                            activeSession, new EventScheduler.Event() {
+                        @Override
+                        public JSONObject build() throws JSONException {
+                            JSONObject result = new JSONObject();
+                            result.put("source", "capture");
+                            result.put("positionMs", timeMs);
+                            return result;
+                        }
+                    });
+                    eventScheduler.send(type, new EventScheduler.Event() {
+                        @Override
+                        public JSONObject build() throws JSONException {
+                            JSONObject result = new JSONObject();
+                            result.put(type, true);
+                            result.put("timeMs", timeMs);
+                            return result;
+                        }
+                    });
+                }
+            });
+        }
+    }
 
     private Toast mToastToShow;
 
@@ -389,29 +952,20 @@ public class SpeechRecognition extends CordovaPlugin {
         return toastCountDown;
     }
 
-    private void getSupportedLanguages() {
+    private void getSupportedLanguages(boolean details, CallbackContext callbackContext) {
         if (languageDetailsChecker == null) {
-            languageDetailsChecker = new LanguageDetailsChecker(callbackContext);
-        }
-
-        List<String> supportedLanguages = languageDetailsChecker.getSupportedLanguages();
-        if (supportedLanguages != null) {
-            JSONArray languages = new JSONArray(supportedLanguages);
-            callbackContext.success(languages);
-            return;
+            languageDetailsChecker = new LanguageDetailsChecker(activity);
         }
-
-        Intent detailsIntent = new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS);
-        activity.sendOrderedBroadcast(detailsIntent, null, languageDetailsChecker, null, Activity.RESULT_OK, null, null);
+        languageDetailsChecker.request(callbackContext, details);
     }
 
-    private void hasAudioPermission() {
+    private void hasAudioPermission(CallbackContext callbackContext) {
         PluginResult result = new PluginResult(PluginResult.Status.OK, audioPermissionGranted(RECORD_AUDIO_PERMISSION));
-        this.callbackContext.sendPluginResult(result);
+        callbackContext.sendPluginResult(result);
     }
 
-    private void requestAudioPermission() {
-        requestPermission(RECORD_AUDIO_PERMISSION);
+    private void requestAudioPermission(CallbackContext callbackContext) {
+        requestPermission(RECORD_AUDIO_PERMISSION, callbackContext);
     }
 
     private boolean audioPermissionGranted(String type) {
@@ -421,104 +975,162 @@ public class SpeechRecognition extends CordovaPlugin {
         return cordova.hasPermission(type);
     }
 
-    private void requestPermission(String type) {
+    private void requestPermission(String type, CallbackContext callbackContext) {
         if (!audioPermissionGranted(type)) {
-            cordova.requestPermission(this, 23456, type);
+            cordova.requestPermission(this, openSession(callbackContext), type);
         } else {
-            this.callbackContext.success();
+            callbackContext.success();
         }
     }
 
     @Override
     public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) throws JSONException {
+        CallbackContext callbackContext = sessions.remove(requestCode);
+        if (callbackContext == null) {
+            return;
+        }
         if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            this.callbackContext.success();
+            callbackContext.success();
         } else {
-            this.callbackContext.error("Permission denied");
+            callbackContext.error("Permission denied");
         }
     }
 
-    @OptIn(markerClass = UnstableApi.class)
-    private String covertAmrToMp4(String inputFile) {
-        String outputFile = inputFile.replaceAll(".amr", ".mp4");
+    /**
+     * Converts a capture, or returns the earlier output of a capture with the same content.
+     * Runs on the I/O executor, so does publishing the output.
+     *
+     * @param session the job can be given up with {@link #cancelConversion} under this id
+     */
+    private CompletableFuture<File> convertCapture(File inputFile, final int session) throws IOException {
+        String format = mOutputFormat;
+        ConversionScheduler conversionScheduler = ensureConverter();
+        String hash = conversionCache.hash(inputFile);
+
+        File cached = conversionCache.lookup(hash, format);
+        if (cached != null) {
+            recordingStore.touch(cached);
+            Log.d(LOG_TAG, "convertCapture() cache hit: " + cached.getName());
+            return CompletableFuture.completedFuture(cached);
+        }
 
-        //moveFileToDownloads(context, new File(inputFile), "audio/amr");
-        audioConverter.convert(inputFile, outputFile).thenAccept(result -> {
-                    Log.d("Converter", "Conversion successful: " + result.durationMs + "ms");
+        File partial = conversionCache.partialFor(hash, format);
+        return conversionScheduler.submit(inputFile.getAbsolutePath(), partial.getAbsolutePath(), format)
+                .thenCompose(job -> {
+                    conversionJobs.put(session, job);
+                    return job.getFuture().whenComplete((result, throwable) -> conversionJobs.remove(session, job));
                 })
-                .exceptionally(throwable -> {
-                    Log.e("Converter", "Conversion failed: " + throwable.getMessage());
-                    return null;
-                });
-
-        return outputFile;
+                .thenApplyAsync(result -> {
+                    Log.d("Converter", "Conversion successful: " + result.durationMs + "ms");
+                    // Identical captures share the job, the first caller to get here publishes
+                    File output = conversionCache.lookup(hash, format);
+                    if (output != null) {
+                        return output;
+                    }
+                    try {
+                        output = conversionCache.publish(partial);
+                        recordingStore.add(output);
+                        return output;
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, ioExecutor);
     }
 
-    public static boolean moveFileToDownloads(Context context, File sourceFile, String mimeType) {
-        // 1. Define the file's metadata using ContentValues. [6, 21]
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.MediaColumns.DISPLAY_NAME, sourceFile.getName());
-        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
-
-        // This is the crucial part:
-        // Tell the system to save the file in the public Downloads directory. [2]
-        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
-
-        ContentResolver contentResolver = context.getContentResolver();
-        Uri destinationUri = null;
+    /**
+     * Gives up the conversion of a session nobody waits for anymore
+     */
+    private void cancelConversion(int session) {
+        ConversionScheduler.Job job = conversionJobs.remove(session);
+        if (job != null) {
+            Log.d(LOG_TAG, "cancelling conversion of session " + session);
+            conversionScheduler.cancel(job);
+        }
+    }
 
-        try {
-            // 2. Create a new entry in MediaStore for the destination file.
-            // This returns a URI that we can write data to.
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                destinationUri = contentResolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
-            }
-            if (destinationUri == null) {
-                System.out.println("Error: Failed to create MediaStore entry.");
-                return false;
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs) {
+        final CompletableFuture<T> timed = new CompletableFuture<>();
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                timed.completeExceptionally(new TimeoutException("Conversion timed out"));
             }
-
-            // 3. Open streams to copy the data.
-            try (InputStream inputStream = new FileInputStream(sourceFile);
-                 OutputStream outputStream = contentResolver.openOutputStream(destinationUri)) {
-
-                if (outputStream == null) {
-                    System.out.println("Error: Failed to open output stream.");
-                    // Attempt to clean up the MediaStore entry if stream fails
-                    contentResolver.delete(destinationUri, null, null);
-                    return false;
-                }
-
-                // Copy the data from the source file to the destination file.
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = inputStream.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, length);
-                }
+        };
+        mainHandler.postDelayed(timeout, timeoutMs);
+        future.whenComplete((value, throwable) -> {
+            mainHandler.removeCallbacks(timeout);
+            if (throwable != null) {
+                timed.completeExceptionally(throwable);
+            } else {
+                timed.complete(value);
             }
+        });
+        return timed;
+    }
 
-            // 4. (Optional but recommended) Delete the original source file to complete the move.
-            sourceFile.delete();
-
-            System.out.println("File moved successfully to Downloads: " + sourceFile.getName());
-            return true;
+    private static String errorMessage(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable.getMessage();
+    }
 
-        } catch (IOException e) {
+    private void sendConversionProgress(ConversionScheduler.Job job, int progress) {
+        CallbackContext callback = conversionCallbackContext;
+        if (callback == null) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("isProgress", true);
+            event.put("file", "file://" + conversionCache.publishedPath(job.getOutputPath()));
+            event.put("progress", progress);
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, event);
+            pluginResult.setKeepCallback(true);
+            callback.sendPluginResult(pluginResult);
+        } catch (JSONException e) {
             e.printStackTrace();
-            // If something went wrong, try to delete the incomplete file in Downloads.
-            if (destinationUri != null) {
-                contentResolver.delete(destinationUri, null, null);
-            }
-            return false;
         }
     }
 
+    @Override
+    public void onPause(boolean multitasking) {
+        // Keep a running session, but do not hold the service binding in the background
+        if (recognizerManager != null) {
+            recognizerManager.releaseIfIdle();
+        }
+        super.onPause(multitasking);
+    }
 
+    @Override
+    public void onDestroy() {
+        mainHandler.removeCallbacks(continuousRestart);
+        if (recognizerManager != null) {
+            recognizerManager.release();
+        }
+        stopCapture();
+        if (audioStreamer != null) {
+            audioStreamer.close();
+        }
+        if (conversionScheduler != null) {
+            conversionScheduler.cancelAll();
+            audioConverter.release();
+        }
+        ioExecutor.shutdown();
+        if (recordingStore != null) {
+            recordingStore.shutdown();
+        }
+        if (recordingExporter != null) {
+            recordingExporter.shutdown();
+        }
+        super.onDestroy();
+    }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         Log.d(LOG_TAG, "onActivityResult() requestCode: " + requestCode + ", resultCode: " + resultCode);
-        if (requestCode == REQUEST_CODE_SPEECH) {
+        final CallbackContext callbackContextResult = sessions.remove(requestCode);
+        if (callbackContextResult != null) {
             if (mToastTimerCountDown != null) {
                 mToastTimerCountDown.cancel();
                 mToastTimerCountDown = null;
@@ -527,28 +1139,64 @@ public class SpeechRecognition extends CordovaPlugin {
                 mToastToShow.cancel();
             }
             if (resultCode == Activity.RESULT_OK) {
-                try {
-                    Uri audioUri = data.getData();
-                    ContentResolver contentResolver = this.context.getContentResolver();
-                    InputStream filestream = contentResolver.openInputStream(audioUri);
-                    byte[] buffer = new byte[filestream.available()];
-                    filestream.read(buffer);
-                    mUserVoiceFile = File.createTempFile("voice", ".amr", context.getCacheDir());
-                    OutputStream outStream = new FileOutputStream(mUserVoiceFile);
-                    outStream.write(buffer);
-                    mUserVoiceFile = new File(covertAmrToMp4(mUserVoiceFile.getAbsolutePath()));
-
-                    ArrayList<String> matches = data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS);
-                    Map resultMap = new HashMap();
-                    resultMap.put("isFinal", true);
-                    resultMap.put("matches", matches);
-                    this.callbackContext.success(new JSONObject(resultMap));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    this.callbackContext.error(e.getMessage());
-                }
+                final boolean audioData = mAudioData;
+                final boolean trimSilence = mTrimSilence;
+                final Uri audioUri = data != null ? data.getData() : null;
+                final ArrayList<String> matches = data != null
+                        ? data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS)
+                        : null;
+                final CompletableFuture<File> conversion = new CompletableFuture<>();
+                mAudioFile = audioUri != null ? conversion : null;
+
+                // Copy and hand over to the converter off the UI thread, the callback
+                // completes only once the converted file is complete.
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (audioUri == null) {
+                                sendFinalResult(callbackContextResult, requestCode, matches, null);
+                                return;
+                            }
+
+                            File copiedFile = ensureStore().create("voice", ".amr");
+                            long size = streamCopier.copy(context.getContentResolver(), audioUri, copiedFile);
+                            Log.d(LOG_TAG, "onActivityResult() audio copied: " + size + " bytes");
+                            final File voiceFile = trimSilence ? trimVoice(copiedFile) : copiedFile;
+                            convertCapture(voiceFile, requestCode).whenComplete((file, throwable) -> {
+                                // The converted output is kept in the store, the copy is not needed anymore
+                                voiceFile.delete();
+                                if (throwable != null) {
+                                    conversion.completeExceptionally(throwable);
+                                } else {
+                                    conversion.complete(file);
+                                }
+                            });
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            conversion.completeExceptionally(e);
+                            callbackContextResult.error(e.getMessage());
+                            return;
+                        }
+
+                        withTimeout(conversion, CONVERSION_TIMEOUT_MS).whenComplete((file, throwable) -> {
+                            if (throwable != null) {
+                                Log.e(LOG_TAG, "onActivityResult() conversion failed: " + errorMessage(throwable));
+                            }
+                            if (throwable instanceof TimeoutException) {
+                                // The result goes out without the file, nobody needs the encoder anymore
+                                cancelConversion(requestCode);
+                            }
+                            if (audioData && file != null) {
+                                deliverAudio(callbackContextResult, file);
+                            }
+                            sendFinalResult(callbackContextResult, requestCode, matches, file);
+                        });
+                    }
+                });
             } else {
-                this.callbackContext.error(Integer.toString(resultCode));
+                publishError(requestCode, resultCode, Integer.toString(resultCode));
+                callbackContextResult.error(Integer.toString(resultCode));
             }
             return;
         }
@@ -557,10 +1205,146 @@ public class SpeechRecognition extends CordovaPlugin {
     }
 
 
+    /**
+     * @return a copy of the popup audio without the silence around speech, or the file itself
+     * if there is nothing to leave out or it cannot be decoded
+     */
+    private File trimVoice(File voiceFile) throws IOException {
+        File trimmedFile = ensureStore().create("voice", ".amr");
+        try {
+            if (AmrTrimmer.trim(voiceFile, trimmedFile)) {
+                voiceFile.delete();
+                return trimmedFile;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "trimVoice() " + e.getMessage());
+        }
+        trimmedFile.delete();
+        return voiceFile;
+    }
+
+    private void sendFinalResult(CallbackContext callbackContext, int session, ArrayList<String> matches, File file) {
+        Map resultMap = new HashMap();
+        resultMap.put("isFinal", true);
+        resultMap.put("matches", matches);
+        if (file != null) {
+            resultMap.put("file", "file://" + file.getAbsolutePath());
+        }
+        publishFinal(session, resultMap);
+        callbackContext.success(new JSONObject(resultMap));
+    }
+
+    /**
+     * Sends an event to the subscribe channel, it is only built if there is a subscriber
+     */
+    private void publish(String type, int session, EventScheduler.Event event) {
+        if (!eventChannel.isSubscribed()) {
+            return;
+        }
+        try {
+            eventChannel.send(type, session, event.build());
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Could not publish " + type + ": " + e.getMessage());
+        }
+    }
+
+    private void publishError(int session, final int code, final String message) {
+        publish(EventChannel.ERROR, session, new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject();
+                result.put("code", code);
+                result.put("message", message);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * The final result of a session, followed by the metrics it updated
+     */
+    private void publishFinal(int session, final Map resultMap) {
+        publish(EventChannel.FINAL, session, new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject(resultMap);
+                result.remove("isFinal");
+                return result;
+            }
+        });
+        publishMetrics(session);
+    }
+
+    private void publishMetrics(int session) {
+        publish(EventChannel.METRICS, session, new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                return getMetrics();
+            }
+        });
+    }
+
+    /**
+     * Built when the scheduler delivers it, so coalesced partials add up to one delta
+     */
+    private final EventScheduler.Event partialEvent = new EventScheduler.Event() {
+        @Override
+        public JSONObject build() throws JSONException {
+            JSONObject result = new JSONObject();
+            result.put("isPartial", true);
+            if (mPartialDeltas) {
+                mPartialResults.takeDelta();
+                result.put("stable", mPartialResults.getStable());
+                result.put("unstable", mPartialResults.getUnstable());
+                result.put("revision", mPartialResults.getRevision());
+                if (mPartialResults.isRevised()) {
+                    result.put("stableLength", mPartialResults.getStableLength());
+                }
+            } else {
+                result.put("matches", new JSONArray(mPartialResults.getMatches()));
+            }
+            return result;
+        }
+    };
+
+    private final EventScheduler.Event levelEvent = new EventScheduler.Event() {
+        @Override
+        public JSONObject build() throws JSONException {
+            JSONObject result = new JSONObject();
+            result.put("isLevel", true);
+            result.put("levels", mLevelMeter.drain());
+            return result;
+        }
+    };
+
+    private final Runnable levelTicker = new Runnable() {
+        @Override
+        public void run() {
+            if (!mLevelMeter.isEmpty()) {
+                eventScheduler.send("level", EventChannel.LEVEL, levelEvent);
+            }
+            mainHandler.postDelayed(this, mLevelIntervalMs);
+        }
+    };
+
+    private void startLevels() {
+        mainHandler.removeCallbacks(levelTicker);
+        mLevelMeter.reset(mLevelWindow);
+        if (mLevelIntervalMs > 0) {
+            mainHandler.postDelayed(levelTicker, mLevelIntervalMs);
+        }
+    }
+
+    private void stopLevels() {
+        mainHandler.removeCallbacks(levelTicker);
+    }
+
     private class SpeechRecognitionListener implements RecognitionListener {
 
         @Override
         public void onBeginningOfSpeech() {
+            metrics.mark(SpeechMetrics.Stage.SPEECH_START);
+            publish(EventChannel.SPEECH_START, activeSession, recognizerSource);
         }
 
         @Override
@@ -569,13 +1353,39 @@ public class SpeechRecognition extends CordovaPlugin {
 
         @Override
         public void onEndOfSpeech() {
+            metrics.mark(SpeechMetrics.Stage.SPEECH_END);
+            publish(EventChannel.SPEECH_END, activeSession, recognizerSource);
         }
 
         @Override
         public void onError(int errorCode) {
             String errorMessage = getErrorText(errorCode);
             Log.d(LOG_TAG, "Error: " + errorMessage);
-            callbackContext.error(errorMessage);
+            metrics.recordError(errorCode);
+            publishError(activeSession, errorCode, errorMessage);
+            if (isOnDeviceFailure(errorCode)) {
+                fallBackToNetwork();
+                return;
+            }
+            if (continuousSession != null) {
+                boolean noSpeech = errorCode == SpeechRecognizer.ERROR_NO_MATCH
+                        || errorCode == SpeechRecognizer.ERROR_SPEECH_TIMEOUT;
+                if (noSpeech && continuousSession.isActive()) {
+                    mainHandler.postDelayed(continuousRestart, continuousSession.onNoSpeech());
+                    return;
+                }
+                if (noSpeech || !continuousSession.isActive()) {
+                    finishContinuous();
+                    return;
+                }
+                continuousSession = null;
+            }
+            activeSessionOpen = false;
+            stopLevels();
+            stopCapture();
+            sessions.remove(activeSession);
+            eventScheduler.finish(new PluginResult(PluginResult.Status.ERROR, errorMessage));
+            publishMetrics(activeSession);
         }
 
         @Override
@@ -586,87 +1396,270 @@ public class SpeechRecognition extends CordovaPlugin {
         public void onPartialResults(Bundle bundle) {
             ArrayList<String> matches = bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
             Log.d(LOG_TAG, "SpeechRecognitionListener partialResults: " + matches);
-            JSONArray matchesJSON = new JSONArray(matches);
-            try {
-                if (matches != null
-                        && matches.size() > 0
-                        && !mLastPartialResults.equals(matchesJSON)) {
-                    mLastPartialResults = matchesJSON;
-
-                    Map resultMap = new HashMap();
-                    resultMap.put("isPartial", true);
-                    resultMap.put("matches", matches);
-                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, new JSONObject(resultMap));
-                    pluginResult.setKeepCallback(true);
-                    callbackContext.sendPluginResult(pluginResult);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                callbackContext.error(e.getMessage());
+            metrics.mark(SpeechMetrics.Stage.FIRST_PARTIAL);
+            if (mPartialResults.update(matches)) {
+                eventScheduler.send("partial", EventChannel.PARTIAL, partialEvent);
             }
         }
 
         @Override
         public void onReadyForSpeech(Bundle params) {
             Log.d(LOG_TAG, "onReadyForSpeech");
+            metrics.mark(SpeechMetrics.Stage.READY);
+            recognizerReady = true;
+            publish(EventChannel.READY, activeSession, recognizerSource);
+            if (continuousSession != null) {
+                continuousSession.onReady();
+            }
         }
 
         @Override
         public void onResults(Bundle results) {
             ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
             Log.d(LOG_TAG, "SpeechRecognitionListener results: " + matches);
-            try {
-                Map resultMap = new HashMap();
-                resultMap.put("isFinal", true);
-                resultMap.put("matches", matches);
-                callbackContext.success(new JSONObject(resultMap));
-                //SpeechRecognition.stopRecording();
-            } catch (Exception e) {
-                e.printStackTrace();
-                callbackContext.error(e.getMessage());
+            metrics.mark(SpeechMetrics.Stage.RESULTS);
+            if (continuousSession != null) {
+                continuousSession.onSegment(matches != null && !matches.isEmpty() ? matches.get(0) : null);
+                if (continuousSession.isActive()) {
+                    sendSegment(matches);
+                    mainHandler.post(continuousRestart);
+                } else {
+                    finishContinuous();
+                }
+                return;
             }
+            finishSession(matches, null);
+        }
+
+        private void sendSegment(final ArrayList<String> matches) {
+            final ContinuousSession session = continuousSession;
+            final String transcript = session.getTranscript();
+            final int segment = session.getSegments();
+            final long gapMs = session.getLastGapMs();
+            // One type per segment, segments are never coalesced
+            eventScheduler.send("segment" + segment, EventChannel.SEGMENT, new EventScheduler.Event() {
+                @Override
+                public JSONObject build() throws JSONException {
+                    JSONObject result = new JSONObject();
+                    result.put("isSegment", true);
+                    result.put("segment", segment);
+                    result.put("matches", new JSONArray(matches));
+                    result.put("transcript", transcript);
+                    result.put("gapMs", gapMs);
+                    return result;
+                }
+            });
         }
 
         @Override
         public void onRmsChanged(float rmsdB) {
+            if (mLevelIntervalMs > 0) {
+                mLevelMeter.add(rmsdB);
+            }
         }
 
-        private String getErrorText(int errorCode) {
-            String message;
-            switch (errorCode) {
-                case SpeechRecognizer.ERROR_AUDIO:
-                    message = "Audio recording error";
-                    break;
-                case SpeechRecognizer.ERROR_CLIENT:
-                    message = "Client side error";
-                    break;
-                case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
-                    message = "Insufficient permissions";
-                    break;
-                case SpeechRecognizer.ERROR_NETWORK:
-                    message = "Network error";
-                    break;
-                case SpeechRecognizer.ERROR_NETWORK_TIMEOUT:
-                    message = "Network timeout";
-                    break;
-                case SpeechRecognizer.ERROR_NO_MATCH:
-                    message = "No match";
-                    break;
-                case SpeechRecognizer.ERROR_RECOGNIZER_BUSY:
-                    message = "RecognitionService busy";
-                    break;
-                case SpeechRecognizer.ERROR_SERVER:
-                    message = "error from server";
-                    break;
-                case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
-                    message = "No speech input";
-                    break;
-                default:
-                    message = "Didn't understand, please try again.";
-                    break;
-            }
-            return message;
+        private final EventScheduler.Event recognizerSource = new EventScheduler.Event() {
+            @Override
+            public JSONObject build() throws JSONException {
+                JSONObject result = new JSONObject();
+                result.put("source", "recognizer");
+                return result;
+            }
+        };
+    }
+
+    private static String getErrorText(int errorCode) {
+        String message;
+        switch (errorCode) {
+            case SpeechRecognizer.ERROR_AUDIO:
+                message = "Audio recording error";
+                break;
+            case SpeechRecognizer.ERROR_CLIENT:
+                message = "Client side error";
+                break;
+            case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
+                message = "Insufficient permissions";
+                break;
+            case SpeechRecognizer.ERROR_NETWORK:
+                message = "Network error";
+                break;
+            case SpeechRecognizer.ERROR_NETWORK_TIMEOUT:
+                message = "Network timeout";
+                break;
+            case SpeechRecognizer.ERROR_NO_MATCH:
+                message = "No match";
+                break;
+            case SpeechRecognizer.ERROR_RECOGNIZER_BUSY:
+                message = "RecognitionService busy";
+                break;
+            case SpeechRecognizer.ERROR_SERVER:
+                message = "error from server";
+                break;
+            case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
+                message = "No speech input";
+                break;
+            default:
+                message = "Didn't understand, please try again.";
+                break;
         }
+        return message;
     }
 
+    private JSONObject getMetrics() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("stages", metrics.stagesToJSON());
+        result.put("engines", metrics.enginesToJSON());
+        result.put("conversion", metrics.getConversion().toJSON());
+
+        // Codes without a text of their own share a category
+        JSONObject errors = new JSONObject();
+        for (int code = 0; code <= SpeechMetrics.MAX_ERROR_CODE; code++) {
+            long count = metrics.getErrorCount(code);
+            if (count > 0) {
+                String category = getErrorText(code);
+                errors.put(category, errors.optLong(category) + count);
+            }
+        }
+        result.put("errors", errors);
+
+        JSONObject events = new JSONObject();
+        events.put("delivered", eventScheduler.getDelivered());
+        events.put("coalesced", eventScheduler.getCoalesced());
+        events.put("dropped", eventScheduler.getDropped());
+        result.put("events", events);
+
+        result.put("recognizerReadyMs", recognizerManager != null ? recognizerManager.getLastReadyLatencyMs() : -1);
+        return result;
+    }
+
+    private final Runnable continuousRestart = new Runnable() {
+        @Override
+        public void run() {
+            if (continuousSession != null && continuousSession.isActive()) {
+                mPartialResults.reset();
+                metrics.startSession(SystemClock.elapsedRealtime());
+                recognizerReady = false;
+                ensureRecognizer().startListening(continuousSession.getIntent());
+            }
+        }
+    };
+
+    private void finishContinuous() {
+        ContinuousSession session = continuousSession;
+        continuousSession = null;
+        mainHandler.removeCallbacks(continuousRestart);
+
+        ArrayList<String> matches = new ArrayList<>();
+        matches.add(session.getTranscript());
+        Map resultMap = new HashMap();
+        resultMap.put("transcript", session.getTranscript());
+        resultMap.put("segments", session.getSegments());
+        resultMap.put("averageGapMs", session.getAverageGapMs());
+        resultMap.put("maxGapMs", session.getMaxGapMs());
+        finishSession(matches, resultMap);
+    }
+
+    /**
+     * Ends a no-popup session that a new one replaces before it sent its result
+     */
+    private void abortActiveSession() {
+        if (!activeSessionOpen) {
+            return;
+        }
+        activeSessionOpen = false;
+        stopCapture();
+        CallbackContext callbackContextSession = sessions.remove(activeSession);
+        if (callbackContextSession == null) {
+            return;
+        }
+        Log.d(LOG_TAG, "session " + activeSession + " replaced before its result");
+        publishError(activeSession, SpeechRecognizer.ERROR_CLIENT, SESSION_REPLACED);
+        PluginResult result = new PluginResult(PluginResult.Status.ERROR, SESSION_REPLACED);
+        if (eventScheduler.getCallbackContext() == callbackContextSession) {
+            eventScheduler.finish(result);
+        } else {
+            callbackContextSession.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Ends a no-popup session, waiting for the captured audio if there is one
+     */
+    private void finishSession(final ArrayList<String> matches, Map sessionExtras) {
+        activeSessionOpen = false;
+        stopLevels();
+        stopCapture();
+
+        final Map extras = new HashMap();
+        if (sessionExtras != null) {
+            extras.putAll(sessionExtras);
+        }
+        extras.put("engine", recognizerEngine.getKey());
+
+        final int session = activeSession;
+        CompletableFuture<File> audioFile = mAudioFile;
+        if (audioFile == null) {
+            sendSessionResult(session, matches, extras, null);
+            return;
+        }
+        final CallbackContext callbackContextSession = sessions.get(session);
+        final boolean audioData = mAudioData && callbackContextSession != null;
+        withTimeout(audioFile, CONVERSION_TIMEOUT_MS).whenComplete((file, throwable) -> {
+            if (throwable != null) {
+                Log.e(LOG_TAG, "finishSession() capture failed: " + errorMessage(throwable));
+            }
+            final Runnable sendResult = new Runnable() {
+                @Override
+                public void run() {
+                    sendSessionResult(session, matches, extras, file);
+                }
+            };
+            if (!audioData || file == null) {
+                mainHandler.post(sendResult);
+                return;
+            }
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverAudio(callbackContextSession, file);
+                    mainHandler.post(sendResult);
+                }
+            });
+        });
+    }
+
+    /**
+     * Sends the audio bytes ahead of the final result, which still carries the file on failure
+     */
+    private void deliverAudio(CallbackContext callbackContext, File file) {
+        try {
+            AudioDelivery.send(callbackContext, file);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Could not deliver audio: " + e.getMessage());
+        }
+    }
+
+    private void sendSessionResult(int session, ArrayList<String> matches, Map extras, File file) {
+        CallbackContext callbackContextSession = sessions.remove(session);
+        if (callbackContextSession == null) {
+            return;
+        }
+        Map resultMap = new HashMap();
+        if (extras != null) {
+            resultMap.putAll(extras);
+        }
+        resultMap.put("isFinal", true);
+        resultMap.put("matches", matches);
+        if (file != null) {
+            resultMap.put("file", "file://" + file.getAbsolutePath());
+        }
+        publishFinal(session, resultMap);
+        PluginResult result = new PluginResult(PluginResult.Status.OK, new JSONObject(resultMap));
+        if (eventScheduler.getCallbackContext() == callbackContextSession) {
+            eventScheduler.finish(result);
+        } else {
+            // A newer session started while the audio was finishing
+            callbackContextSession.sendPluginResult(result);
+        }
+    }
 }
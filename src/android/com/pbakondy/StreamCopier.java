@@ -0,0 +1,99 @@
+package com.pbakondy;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies audio content into local files without holding the whole clip in memory.
+ * <p>
+ * File-backed sources are moved with {@link FileChannel#transferTo}, everything else
+ * goes through one reusable buffer. An instance is not thread-safe and is meant to be
+ * owned by a single I/O thread.
+ */
+public class StreamCopier {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Copies the content behind a Uri into the target file
+     *
+     * @param resolver ContentResolver used to open the source
+     * @param source   Uri of the content to copy
+     * @param target   File to write, it is truncated first
+     * @return number of bytes written
+     */
+    public long copy(ContentResolver resolver, Uri source, File target) throws IOException {
+        ParcelFileDescriptor pfd;
+        try {
+            pfd = resolver.openFileDescriptor(source, "r");
+        } catch (FileNotFoundException e) {
+            pfd = null;
+        }
+
+        if (pfd != null && pfd.getStatSize() >= 0) {
+            try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+                return copy(in.getChannel(), target);
+            }
+        }
+
+        // Pipes and other stream-only providers
+        try (InputStream in = pfd != null
+                ? new ParcelFileDescriptor.AutoCloseInputStream(pfd)
+                : resolver.openInputStream(source)) {
+            if (in == null) {
+                throw new FileNotFoundException("Could not open " + source);
+            }
+            return copy(in, target);
+        }
+    }
+
+    /**
+     * Copies a local file into the target file
+     */
+    public long copy(File source, File target) throws IOException {
+        try (FileInputStream in = new FileInputStream(source)) {
+            return copy(in.getChannel(), target);
+        }
+    }
+
+    private long copy(FileChannel in, File target) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel outChannel = out.getChannel();
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, outChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            out.getFD().sync();
+            return position;
+        }
+    }
+
+    private long copy(InputStream in, File target) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            long total = 0;
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+                total += length;
+            }
+            out.getFD().sync();
+            return total;
+        }
+    }
+}
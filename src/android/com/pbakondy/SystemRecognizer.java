@@ -0,0 +1,62 @@
+package com.pbakondy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+
+/**
+ * {@link Recognizer} backed by the system {@link SpeechRecognizer}
+ */
+public class SystemRecognizer implements Recognizer {
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public Recognizer create(Context context) {
+            return new SystemRecognizer(SpeechRecognizer.createSpeechRecognizer(context));
+        }
+    };
+
+    /**
+     * Recognizes on the device only, API 31
+     *
+     * @throws UnsupportedOperationException if there is no on-device recognizer
+     */
+    public static final Factory ON_DEVICE_FACTORY = new Factory() {
+        @Override
+        public Recognizer create(Context context) {
+            return new SystemRecognizer(SpeechRecognizer.createOnDeviceSpeechRecognizer(context));
+        }
+    };
+
+    private final SpeechRecognizer recognizer;
+
+    public SystemRecognizer(SpeechRecognizer recognizer) {
+        this.recognizer = recognizer;
+    }
+
+    @Override
+    public void setRecognitionListener(RecognitionListener listener) {
+        recognizer.setRecognitionListener(listener);
+    }
+
+    @Override
+    public void startListening(Intent intent) {
+        recognizer.startListening(intent);
+    }
+
+    @Override
+    public void stopListening() {
+        recognizer.stopListening();
+    }
+
+    @Override
+    public void cancel() {
+        recognizer.cancel();
+    }
+
+    @Override
+    public void destroy() {
+        recognizer.destroy();
+    }
+}
@@ -0,0 +1,215 @@
+package com.pbakondy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming voice activity detection on 16 bit little endian mono PCM.
+ * <p>
+ * Samples are grouped into 20 ms frames. A frame counts as speech when its energy is
+ * well above the noise floor, or moderately above it with a low zero crossing rate as
+ * voiced sounds have. Speech starts after a few speech frames in a row and ends once the
+ * hangover has passed without one. Input may arrive in chunks of any size, nothing is
+ * allocated while processing.
+ * <p>
+ * The noise floor is the lowest frame energy of the last {@value #HISTORY_FRAMES} frames,
+ * it does not rise while speech goes on. Speech that is already going on when the first
+ * frames arrive sets the floor too high, so until speech was found the recent frames are
+ * judged again whenever the floor drops. Speech may then be reported up to
+ * {@link #getLookbackSamples()} late, with the sample where it started.
+ */
+public class VoiceActivityDetector {
+
+    public interface Listener {
+        /**
+         * @param sample index of the first sample of speech
+         */
+        void onSpeechStart(long sample);
+
+        /**
+         * @param sample index after the last sample of speech
+         */
+        void onSpeechEnd(long sample);
+    }
+
+    private static final double LOUD_DB = 10.0;
+    private static final double VOICED_DB = 5.0;
+    private static final double VOICED_MAX_ZCR = 0.25;
+    private static final double MIN_NOISE_DB = -90.0;
+    private static final int ONSET_FRAMES = 3;
+    private static final int HANGOVER_FRAMES = 15;
+    private static final int CALIBRATION_FRAMES = 10;
+    private static final int HISTORY_FRAMES = 128; // 2.56 s
+
+    private final int frameSamples;
+    private final Listener listener;
+
+    // Energy and zero crossing rate of the last frames, indexed by frame number
+    private final double[] historyDb = new double[HISTORY_FRAMES];
+    private final double[] historyZcr = new double[HISTORY_FRAMES];
+
+    private long sampleIndex;
+    private int frameFill;
+    private double frameEnergy;
+    private int frameCrossings;
+    private short previousSample;
+
+    private long frames;
+    private double noiseDb;
+    private double judgedNoiseDb;
+    private int speechRun;
+    private long runStartSample;
+    private int silenceRun;
+    private boolean speaking;
+
+    private volatile long speechStartSample = -1;
+    private volatile long speechEndSample = -1;
+
+    public VoiceActivityDetector(int sampleRate, Listener listener) {
+        this.frameSamples = sampleRate / 50;
+        this.listener = listener;
+        reset();
+    }
+
+    public void reset() {
+        sampleIndex = 0;
+        frameFill = 0;
+        frameEnergy = 0;
+        frameCrossings = 0;
+        previousSample = 0;
+        frames = 0;
+        noiseDb = MIN_NOISE_DB;
+        judgedNoiseDb = MIN_NOISE_DB;
+        speechRun = 0;
+        silenceRun = 0;
+        speaking = false;
+        speechStartSample = -1;
+        speechEndSample = -1;
+    }
+
+    /**
+     * Processes the bytes between position and limit, which have to be an even count.
+     * The buffer itself is not modified.
+     */
+    public void process(ByteBuffer pcm) {
+        int end = pcm.limit() - 1;
+        for (int i = pcm.position(); i < end; i += 2) {
+            short sample = (short) ((pcm.get(i) & 0xFF) | (pcm.get(i + 1) << 8));
+            addSample(sample);
+        }
+    }
+
+    public void process(short[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addSample(pcm[i]);
+        }
+    }
+
+    /**
+     * @return first sample of speech, -1 if none was detected yet
+     */
+    public long getSpeechStartSample() {
+        return speechStartSample;
+    }
+
+    /**
+     * @return sample after the last speech, -1 while speech is ongoing or none was detected
+     */
+    public long getSpeechEndSample() {
+        return speechEndSample;
+    }
+
+    public boolean isSpeaking() {
+        return speaking;
+    }
+
+    /**
+     * @return how far back a late speech start can lie, in samples
+     */
+    public int getLookbackSamples() {
+        return HISTORY_FRAMES * frameSamples;
+    }
+
+    private void addSample(short sample) {
+        frameEnergy += (double) sample * sample;
+        if ((sample >= 0) != (previousSample >= 0)) {
+            frameCrossings++;
+        }
+        previousSample = sample;
+        sampleIndex++;
+
+        if (++frameFill == frameSamples) {
+            endFrame();
+            frameFill = 0;
+            frameEnergy = 0;
+            frameCrossings = 0;
+        }
+    }
+
+    private void endFrame() {
+        double energyDb = 10 * Math.log10(frameEnergy / frameSamples / (32768.0 * 32768.0) + 1e-10);
+        double zcr = (double) frameCrossings / frameSamples;
+        int slot = (int) (frames % HISTORY_FRAMES);
+        historyDb[slot] = energyDb;
+        historyZcr[slot] = zcr;
+        frames++;
+
+        double minimumDb = energyDb;
+        for (int i = (int) Math.min(frames, HISTORY_FRAMES) - 1; i >= 0; i--) {
+            minimumDb = Math.min(minimumDb, historyDb[i]);
+        }
+        // A pause in long speech may scroll out of the history, the floor waits for the end
+        noiseDb = Math.max(MIN_NOISE_DB, speaking ? Math.min(noiseDb, minimumDb) : minimumDb);
+
+        if (frames < CALIBRATION_FRAMES) {
+            return;
+        }
+        if (speechStartSample < 0
+                && (frames == CALIBRATION_FRAMES || judgedNoiseDb - noiseDb >= VOICED_DB)) {
+            // Judge the frames seen so far against the new floor, this one included
+            speechRun = 0;
+            for (long frame = Math.max(0, frames - HISTORY_FRAMES); frame < frames; frame++) {
+                int index = (int) (frame % HISTORY_FRAMES);
+                judge(historyDb[index], historyZcr[index], frame * frameSamples);
+            }
+            judgedNoiseDb = noiseDb;
+        } else {
+            judge(energyDb, zcr, sampleIndex - frameSamples);
+            judgedNoiseDb = Math.max(judgedNoiseDb, noiseDb);
+        }
+    }
+
+    private void judge(double energyDb, double zcr, long frameStart) {
+        boolean speech = energyDb > noiseDb + LOUD_DB
+                || (energyDb > noiseDb + VOICED_DB && zcr < VOICED_MAX_ZCR);
+
+        if (speaking) {
+            if (speech) {
+                silenceRun = 0;
+            } else if (++silenceRun >= HANGOVER_FRAMES) {
+                speaking = false;
+                long end = frameStart + (long) (1 - silenceRun) * frameSamples;
+                speechEndSample = end;
+                listener.onSpeechEnd(end);
+            }
+            return;
+        }
+
+        if (speech) {
+            if (speechRun++ == 0) {
+                runStartSample = frameStart;
+            }
+            if (speechRun >= ONSET_FRAMES) {
+                speaking = true;
+                speechRun = 0;
+                silenceRun = 0;
+                speechEndSample = -1;
+                if (speechStartSample < 0) {
+                    speechStartSample = runStartSample;
+                }
+                listener.onSpeechStart(runStartSample);
+            }
+        } else {
+            speechRun = 0;
+        }
+    }
+}
@@ -4,18 +4,65 @@ module.exports = {
   },
   startListening: function(successCallback, errorCallback, options) {
     options = options || {};
-    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'startListening', [ options.language, options.matches, options.prompt, options.showPartial, options.showPopup ]);
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'startListening', [ options.language, options.matches, options.prompt, options.showPartial, options.showPopup, options.outputFormat, options.partialDeltas, options.eventInterval, options.levelInterval, options.levelWindow, options.captureAudio, options.detectSpeech, options.autoStop, options.trimSilence, options.continuous, options.audioData, options.streamAudio, options.streamChunkMs, options.streamWindow, options.offline ]);
   },
-  stopListening: function(successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'stopListening', []);
+  stopListening: function(successCallback, errorCallback, options) {
+    options = options || {};
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'stopListening', [ options.timeout, options.audioData ]);
   },
   getSupportedLanguages: function(successCallback, errorCallback) {
     cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'getSupportedLanguages', []);
   },
+  getLanguageDetails: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'getLanguageDetails', []);
+  },
   hasPermission: function(successCallback, errorCallback) {
     cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'hasPermission', []);
   },
   requestPermission: function(successCallback, errorCallback) {
     cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'requestPermission', []);
+  },
+  prewarm: function(successCallback, errorCallback, options) {
+    options = options || {};
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'prewarm', [ options.converter ]);
+  },
+  getMetrics: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'getMetrics', []);
+  },
+  soak: function(successCallback, errorCallback, options) {
+    options = options || {};
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'soak', [ options.script, options.sessions, options.eventInterval, options.forward ]);
+  },
+  watchAudio: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'watchAudio', []);
+  },
+  ackAudio: function(stream, seq, successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'ackAudio', [ stream, seq ]);
+  },
+  listRecordings: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'listRecordings', []);
+  },
+  pinRecording: function(file, pinned, successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'pinRecording', [ file, pinned ]);
+  },
+  purgeRecordings: function(successCallback, errorCallback, options) {
+    options = options || {};
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'purgeRecordings', [ options.pinned ]);
+  },
+  exportRecordings: function(files, successCallback, errorCallback, options) {
+    options = options || {};
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'exportRecordings', [ files, options.folder ]);
+  },
+  subscribe: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'subscribe', []);
+  },
+  unsubscribe: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'unsubscribe', []);
+  },
+  getOnDeviceLanguages: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'getOnDeviceLanguages', []);
+  },
+  watchConversion: function(successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'SpeechRecognition', 'watchConversion', []);
   }
 };